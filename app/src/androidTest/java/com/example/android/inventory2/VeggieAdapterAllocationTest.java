@@ -0,0 +1,74 @@
+package com.example.android.inventory2;
+
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the objects allocated while {@link VeggieAdapter} binds rows.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VeggieAdapterAllocationTest {
+
+    private static final int ROW_COUNT = 100;
+
+    private static final int BIND_ROUNDS = 10;
+
+    @Test
+    @UiThreadTest
+    @SuppressWarnings("deprecation")
+    public void onBindViewHolder_doesNotAllocate() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.setTheme(R.style.AppTheme);
+
+        List<Veggie> veggies = new ArrayList<>();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            veggies.add(new Veggie(i + 1, "Veggie " + i, (i % 10) * 100L, i));
+        }
+
+        VeggieAdapter adapter = new VeggieAdapter(new VeggieAdapter.OnVeggieClickListener() {
+            @Override
+            public void onVeggieClick(long veggieId) {
+            }
+        }, new SaleBuffer(context, VeggieRepository.getInstance(context)));
+        // The first list is applied straight away, without a background diff
+        adapter.submitList(veggies);
+
+        RecyclerView parent = new RecyclerView(context);
+        parent.setLayoutManager(new LinearLayoutManager(context));
+        VeggieAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+
+        // Warm up, so the TextView's text wrappers exist before counting
+        bindAll(adapter, holder);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int round = 0; round < BIND_ROUNDS; round++) {
+            bindAll(adapter, holder);
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        // Less than one allocation per bind means nothing is allocated for each row
+        assertTrue("Allocated " + allocations + " objects in " + ROW_COUNT * BIND_ROUNDS + " binds",
+                allocations < ROW_COUNT * BIND_ROUNDS);
+    }
+
+    private static void bindAll(VeggieAdapter adapter, VeggieAdapter.ViewHolder holder) {
+        for (int i = 0; i < ROW_COUNT; i++) {
+            adapter.onBindViewHolder(holder, i);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.android.inventory2.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventory2.data.VeggieContract.StockMovementEntry;
+import com.example.android.inventory2.data.VeggieContract.StockSnapshotEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link StockLedger}, run against a real database file on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockLedgerTest {
+
+    private static final String TEST_DATABASE_NAME = "veggies_ledger_test.db";
+
+    private Context mContext;
+
+    private VeggieDbHelper mHelper;
+
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+        mHelper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME, VeggieDbHelper.DATABASE_VERSION);
+        mDatabase = mHelper.getWritableDatabase();
+        mDatabase.execSQL("INSERT INTO suppliers (_id, supplierName, supplierPhone) "
+                + "VALUES (1, 'Whole Foods', '(800) 123-4567');");
+        mDatabase.execSQL("INSERT INTO veggies (_id, name, price, quantity, supplier_id) "
+                + "VALUES (1, 'Carrot', 4, 10, 1);");
+        // The provider keeps the levels adding up to the quantity
+        mDatabase.execSQL("INSERT INTO stock_levels (veggie_id, location_id, quantity) "
+                + "VALUES (1, 1, 10);");
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void apply_updatesQuantityAndRefusesNegativeStock() {
+        StockLedger ledger = new StockLedger(mDatabase);
+        try {
+            assertNotEquals(-1, ledger.apply(1, 5, StockMovementEntry.REASON_RECEIVE, 1000));
+            assertEquals(-1, ledger.apply(1, -20, StockMovementEntry.REASON_SALE, 2000));
+            assertEquals(-1, ledger.apply(2, 5, StockMovementEntry.REASON_RECEIVE, 3000));
+        } finally {
+            ledger.close();
+        }
+        assertEquals(15, queryLong("SELECT quantity FROM veggies WHERE _id = 1"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM " + StockMovementEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void recordAdjustments_recordsDifferenceToNewQuantity() {
+        StockLedger ledger = new StockLedger(mDatabase);
+        try {
+            assertEquals(1, ledger.recordAdjustments("_id = ?", new String[]{"1"}, 7, 1000));
+            // Setting the quantity it already has is not a movement
+            assertEquals(0, ledger.recordAdjustments("_id = ?", new String[]{"1"}, 10, 2000));
+        } finally {
+            ledger.close();
+        }
+        assertEquals(-3, queryLong("SELECT delta FROM " + StockMovementEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void record_movesStockLevels() {
+        StockLedger ledger = new StockLedger(mDatabase);
+        StockLevels levels = new StockLevels(mDatabase, null);
+        try {
+            // Move 6 units to the cooler and 3 to a shop floor, leaving 1 in the back room
+            assertTrue(levels.transfer(1, 1, 2, 6));
+            assertTrue(levels.transfer(1, 1, 3, 3));
+            assertFalse(levels.transfer(1, 1, 4, 2));
+
+            // Units in go to the default location
+            ledger.apply(1, 4, StockMovementEntry.REASON_RECEIVE, 1000);
+            assertEquals(5, queryLevel(1));
+
+            // Units out drain the default location first, then the others in ID order
+            ledger.apply(1, -12, StockMovementEntry.REASON_SALE, 2000);
+            assertEquals(0, queryLevel(1));
+            assertEquals(0, queryLevel(2));
+            assertEquals(2, queryLevel(3));
+        } finally {
+            levels.close();
+            ledger.close();
+        }
+        assertEquals(2, queryLong("SELECT quantity FROM veggies WHERE _id = 1"));
+        assertEquals(2, queryLong("SELECT SUM(quantity) FROM stock_levels WHERE veggie_id = 1"));
+    }
+
+    @Test
+    public void compact_foldsOldMovementsIntoDailySnapshots() {
+        long day = StockLedger.DAY_MILLIS;
+        StockLedger ledger = new StockLedger(mDatabase);
+        try {
+            ledger.record(1, 5, StockMovementEntry.REASON_RECEIVE, 2 * day + 10);
+            ledger.record(1, -2, StockMovementEntry.REASON_SALE, 2 * day + 20);
+            ledger.record(1, -1, StockMovementEntry.REASON_SALE, 3 * day + 10);
+            ledger.record(1, 4, StockMovementEntry.REASON_RECEIVE, 4 * day + 10);
+        } finally {
+            ledger.close();
+        }
+
+        assertEquals(3, StockLedger.compact(mDatabase, 4 * day));
+        // A second run folds the next day into the existing snapshots without touching the others
+        assertEquals(1, StockLedger.compact(mDatabase, 5 * day));
+
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM " + StockMovementEntry.TABLE_NAME));
+        assertEquals(3, queryLong("SELECT COUNT(*) FROM " + StockSnapshotEntry.TABLE_NAME));
+        assertEquals(3, queryLong("SELECT delta FROM " + StockSnapshotEntry.TABLE_NAME
+                + " WHERE day = 2"));
+        assertEquals(2, queryLong("SELECT movement_count FROM " + StockSnapshotEntry.TABLE_NAME
+                + " WHERE day = 2"));
+        assertEquals(6, queryLong("SELECT SUM(delta) FROM " + StockSnapshotEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void compactionCutoff_startsAtDayBoundary() {
+        long day = StockLedger.DAY_MILLIS;
+        assertEquals(8 * day, StockLedger.compactionCutoff(10 * day + 123, 2));
+    }
+
+    private long queryLevel(long locationId) {
+        return queryLong("SELECT IFNULL(SUM(quantity), 0) FROM stock_levels "
+                + "WHERE veggie_id = 1 AND location_id = " + locationId);
+    }
+
+    private long queryLong(String sql) {
+        Cursor cursor = mDatabase.rawQuery(sql, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
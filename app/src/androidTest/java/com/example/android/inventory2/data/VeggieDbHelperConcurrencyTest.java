@@ -0,0 +1,176 @@
+package com.example.android.inventory2.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long catalog reads take while another thread keeps writing, with the default
+ * write-ahead logging mode and with the old rollback journal, and checks that the first is no
+ * slower. The latencies are written to logcat under {@link #LOG_TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VeggieDbHelperConcurrencyTest {
+
+    private static final String LOG_TAG = VeggieDbHelperConcurrencyTest.class.getSimpleName();
+
+    private static final String TEST_DATABASE_NAME = "veggies_concurrency_test.db";
+
+    private static final int ROW_COUNT = 2000;
+
+    private static final int READ_COUNT = 200;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void readDuringWrite_walVersusRollbackJournal() throws Exception {
+        long[] rollback = measureReadsDuringWrites(false);
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+        long[] wal = measureReadsDuringWrites(true);
+
+        Log.i(LOG_TAG, "rollback journal: p50=" + percentile(rollback, 50) + "us p99="
+                + percentile(rollback, 99) + "us");
+        Log.i(LOG_TAG, "write-ahead log:  p50=" + percentile(wal, 50) + "us p99="
+                + percentile(wal, 99) + "us");
+
+        assertEquals(READ_COUNT, rollback.length);
+        assertEquals(READ_COUNT, wal.length);
+
+        // With the rollback journal every read waits for the write in progress, which shows
+        // most in the tail
+        assertTrue("WAL p99 " + percentile(wal, 99) + "us exceeds rollback journal p99 "
+                        + percentile(rollback, 99) + "us",
+                percentile(wal, 99) <= percentile(rollback, 99));
+    }
+
+    @Test
+    public void onConfigure_tunesTheWritingConnection() {
+        VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        helper.setSynchronousMode(VeggieDbHelper.SYNCHRONOUS_FULL);
+        helper.setCacheSizeKb(4096);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            // A transaction holds the primary connection, which runs every write
+            db.beginTransaction();
+            try {
+                // PRAGMA synchronous reports FULL as 2
+                assertEquals(2, queryPragma(db, "PRAGMA synchronous"));
+                assertEquals(-4096, queryPragma(db, "PRAGMA cache_size"));
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    /**
+     * Fill a database, then time {@link #READ_COUNT} full-table reads on this thread while a
+     * second thread updates quantities in a loop. Return the read latencies in microseconds.
+     */
+    private long[] measureReadsDuringWrites(boolean writeAheadLogging) throws Exception {
+        final VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        helper.setWriteAheadLoggingEnabled(writeAheadLogging);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.execSQL("INSERT INTO suppliers (_id, supplierName, supplierPhone) "
+                        + "VALUES (1, 'Farm', '555')");
+                SQLiteStatement insert = db.compileStatement("INSERT INTO veggies (name, price, "
+                        + "quantity, supplier_id) VALUES (?, 1, 100, 1)");
+                for (int i = 0; i < ROW_COUNT; i++) {
+                    insert.bindString(1, "Veggie " + i);
+                    insert.executeInsert();
+                }
+                insert.close();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            final AtomicBoolean running = new AtomicBoolean(true);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SQLiteDatabase db = helper.getWritableDatabase();
+                    long id = 1;
+                    while (running.get()) {
+                        db.execSQL("UPDATE veggies SET quantity = quantity - 1 WHERE _id = ?",
+                                new Object[]{id});
+                        id = id % ROW_COUNT + 1;
+                    }
+                }
+            });
+            writer.start();
+
+            long[] latencies = new long[READ_COUNT];
+            SQLiteDatabase reader = helper.getReadableDatabase();
+            for (int i = 0; i < READ_COUNT; i++) {
+                long start = System.nanoTime();
+                Cursor cursor = reader.query(VeggieEntry.TABLE_NAME, null, null, null, null, null,
+                        null);
+                try {
+                    while (cursor.moveToNext()) {
+                        // Walk the whole cursor, as the ListView eventually does
+                    }
+                } finally {
+                    cursor.close();
+                }
+                latencies[i] = (System.nanoTime() - start) / 1000;
+            }
+
+            running.set(false);
+            writer.join();
+            return latencies;
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static long queryPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long percentile(long[] values, int percentile) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, sorted.length * percentile / 100);
+        return sorted[index];
+    }
+}
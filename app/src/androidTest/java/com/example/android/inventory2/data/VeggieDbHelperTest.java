@@ -0,0 +1,327 @@
+package com.example.android.inventory2.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for the schema migrations in {@link VeggieDbHelper}, run against a real
+ * database file on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VeggieDbHelperTest {
+
+    private static final String TEST_DATABASE_NAME = "veggies_test.db";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsRowsAndAddsIndexes() {
+        // Build a version 1 database by hand, the way the first release created it
+        File file = mContext.getDatabasePath(TEST_DATABASE_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase v1 = SQLiteDatabase.openOrCreateDatabase(file, null);
+        v1.execSQL("CREATE TABLE veggies (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "name TEXT NOT NULL, price REAL NOT NULL, quantity INTEGER NOT NULL, "
+                + "supplierName TEXT NOT NULL, supplierPhone TEXT NOT NULL);");
+        v1.execSQL("INSERT INTO veggies (name, price, quantity, supplierName, supplierPhone) "
+                + "VALUES ('Carrot', 4, 3, 'Whole Foods', '(800) 123-4567');");
+        v1.execSQL("INSERT INTO veggies (name, price, quantity, supplierName, supplierPhone) "
+                + "VALUES ('Leek', 2, 10, 'Farm Co', '(800) 765-4321');");
+        v1.execSQL("INSERT INTO veggies (name, price, quantity, supplierName, supplierPhone) "
+                + "VALUES ('Onion', 1, 0, 'Whole Foods', '(800) 123-4567');");
+        v1.setVersion(1);
+        v1.close();
+
+        // Opening it through the helper runs the migration
+        VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            assertEquals(VeggieDbHelper.DATABASE_VERSION, db.getVersion());
+
+            Cursor cursor = db.query(VeggieEntry.TABLE_NAME, null, null, null, null, null,
+                    VeggieEntry._ID);
+            try {
+                assertEquals(3, cursor.getCount());
+                assertTrue(cursor.moveToFirst());
+                assertEquals("Carrot", cursor.getString(
+                        cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_NAME)));
+                assertEquals(3, cursor.getInt(
+                        cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_QUANTITY)));
+                // Version 5 turned the price from dollars into whole cents
+                assertEquals(400, cursor.getLong(
+                        cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_PRICE)));
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.rawQuery("SELECT COUNT(*) FROM veggies WHERE typeof(price) = 'integer'",
+                    null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(3, cursor.getInt(0));
+            } finally {
+                cursor.close();
+            }
+
+            // Version 6 stored each supplier once, and the veggies refer to it
+            cursor = db.rawQuery("SELECT v.name, s.supplierName FROM veggies v "
+                    + "JOIN suppliers s ON s._id = v.supplier_id ORDER BY v._id", null);
+            try {
+                assertEquals(3, cursor.getCount());
+                assertTrue(cursor.moveToPosition(2));
+                assertEquals("Onion", cursor.getString(0));
+                assertEquals("Whole Foods", cursor.getString(1));
+            } finally {
+                cursor.close();
+            }
+            cursor = db.rawQuery("SELECT COUNT(*) FROM suppliers", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(2, cursor.getInt(0));
+            } finally {
+                cursor.close();
+            }
+
+            // The search index was rebuilt from the suppliers table
+            assertEquals(2, countMatches(db, "whole*"));
+
+            // Rebuilding the veggies table must not cascade into the ledger seeded at version 4
+            cursor = db.rawQuery("SELECT COUNT(*) FROM "
+                    + VeggieContract.StockMovementEntry.TABLE_NAME, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(2, cursor.getInt(0));
+            } finally {
+                cursor.close();
+            }
+
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_NAME);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SUPPLIER);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_QUANTITY);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SUPPLIER_BY_NAME);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SUPPLIER_BY_QUANTITY);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SKU);
+            assertIndexExists(db, VeggieDbHelper.INDEX_STOCK_LEVEL_LOCATION);
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void newDatabase_matchesMigratedSchema() {
+        VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_NAME);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SUPPLIER);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_QUANTITY);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SUPPLIER_BY_NAME);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SUPPLIER_BY_QUANTITY);
+            assertIndexExists(db, VeggieDbHelper.INDEX_VEGGIE_SKU);
+            assertIndexExists(db, VeggieDbHelper.INDEX_STOCK_LEVEL_LOCATION);
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void nameLookup_usesCaseInsensitiveIndex() {
+        VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            String plan = queryPlan(db, "SELECT _id FROM veggies WHERE name = 'carrot' COLLATE NOCASE");
+            assertTrue(plan, plan.contains(VeggieDbHelper.INDEX_VEGGIE_NAME));
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void catalogOrders_areServedByIndexes() {
+        VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            db.execSQL("INSERT INTO suppliers (_id, supplierName, supplierPhone) "
+                    + "VALUES (1, 'Whole Foods', '(800) 123-4567');");
+            db.execSQL("INSERT INTO suppliers (_id, supplierName, supplierPhone) "
+                    + "VALUES (2, 'Farm Co', '(800) 765-4321');");
+            for (int i = 0; i < 100; i++) {
+                db.execSQL("INSERT INTO veggies (name, price, quantity, supplier_id) VALUES ('Veggie "
+                        + i + "', 4, " + (i % 10) + ", " + (1 + i % 2) + ");");
+            }
+
+            String[] columns = {VeggieEntry._ID, VeggieEntry.COLUMN_VEGGIE_NAME,
+                    VeggieEntry.COLUMN_VEGGIE_PRICE, VeggieEntry.COLUMN_VEGGIE_QUANTITY};
+            String[] sorts = {VeggieContract.SORT_ID, VeggieContract.SORT_NAME,
+                    VeggieContract.SORT_LOW_STOCK};
+            String[] selections = {null, VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + "=1"};
+            for (String sort : sorts) {
+                // The ORDER BY the provider actually runs for this sort
+                Uri uri = VeggieEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(VeggieContract.PARAM_SORT, sort)
+                        .build();
+                String sortOrder = VeggieProvider.getSortOrder(uri, null);
+                for (String selection : selections) {
+                    String plan = queryPlan(db, SQLiteQueryBuilder.buildQueryString(false,
+                            VeggieEntry.TABLE_NAME, columns, selection, null, null, sortOrder, "50"));
+                    assertFalse(sort + " " + selection + "\n" + plan, plan.contains("TEMP B-TREE"));
+                }
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void skuLookup_probesTheUniqueIndex() {
+        VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            db.execSQL("INSERT INTO suppliers (_id, supplierName, supplierPhone) "
+                    + "VALUES (1, 'Whole Foods', '(800) 123-4567');");
+            for (int i = 0; i < 100; i++) {
+                // Every other veggie has no code, which the unique index allows
+                db.execSQL("INSERT INTO veggies (name, price, quantity, supplier_id, sku) VALUES "
+                        + "('Veggie " + i + "', 4, 3, 1, " + (i % 2 == 0 ? "'400" + i + "'" : "NULL")
+                        + ");");
+            }
+
+            String plan = queryPlan(db, SQLiteQueryBuilder.buildQueryString(false,
+                    VeggieEntry.TABLE_NAME, new String[]{VeggieEntry._ID},
+                    VeggieEntry.COLUMN_VEGGIE_SKU + "='4002'", null, null, null, null));
+            assertTrue(plan, plan.contains(VeggieDbHelper.INDEX_VEGGIE_SKU));
+
+            try {
+                db.execSQL("INSERT INTO veggies (name, price, quantity, supplier_id, sku) "
+                        + "VALUES ('Carrot', 4, 3, 1, '4002');");
+                fail("A second veggie was given the same SKU");
+            } catch (SQLiteConstraintException e) {
+                // Expected
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void fullTextIndex_followsInsertsUpdatesAndDeletes() {
+        VeggieDbHelper helper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME,
+                VeggieDbHelper.DATABASE_VERSION);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            db.execSQL("INSERT INTO suppliers (_id, supplierName, supplierPhone) "
+                    + "VALUES (1, 'Whole Foods', '(800) 123-4567');");
+            db.execSQL("INSERT INTO veggies (name, price, quantity, supplier_id) "
+                    + "VALUES ('Carrot', 4, 3, 1);");
+            assertEquals(1, countMatches(db, "car*"));
+            assertEquals(1, countMatches(db, "whole*"));
+
+            db.execSQL("UPDATE veggies SET name = 'Parsnip'");
+            assertEquals(0, countMatches(db, "car*"));
+            assertEquals(1, countMatches(db, "pars*"));
+
+            // A quantity update changes the veggie row only, with no trigger re-indexing it. The
+            // count is per connection, so a transaction keeps every statement on the same one.
+            db.beginTransaction();
+            try {
+                long changes = queryTotalChanges(db);
+                db.execSQL("UPDATE veggies SET quantity = quantity - 1");
+                assertEquals(changes + 1, queryTotalChanges(db));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            assertEquals(1, countMatches(db, "pars*"));
+
+            // Renaming the supplier re-indexes its veggies
+            db.execSQL("UPDATE suppliers SET supplierName = 'Farm Co'");
+            assertEquals(0, countMatches(db, "whole*"));
+            assertEquals(1, countMatches(db, "farm*"));
+
+            db.execSQL("DELETE FROM veggies");
+            assertEquals(0, countMatches(db, "pars*"));
+        } finally {
+            helper.close();
+        }
+    }
+
+    /**
+     * Return the number of rows changed on this connection so far, including by triggers.
+     */
+    private static long queryTotalChanges(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT total_changes()", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int countMatches(SQLiteDatabase db, String match) {
+        Cursor cursor = db.rawQuery("SELECT docid FROM " + VeggieDbHelper.TABLE_VEGGIES_FTS
+                + " WHERE " + VeggieDbHelper.TABLE_VEGGIES_FTS + " MATCH ?", new String[]{match});
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertIndexExists(SQLiteDatabase db, String indexName) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{indexName});
+        try {
+            assertEquals("Missing index " + indexName, 1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String queryPlan(SQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android.inventory2.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented measurement of the list and detail projection profiles against the device's
+ * CursorWindow, which the JVM tests can't size like the platform does. Logs rows per window,
+ * window fills and the time to scroll through every row for both profiles.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VeggieProjectionWindowTest {
+
+    private static final String LOG_TAG = VeggieProjectionWindowTest.class.getSimpleName();
+
+    private static final String TEST_DATABASE_NAME = "veggies_projection_test.db";
+
+    /**
+     * Enough rows to need several windows with either profile
+     */
+    private static final int ROWS = 50000;
+
+    private static final int SUPPLIERS = 50;
+
+    private Context mContext;
+
+    private VeggieDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+        mHelper = new VeggieDbHelper(mContext, TEST_DATABASE_NAME, VeggieDbHelper.DATABASE_VERSION);
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 1; i <= SUPPLIERS; i++) {
+                db.execSQL("INSERT INTO suppliers (_id, supplierName, supplierPhone) VALUES (?, ?, ?)",
+                        new Object[]{i, "Green Valley Organic Produce Wholesale " + i,
+                                "(800) 555-" + (1000 + i)});
+            }
+            SQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO veggies (name, price, quantity, supplier_id) VALUES (?, ?, ?, ?)");
+            for (int i = 0; i < ROWS; i++) {
+                insert.bindString(1, "Veggie " + i);
+                insert.bindLong(2, 100 + i % 900);
+                insert.bindLong(3, i % 100);
+                insert.bindLong(4, 1 + i % SUPPLIERS);
+                insert.executeInsert();
+            }
+            insert.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @Test
+    public void listProfile_fitsMoreRowsPerWindow() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        // The tables the provider reads each profile from: the list needs no join
+        Measurement list = scroll(db.query(VeggieEntry.TABLE_NAME,
+                VeggieEntry.LIST_PROJECTION, null, null, null, null, null));
+        Measurement detail = scroll(db.query(VeggieProvider.TABLES_VEGGIES_WITH_SUPPLIER,
+                VeggieEntry.DETAIL_PROJECTION, null, null, null, null, null));
+
+        Log.i(LOG_TAG, "list   " + list);
+        Log.i(LOG_TAG, "detail " + detail);
+        assertTrue(list + " vs " + detail, list.rowsPerWindow > detail.rowsPerWindow);
+        assertTrue(list + " vs " + detail, list.windowFills < detail.windowFills);
+    }
+
+    /**
+     * Read every column of every row, the way a list binds them while the user scrolls.
+     */
+    private static Measurement scroll(Cursor cursor) {
+        Measurement measurement = new Measurement();
+        long start = System.nanoTime();
+        try {
+            CursorWindow lastWindow = null;
+            int lastStartPosition = -1;
+            int columns = cursor.getColumnCount();
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < columns; i++) {
+                    cursor.getString(i);
+                }
+                CursorWindow window = ((SQLiteCursor) cursor).getWindow();
+                if (window != lastWindow || window.getStartPosition() != lastStartPosition) {
+                    lastWindow = window;
+                    lastStartPosition = window.getStartPosition();
+                    measurement.windowFills++;
+                    measurement.rowsPerWindow = Math.max(measurement.rowsPerWindow,
+                            window.getNumRows());
+                }
+            }
+            measurement.rows = cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+        measurement.scrollMillis = (System.nanoTime() - start) / 1e6;
+        return measurement;
+    }
+
+    private static final class Measurement {
+        int rows;
+        int rowsPerWindow;
+        int windowFills;
+        double scrollMillis;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d rows  %d rows/window  %d fills  %.1f ms",
+                    rows, rowsPerWindow, windowFills, scrollMillis);
+        }
+    }
+}
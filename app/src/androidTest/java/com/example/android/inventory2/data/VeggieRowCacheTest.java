@@ -0,0 +1,77 @@
+package com.example.android.inventory2.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link VeggieRowCache}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VeggieRowCacheTest {
+
+    @Test
+    public void put_thenGet_hits() {
+        VeggieRowCache cache = new VeggieRowCache(2);
+        assertNull(cache.get(1));
+
+        cache.put(row(1, "Carrot"), cache.generation());
+        assertNotNull(cache.get(1));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void put_afterInvalidation_isDropped() {
+        VeggieRowCache cache = new VeggieRowCache(2);
+
+        // A reader starts, a writer commits and invalidates, then the reader finishes
+        long generation = cache.generation();
+        cache.invalidate(1);
+        cache.put(row(1, "Carrot"), generation);
+
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void put_beyondCapacity_evictsLeastRecentlyUsed() {
+        VeggieRowCache cache = new VeggieRowCache(2);
+        cache.put(row(1, "Carrot"), cache.generation());
+        cache.put(row(2, "Leek"), cache.generation());
+        cache.get(1);
+        cache.put(row(3, "Onion"), cache.generation());
+
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void toCursor_returnsProjectedColumns() {
+        VeggieRowCache cache = new VeggieRowCache(2);
+        Object[] values = cache.put(row(1, "Carrot"), cache.generation());
+
+        Cursor cursor = VeggieRowCache.toCursor(values,
+                new String[]{VeggieEntry.COLUMN_VEGGIE_NAME, VeggieEntry._ID});
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Carrot", cursor.getString(0));
+        assertEquals(1, cursor.getLong(1));
+        cursor.close();
+
+        assertNull(VeggieRowCache.toCursor(values, new String[]{"count(*)"}));
+    }
+
+    private static Cursor row(long id, String name) {
+        MatrixCursor cursor = new MatrixCursor(VeggieRowCache.ALL_COLUMNS);
+        cursor.addRow(new Object[]{id, name, 4, 3, 1, "Whole Foods", "(800) 123-4567", null});
+        cursor.moveToFirst();
+        return cursor;
+    }
+}
@@ -1,33 +1,47 @@
 package com.example.android.inventory2;
 
+import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
 
 import com.example.android.inventory2.EditorActivity;
 import com.example.android.inventory2.R;
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.SupplierEntry;
 import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieStatsEntry;
 import com.example.android.inventory2.data.VeggieDbHelper;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Displays list of veggies that were entered and stored in the app.
  */
 public class CatalogActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+        LoaderManager.LoaderCallbacks<List<Veggie>>, CsvTransferTask.Listener {
 
     /**
      * Identifier for the veggie data loader
@@ -35,15 +49,223 @@ public class CatalogActivity extends AppCompatActivity implements
     private static final int VEGGIE_LOADER = 0;
 
     /**
-     * Adapter for the ListView
+     * Identifier for the loader of the dashboard header figures
+     */
+    private static final int STATS_LOADER = 1;
+
+    /**
+     * Identifier for the loader of the suppliers offered by the supplier filter
+     */
+    private static final int SUPPLIER_LOADER = 2;
+
+    /**
+     * Columns of the suppliers offered by the supplier filter
+     */
+    private static final String[] SUPPLIER_PROJECTION = {
+            SupplierEntry._ID,
+            SupplierEntry.COLUMN_SUPPLIER_NAME};
+
+    /**
+     * Value of {@link #mSupplierId} when the catalog shows every supplier
+     */
+    static final long ALL_SUPPLIERS = -1;
+
+    /**
+     * Keys in the saved instance state for the chosen order and supplier
+     */
+    private static final String STATE_SORT = "sort";
+    private static final String STATE_SUPPLIER_ID = "supplier_id";
+
+    /**
+     * Shortest time between two reloads of the dashboard header, in milliseconds. A burst of
+     * edits then costs one aggregate query rather than one per edit.
+     */
+    private static final long STATS_UPDATE_THROTTLE_MS = 1000;
+
+    /**
+     * Number of rows fetched per page of the catalog
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Delay after the last keystroke before a search runs, in milliseconds
+     */
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+
+    /**
+     * Request code for picking the CSV document to import
+     */
+    private static final int REQUEST_IMPORT_CSV = 1;
+
+    /**
+     * Request code for creating the CSV document to export to
+     */
+    private static final int REQUEST_EXPORT_CSV = 2;
+
+    /**
+     * MIME type of the CSV documents
+     */
+    private static final String CSV_MIME_TYPE = "text/csv";
+
+    /**
+     * Name suggested for an exported CSV document
+     */
+    private static final String CSV_EXPORT_FILE_NAME = "veggies.csv";
+
+    /**
+     * Handler used to debounce search keystrokes
+     */
+    private final Handler mSearchHandler = new Handler();
+
+    /**
+     * Text the catalog is currently filtered by, or null to show every veggie
+     */
+    private String mSearchQuery;
+
+    /**
+     * Order of the catalog, one of the {@link VeggieContract#PARAM_SORT} values. The provider
+     * turns it into an ORDER BY that an index serves.
+     */
+    private String mSort = VeggieContract.SORT_ID;
+
+    /**
+     * ID of the supplier the catalog is filtered by, or {@link #ALL_SUPPLIERS}
+     */
+    private long mSupplierId = ALL_SUPPLIERS;
+
+    /**
+     * Suppliers offered by the supplier filter, by name. Owned by the supplier loader.
+     */
+    private Cursor mSuppliersCursor;
+
+    /**
+     * Runs the search for {@link #mSearchQuery}. Restarting the loader cancels the search that
+     * is still in flight for the previous text.
+     */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            getLoaderManager().restartLoader(VEGGIE_LOADER, null, CatalogActivity.this);
+        }
+    };
+
+    /**
+     * True once the catalog loader has delivered rows from the database. Until then the list
+     * may show the {@link CatalogSnapshot} of the last run.
+     */
+    private boolean mLiveRowsLoaded;
+
+    /**
+     * True while more rows may exist beyond the ones loaded
+     */
+    private boolean mHasMoreRows = true;
+
+    /**
+     * Adapter for the RecyclerView
+     */
+    VeggieAdapter mAdapter;
+
+    /**
+     * Collects taps on the "Sale" buttons until they are written
+     */
+    private SaleBuffer mSaleBuffer;
+
+    /**
+     * Shown instead of the list when there are no veggies
+     */
+    private View mEmptyView;
+
+    /**
+     * Shows the progress of {@link #mCsvTask} while it runs
+     */
+    private TextView mCsvProgressTextView;
+
+    /**
+     * CSV import or export started from this screen, or null
+     */
+    private CsvTransferTask mCsvTask;
+
+    /**
+     * Dashboard header figures
      */
-    VeggieCursorAdapter mCursorAdapter;
+    private TextView mStatsValueTextView;
+    private TextView mStatsQuantityTextView;
+    private TextView mStatsLowStockTextView;
+
+    /**
+     * Loads the dashboard header figures from {@link VeggieStatsEntry#CONTENT_URI}. It runs
+     * beside the catalog loader, so a slow aggregate never holds up the list.
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> mStatsLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    CursorLoader loader = new CursorLoader(CatalogActivity.this,
+                            VeggieStatsEntry.CONTENT_URI, null, null, null, null);
+                    loader.setUpdateThrottle(STATS_UPDATE_THROTTLE_MS);
+                    return loader;
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+                    if (cursor == null || !cursor.moveToFirst()) {
+                        return;
+                    }
+                    long totalValue = cursor.getLong(
+                            cursor.getColumnIndex(VeggieStatsEntry.COLUMN_TOTAL_VALUE));
+                    long totalQuantity = cursor.getLong(
+                            cursor.getColumnIndex(VeggieStatsEntry.COLUMN_TOTAL_QUANTITY));
+                    int lowStockCount = cursor.getInt(
+                            cursor.getColumnIndex(VeggieStatsEntry.COLUMN_LOW_STOCK_COUNT));
+                    mStatsValueTextView.setText(getString(R.string.stats_total_value,
+                            PriceFormatter.format(totalValue)));
+                    mStatsQuantityTextView.setText(getString(R.string.stats_total_quantity,
+                            totalQuantity));
+                    mStatsLowStockTextView.setText(getString(R.string.stats_low_stock,
+                            lowStockCount));
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                    // The header only holds Strings, so there is no cursor to let go of
+                }
+            };
+
+    /**
+     * Loads the suppliers offered by the supplier filter, so the dialog opens without a query
+     * on the main thread.
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> mSupplierLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    return new CursorLoader(CatalogActivity.this, SupplierEntry.CONTENT_URI,
+                            SUPPLIER_PROJECTION, null, null,
+                            SupplierEntry.COLUMN_SUPPLIER_NAME + " COLLATE NOCASE");
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+                    mSuppliersCursor = cursor;
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                    mSuppliersCursor = null;
+                }
+            };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_catalog);
 
+        // Keep the chosen order and supplier across configuration changes
+        if (savedInstanceState != null) {
+            mSort = savedInstanceState.getString(STATE_SORT, VeggieContract.SORT_ID);
+            mSupplierId = savedInstanceState.getLong(STATE_SUPPLIER_ID, ALL_SUPPLIERS);
+        }
+
         // Setup FAB to open EditorActivity
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
@@ -54,22 +276,28 @@ public class CatalogActivity extends AppCompatActivity implements
             }
         });
 
-        // Find the ListView which will be populated with the veggie data
-        ListView veggieListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the veggie data
+        RecyclerView veggieListView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        veggieListView.setLayoutManager(layoutManager);
+
+        // Find the empty view, which is only shown when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        veggieListView.setEmptyView(emptyView);
+        // Find the line that shows the progress of a CSV import or export
+        mCsvProgressTextView = (TextView) findViewById(R.id.csv_progress);
 
-        // Setup an Adapter to create a list item for each row of pet data in the Cursor.
-        // There is no veggie data yet (until the loader finishes) so pass in null for the Cursor.
-        mCursorAdapter = new VeggieCursorAdapter(this, null);
-        veggieListView.setAdapter(mCursorAdapter);
+        // Find the dashboard header figures
+        mStatsValueTextView = (TextView) findViewById(R.id.stats_total_value);
+        mStatsQuantityTextView = (TextView) findViewById(R.id.stats_total_quantity);
+        mStatsLowStockTextView = (TextView) findViewById(R.id.stats_low_stock);
 
-        // Setup the item click listener
-        veggieListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Setup an Adapter to create a list item for each veggie. There is no veggie data yet
+        // (until the loader finishes), so the list starts out empty.
+        mSaleBuffer = new SaleBuffer(this, VeggieRepository.getInstance(this));
+        mAdapter = new VeggieAdapter(new VeggieAdapter.OnVeggieClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onVeggieClick(long id) {
                 // Create new intent to go to {@link EditorActivity}
                 Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
 
@@ -86,10 +314,45 @@ public class CatalogActivity extends AppCompatActivity implements
                 // Launch the {@link EditorActivity} to display the data for the current veggie.
                 startActivity(intent);
             }
+        }, mSaleBuffer);
+        veggieListView.setAdapter(mAdapter);
+
+        // On a cold start, draw the first screenful from the last run while the database opens.
+        // After a configuration change the loader hands its rows back at once instead.
+        if (savedInstanceState == null) {
+            List<Veggie> snapshot = CatalogSnapshot.read(CatalogSnapshot.getFile(this),
+                    getSnapshotKey());
+            if (snapshot != null) {
+                mAdapter.submitList(snapshot);
+            }
+        }
+
+        // Fetch the next page once the user scrolls within half a page of the loaded rows. The
+        // loader reads only the rows after the last one and appends them, so the rows already
+        // on screen are neither read again nor diffed against a reloaded list.
+        veggieListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                VeggieListLoader loader = getVeggieLoader();
+                int totalItemCount = mAdapter.getItemCount();
+                if (mHasMoreRows && loader != null && totalItemCount >= loader.getRowLimit()
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - PAGE_SIZE / 2) {
+                    loader.loadNextPage();
+                }
+            }
         });
 
-        // Kick off the loader
+        // Kick off the loader with the first page
         getLoaderManager().initLoader(VEGGIE_LOADER, null, this);
+
+        // Load the dashboard header on its own loader
+        getLoaderManager().initLoader(STATS_LOADER, null, mStatsLoaderCallbacks);
+
+        // Load the suppliers for the supplier filter
+        getLoaderManager().initLoader(SUPPLIER_LOADER, null, mSupplierLoaderCallbacks);
+
+        // Keep the stock ledger compacted in the background
+        StockLedgerCompactionService.schedule(this);
     }
 
     /**
@@ -101,24 +364,28 @@ public class CatalogActivity extends AppCompatActivity implements
         // and carrot's veggies attributes are the values.
         ContentValues values = new ContentValues();
         values.put(VeggieEntry.COLUMN_VEGGIE_NAME, "Carrot");
-        values.put(VeggieEntry.COLUMN_VEGGIE_PRICE, "4");
+        values.put(VeggieEntry.COLUMN_VEGGIE_PRICE, 400);
         values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 3);
         values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, "Whole Foods");
         values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE, "(800) 123-4567");
 
-        // Insert a new row for carrot into the provider using the ContentResolver.
+        // Insert a new row for carrot into the provider in the background.
         // Use the {@link VeggieEntry#CONTENT_URI} to indicate that we want to insert
-        // into the veggies database table.
-        // Receive the new content URI that will allow us to access carrot's data in the future.
-        Uri newUri = getContentResolver().insert(VeggieEntry.CONTENT_URI, values);
+        // into the veggies database table. The list picks up the new row on its own.
+        VeggieRepository.getInstance(this).insert(VeggieEntry.CONTENT_URI, values, null);
     }
 
     /**
      * Helper method to delete all veggies in the database.
      */
     private void deleteAllVeggies() {
-        int rowsDeleted = getContentResolver().delete(VeggieEntry.CONTENT_URI, null, null);
-        Log.v("CatalogActivity", rowsDeleted + " rows deleted from veggie database");
+        VeggieRepository.getInstance(this).delete(VeggieEntry.CONTENT_URI,
+                new VeggieRepository.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer rowsDeleted) {
+                        Log.v("CatalogActivity", rowsDeleted + " rows deleted from veggie database");
+                    }
+                });
     }
 
     @Override
@@ -126,9 +393,197 @@ public class CatalogActivity extends AppCompatActivity implements
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        // Search as the user types, once they pause for SEARCH_DEBOUNCE_MS
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query, 0);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText, SEARCH_DEBOUNCE_MS);
+                return true;
+            }
+        });
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Tick the current order and show whether a supplier filter is on
+        int sortItemId;
+        switch (mSort) {
+            case VeggieContract.SORT_NAME:
+                sortItemId = R.id.action_sort_by_name;
+                break;
+            case VeggieContract.SORT_LOW_STOCK:
+                sortItemId = R.id.action_sort_by_low_stock;
+                break;
+            default:
+                sortItemId = R.id.action_sort_by_id;
+                break;
+        }
+        menu.findItem(sortItemId).setChecked(true);
+        menu.findItem(R.id.action_filter_supplier).setChecked(mSupplierId != ALL_SUPPLIERS);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    /**
+     * Show the catalog in the given {@link VeggieContract#PARAM_SORT} order.
+     */
+    private void setSort(String sort) {
+        if (sort.equals(mSort)) {
+            return;
+        }
+        mSort = sort;
+        restartCatalog();
+    }
+
+    /**
+     * Show only the veggies of the supplier with the given ID, or every veggie for
+     * {@link #ALL_SUPPLIERS}.
+     */
+    private void setSupplierFilter(long supplierId) {
+        if (supplierId == mSupplierId) {
+            return;
+        }
+        mSupplierId = supplierId;
+        restartCatalog();
+    }
+
+    /**
+     * Let the user pick the supplier to filter the catalog by.
+     */
+    private void showSupplierFilterDialog() {
+        final Cursor suppliers = mSuppliersCursor;
+        if (suppliers == null || suppliers.isClosed()) {
+            // The suppliers have not loaded yet
+            return;
+        }
+        int checkedItem = -1;
+        int idColumn = suppliers.getColumnIndex(SupplierEntry._ID);
+        for (suppliers.moveToPosition(-1); suppliers.moveToNext(); ) {
+            if (suppliers.getLong(idColumn) == mSupplierId) {
+                checkedItem = suppliers.getPosition();
+                break;
+            }
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.filter_supplier_dialog_title);
+        builder.setSingleChoiceItems(suppliers, checkedItem, SupplierEntry.COLUMN_SUPPLIER_NAME,
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (!suppliers.isClosed() && suppliers.moveToPosition(which)) {
+                            setSupplierFilter(suppliers.getLong(
+                                    suppliers.getColumnIndex(SupplierEntry._ID)));
+                        }
+                        dialog.dismiss();
+                    }
+                });
+        builder.setNeutralButton(R.string.filter_supplier_all, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                setSupplierFilter(ALL_SUPPLIERS);
+            }
+        });
+        builder.create().show();
+    }
+
+    /**
+     * Load the catalog again from the first page, after its order or filter changed.
+     */
+    private void restartCatalog() {
+        getLoaderManager().restartLoader(VEGGIE_LOADER, null, this);
+    }
+
+    /**
+     * Filter the catalog by the given text after the given delay. A newer call replaces a
+     * search that has not started yet.
+     */
+    private void search(String query, long delayMillis) {
+        String trimmed = query == null ? null : query.trim();
+        String newQuery = TextUtils.isEmpty(trimmed) ? null : trimmed;
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        if (TextUtils.equals(newQuery, mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = newQuery;
+        mSearchHandler.postDelayed(mSearchRunnable, delayMillis);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SORT, mSort);
+        outState.putLong(STATE_SUPPLIER_ID, mSupplierId);
+    }
+
+    @Override
+    protected void onPause() {
+        // Write the sales still waiting in the buffer, so none are lost if the app is closed
+        mSaleBuffer.flush();
+        super.onPause();
+    }
+
+    @Override
+    protected void onStop() {
+        // The app may be killed from here on, so keep the first screenful for the next start
+        saveSnapshot();
+        super.onStop();
+    }
+
+    /**
+     * Write the first page of the catalog to the {@link CatalogSnapshot} in the background.
+     * Search results are not the catalog, and rows that never came from the database are
+     * already in the snapshot.
+     */
+    private void saveSnapshot() {
+        if (!mLiveRowsLoaded || mSearchQuery != null) {
+            return;
+        }
+        List<Veggie> veggies = mAdapter.getCurrentList();
+        final List<Veggie> firstPage = new ArrayList<>(
+                veggies.subList(0, Math.min(veggies.size(), PAGE_SIZE)));
+        final File file = CatalogSnapshot.getFile(this);
+        final String key = getSnapshotKey();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                CatalogSnapshot.write(file, key, firstPage, PAGE_SIZE);
+            }
+        });
+    }
+
+    /**
+     * Return the {@link CatalogSnapshot} key of the current order and supplier filter.
+     */
+    private String getSnapshotKey() {
+        return getSnapshotKey(mSort, mSupplierId);
+    }
+
+    /**
+     * Return the {@link CatalogSnapshot} key of the given order and supplier filter.
+     */
+    static String getSnapshotKey(String sort, long supplierId) {
+        return sort + "/" + supplierId;
+    }
+
+    @Override
+    protected void onDestroy() {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        // The transfer goes on and still shows its outcome, just not on this screen
+        if (mCsvTask != null) {
+            mCsvTask.setListener(null);
+        }
+        super.onDestroy();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
@@ -141,39 +596,140 @@ public class CatalogActivity extends AppCompatActivity implements
             case R.id.action_delete_all_entries:
                 deleteAllVeggies();
                 return true;
+            // Respond to a click on one of the "Sort By" menu options
+            case R.id.action_sort_by_id:
+                setSort(VeggieContract.SORT_ID);
+                return true;
+            case R.id.action_sort_by_name:
+                setSort(VeggieContract.SORT_NAME);
+                return true;
+            case R.id.action_sort_by_low_stock:
+                setSort(VeggieContract.SORT_LOW_STOCK);
+                return true;
+            // Respond to a click on the "Filter by Supplier" menu option
+            case R.id.action_filter_supplier:
+                showSupplierFilterDialog();
+                return true;
+            // Respond to a click on the "Import CSV" menu option
+            case R.id.action_import_csv:
+                Intent openIntent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                openIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                // Spreadsheet apps do not agree on the MIME type of CSV, so accept any file
+                openIntent.setType("*/*");
+                startActivityForResult(openIntent, REQUEST_IMPORT_CSV);
+                return true;
+            // Respond to a click on the "Export CSV" menu option
+            case R.id.action_export_csv:
+                Intent createIntent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                createIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                createIntent.setType(CSV_MIME_TYPE);
+                createIntent.putExtra(Intent.EXTRA_TITLE, CSV_EXPORT_FILE_NAME);
+                startActivityForResult(createIntent, REQUEST_EXPORT_CSV);
+                return true;
+            // Respond to a click on the "Receive Delivery" menu option
+            case R.id.action_receive:
+                startActivity(new Intent(this, ReceiveActivity.class));
+                return true;
+            // Respond to a click on the "Provider Metrics" menu option
+            case R.id.action_provider_metrics:
+                startActivity(new Intent(this, MetricsActivity.class));
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // Define a projection that specifies the columns from the table we care about.
-        String[] projection = {
-                VeggieEntry._ID,
-                VeggieEntry.COLUMN_VEGGIE_NAME,
-                VeggieEntry.COLUMN_VEGGIE_PRICE,
-                VeggieEntry.COLUMN_VEGGIE_QUANTITY,
-                VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME,
-                VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE};
-
-        // This loader will execute the ContentProvider's query method on a background thread
-        return new CursorLoader(this,   // Parent activity context
-                VeggieEntry.CONTENT_URI,   // Provider content URI to query
-                projection,             // Columns to include in the resulting Cursor
-                null,                   // No selection clause
-                null,                   // No selection arguments
-                null);                  // Default sort order
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            super.onActivityResult(requestCode, resultCode, data);
+            return;
+        }
+        switch (requestCode) {
+            case REQUEST_IMPORT_CSV:
+                startCsvTransfer(data.getData(), true);
+                return;
+            case REQUEST_EXPORT_CSV:
+                startCsvTransfer(data.getData(), false);
+                return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * Import or export the catalog in the background, showing the progress above the list.
+     */
+    private void startCsvTransfer(Uri documentUri, boolean isImport) {
+        if (mCsvTask != null) {
+            // Only show the newest transfer
+            mCsvTask.setListener(null);
+        }
+        mCsvTask = new CsvTransferTask(this, documentUri, isImport);
+        mCsvTask.setListener(this);
+        mCsvTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update {@link VeggieCursorAdapter} with this new cursor containing updated veggie data
-        mCursorAdapter.swapCursor(data);
+    public void onCsvProgress(boolean isImport, int rows) {
+        mCsvProgressTextView.setText(getString(isImport ? R.string.csv_import_progress
+                : R.string.csv_export_progress, rows));
+        mCsvProgressTextView.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void onCsvFinished() {
+        mCsvProgressTextView.setVisibility(View.GONE);
+        mCsvTask = null;
+    }
+
+    /**
+     * Return the catalog loader, or null if it has not been created.
+     */
+    private VeggieListLoader getVeggieLoader() {
+        Loader<List<Veggie>> loader = getLoaderManager().getLoader(VEGGIE_LOADER);
+        return (VeggieListLoader) loader;
+    }
+
+    @Override
+    public Loader<List<Veggie>> onCreateLoader(int i, Bundle bundle) {
+        // Search the full-text index when the user has typed something
+        Uri.Builder builder = mSearchQuery == null
+                ? VeggieEntry.CONTENT_URI.buildUpon()
+                : VeggieEntry.CONTENT_SEARCH_URI.buildUpon().appendPath(mSearchQuery);
+        // The provider maps the order and supplier onto SQL it has an index for, and keeps the
+        // rows to the list columns so each CursorWindow holds as many as it can
+        builder.appendQueryParameter(VeggieContract.PARAM_PROFILE, VeggieContract.PROFILE_LIST);
+        builder.appendQueryParameter(VeggieContract.PARAM_SORT, mSort);
+        if (mSupplierId != ALL_SUPPLIERS) {
+            builder.appendQueryParameter(VeggieContract.PARAM_SUPPLIER_ID, String.valueOf(mSupplierId));
+        }
+        // Only ask for the first page; the loader appends the others as the user scrolls
+        Uri pagedUri = builder
+                .appendQueryParameter(VeggieContract.PARAM_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+
+        // This loader will query the ContentProvider and read the rows on a background thread
+        return new VeggieListLoader(this, pagedUri);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<List<Veggie>> loader, List<Veggie> data) {
+        mLiveRowsLoaded = true;
+
+        // A short list means we have reached the end of the table
+        mHasMoreRows = data.size() >= ((VeggieListLoader) loader).getRowLimit();
+
+        // Only show the empty view when there is nothing to list
+        mEmptyView.setVisibility(data.isEmpty() ? View.VISIBLE : View.GONE);
+
+        // Hand the new snapshot to {@link VeggieAdapter}, which diffs it against the one on
+        // screen in the background and rebinds only the rows that changed. This is also how
+        // the rows of a {@link CatalogSnapshot} are reconciled with the database.
+        mAdapter.submitList(data);
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<List<Veggie>> loader) {
         // Callback called when the data needs to be deleted
-        mCursorAdapter.swapCursor(null);
+        mAdapter.submitList(null);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package com.example.android.inventory2;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Small file holding the first screenful of the catalog, so a cold start can draw rows before
+ * the provider has opened the database and the first query has returned. The live query
+ * replaces the rows once it finishes, and {@link VeggieAdapter} only rebinds those that
+ * changed in the meantime.
+ * <p>
+ * Each snapshot is stored under a key that describes the view it was taken of, such as its
+ * order and supplier filter, and is only read back for the same key.
+ */
+final class CatalogSnapshot {
+
+    private static final String LOG_TAG = CatalogSnapshot.class.getSimpleName();
+
+    /**
+     * Name of the snapshot file in the app's files directory
+     */
+    static final String FILE_NAME = "catalog_snapshot";
+
+    /**
+     * Version of the file layout. A file written by another version is ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Largest number of rows read back, so a damaged file can't ask for a huge list
+     */
+    private static final int MAX_ROWS = 1000;
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Return the snapshot file of the given context.
+     */
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Return the rows stored for the given key, or null if there is no snapshot for it.
+     * The file is a few kilobytes, so this is cheap enough to call before the first frame.
+     */
+    static List<Veggie> read(File file, String key) {
+        AtomicFile atomicFile = new AtomicFile(file);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+            if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ROWS) {
+                return null;
+            }
+            List<Veggie> veggies = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                veggies.add(new Veggie(in.readLong(), in.readUTF(), in.readLong(), in.readInt()));
+            }
+            return Collections.unmodifiableList(veggies);
+        } catch (FileNotFoundException e) {
+            // No snapshot yet
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Ignoring unreadable catalog snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store up to maxRows of the given rows under the given key, replacing any earlier snapshot.
+     * An empty list removes the snapshot, so an empty catalog starts out empty. Runs file I/O,
+     * so call it off the main thread.
+     */
+    static void write(File file, String key, List<Veggie> veggies, int maxRows) {
+        AtomicFile atomicFile = new AtomicFile(file);
+        if (veggies.isEmpty()) {
+            atomicFile.delete();
+            return;
+        }
+        int count = Math.min(Math.min(veggies.size(), maxRows), MAX_ROWS);
+        FileOutputStream stream = null;
+        try {
+            stream = atomicFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                Veggie veggie = veggies.get(i);
+                out.writeLong(veggie.id);
+                out.writeUTF(veggie.name != null ? veggie.name : "");
+                out.writeLong(veggie.price);
+                out.writeInt(veggie.quantity);
+            }
+            out.flush();
+            // Only now does the new file replace the old one
+            atomicFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write catalog snapshot", e);
+            if (stream != null) {
+                atomicFile.failWrite(stream);
+            }
+        }
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to read
+        }
+    }
+}
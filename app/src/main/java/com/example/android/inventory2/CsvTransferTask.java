@@ -0,0 +1,143 @@
+package com.example.android.inventory2;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.example.android.inventory2.data.VeggieCsv;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Imports or exports the catalog as CSV on a background thread, reading from or writing to a
+ * document the user picked through the Storage Access Framework. The document's file
+ * descriptor is streamed directly, so no copy of the file is kept in memory or in app storage.
+ * The number of rows transferred so far goes to the {@link Listener}, if one is set, and the
+ * outcome is shown as a toast.
+ */
+class CsvTransferTask extends AsyncTask<Void, Integer, Integer> {
+
+    /**
+     * Receives the progress of the transfer on the main thread, for example to show it on
+     * screen.
+     */
+    interface Listener {
+        /**
+         * Called when the transfer starts, with 0, and after every batch or page.
+         */
+        void onCsvProgress(boolean isImport, int rows);
+
+        /**
+         * Called when the transfer is over, whether it worked or not.
+         */
+        void onCsvFinished();
+    }
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = CsvTransferTask.class.getSimpleName();
+
+    /**
+     * Application context, so the task does not hold on to the activity
+     */
+    private final Context mContext;
+
+    /**
+     * Document to read from or write to
+     */
+    private final Uri mDocumentUri;
+
+    /**
+     * True to import the document, false to export to it
+     */
+    private final boolean mImport;
+
+    /**
+     * Listener for the progress, or null. Only used on the main thread.
+     */
+    private Listener mListener;
+
+    CsvTransferTask(Context context, Uri documentUri, boolean isImport) {
+        mContext = context.getApplicationContext();
+        mDocumentUri = documentUri;
+        mImport = isImport;
+    }
+
+    /**
+     * Set the listener for the progress, or null to stop listening, for example when the
+     * activity showing it goes away. Call on the main thread.
+     */
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    protected void onPreExecute() {
+        if (mListener != null) {
+            mListener.onCsvProgress(mImport, 0);
+        }
+    }
+
+    @Override
+    protected Integer doInBackground(Void... voids) {
+        ContentResolver resolver = mContext.getContentResolver();
+        try {
+            ParcelFileDescriptor descriptor = resolver.openFileDescriptor(mDocumentUri,
+                    mImport ? "r" : "wt");
+            if (descriptor == null) {
+                return -1;
+            }
+            VeggieCsv.ProgressListener progress = new VeggieCsv.ProgressListener() {
+                @Override
+                public void onProgress(int rows) {
+                    publishProgress(rows);
+                }
+            };
+            try {
+                if (mImport) {
+                    InputStream in = new FileInputStream(descriptor.getFileDescriptor());
+                    return VeggieCsv.importCsv(resolver, in, progress);
+                }
+                OutputStream out = new FileOutputStream(descriptor.getFileDescriptor());
+                return VeggieCsv.exportCsv(resolver, out, progress, null);
+            } finally {
+                descriptor.close();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(LOG_TAG, "CSV transfer failed for " + mDocumentUri, e);
+            return -1;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        if (mListener != null) {
+            mListener.onCsvProgress(mImport, values[0]);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(Integer rows) {
+        if (mListener != null) {
+            mListener.onCsvFinished();
+        }
+        String message;
+        if (rows < 0) {
+            message = mContext.getString(mImport ? R.string.csv_import_failed
+                    : R.string.csv_export_failed);
+        } else {
+            message = mContext.getString(mImport ? R.string.csv_import_successful
+                    : R.string.csv_export_successful, rows);
+        }
+        Toast.makeText(mContext, message, Toast.LENGTH_SHORT).show();
+    }
+}
@@ -3,6 +3,7 @@ package com.example.android.inventory2;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -55,6 +56,11 @@ public class EditorActivity extends AppCompatActivity implements
      */
     private EditText mQuantityEditText;
 
+    /**
+     * EditText field to enter the veggie's SKU or barcode
+     */
+    private EditText mSkuEditText;
+
     /**
      * EditText field to enter the supplier's name
      */
@@ -114,6 +120,7 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText = (EditText) findViewById(R.id.edit_veggie_name);
         mPriceEditText = (EditText) findViewById(R.id.edit_veggie_price);
         mQuantityEditText = (EditText) findViewById(R.id.edit_veggie_quantity);
+        mSkuEditText = (EditText) findViewById(R.id.edit_veggie_sku);
         mSupplierNameEditText = (EditText) findViewById(R.id.edit_supplier_name);
         mSupplierPhoneEditText = (EditText) findViewById(R.id.edit_supplier_phone);
 
@@ -123,6 +130,7 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText.setOnTouchListener(mTouchListener);
         mPriceEditText.setOnTouchListener(mTouchListener);
         mQuantityEditText.setOnTouchListener(mTouchListener);
+        mSkuEditText.setOnTouchListener(mTouchListener);
         mSupplierNameEditText.setOnTouchListener(mTouchListener);
         mSupplierPhoneEditText.setOnTouchListener(mTouchListener);
 
@@ -137,6 +145,7 @@ public class EditorActivity extends AppCompatActivity implements
         String nameString = mNameEditText.getText().toString().trim();
         String priceString = mPriceEditText.getText().toString().trim();
         String quantityString = mQuantityEditText.getText().toString().trim();
+        String skuString = mSkuEditText.getText().toString().trim();
         String supplierNameString = mSupplierNameEditText.getText().toString().trim();
         String supplierPhoneString = mSupplierPhoneEditText.getText().toString().trim();
 
@@ -145,7 +154,8 @@ public class EditorActivity extends AppCompatActivity implements
         // and check if all the fields in the editor are blank
         if (mCurrentVeggieUri == null &&
                 TextUtils.isEmpty(nameString) && TextUtils.isEmpty(priceString) &&
-                TextUtils.isEmpty(quantityString) && TextUtils.isEmpty(supplierNameString)
+                TextUtils.isEmpty(quantityString) && TextUtils.isEmpty(skuString)
+                && TextUtils.isEmpty(supplierNameString)
                 && TextUtils.isEmpty(supplierPhoneString)) {
             // Since no fields were modified, we can return early without creating a new veggie.
             // No need to create ContentValues and no need to do any ContentProvider operations.
@@ -156,10 +166,15 @@ public class EditorActivity extends AppCompatActivity implements
         // and veggie attributes from the editor are the values.
         ContentValues values = new ContentValues();
         values.put(VeggieEntry.COLUMN_VEGGIE_NAME, nameString);
-        values.put(VeggieEntry.COLUMN_VEGGIE_PRICE, priceString);
         values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, quantityString);
         values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, supplierNameString);
         values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE, supplierPhoneString);
+        // The SKU is optional; a blank field stores no code, so it doesn't clash with others
+        if (TextUtils.isEmpty(skuString)) {
+            values.putNull(VeggieEntry.COLUMN_VEGGIE_SKU);
+        } else {
+            values.put(VeggieEntry.COLUMN_VEGGIE_SKU, skuString);
+        }
 
         // Show a toast message when the veggie's name is missing.
         if (TextUtils.isEmpty(nameString)) {
@@ -191,14 +206,26 @@ public class EditorActivity extends AppCompatActivity implements
             return;
         }
 
+        // Show a toast message when the price is not a number with at most two decimals.
+        long priceCents;
+        try {
+            priceCents = PriceFormatter.parse(priceString);
+        } catch (NumberFormatException e) {
+            mPriceEditText.setError(getString(R.string.invalid_price));
+            Toast.makeText(this, getString(R.string.invalid_price), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         // Show a toast message when the user enters a negative price.
-        int priceInt = Integer.parseInt(priceString);
-        if (priceInt < 0) {
+        if (priceCents < 0) {
             mPriceEditText.setError(getString(R.string.negative_price));
             Toast.makeText(this, getString(R.string.negative_price), Toast.LENGTH_SHORT).show();
             return;
         }
 
+        // The database keeps the price as a whole number of cents
+        values.put(VeggieEntry.COLUMN_VEGGIE_PRICE, priceCents);
+
         // Show a toast message when the user enters a negative quantity.
         int quantityInt = Integer.parseInt(quantityString);
         if (quantityInt < 0) {
@@ -207,39 +234,50 @@ public class EditorActivity extends AppCompatActivity implements
             return;
         }
 
+        // The write runs on the repository's writer thread and the activity is usually gone
+        // by the time it finishes, so the toasts use the application context.
+        final Context appContext = getApplicationContext();
+
         // Determine if this is a new or existing veggie by checking if mCurrentVeggieUri is null or not
         if (mCurrentVeggieUri == null) {
             // This is a NEW veggie, so insert a new veggie into the provider,
-            // returning the content URI for the new veggie.
-            Uri newUri = getContentResolver().insert(VeggieEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_veggie_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_veggie_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // receiving the content URI for the new veggie.
+            VeggieRepository.getInstance(this).insert(VeggieEntry.CONTENT_URI, values,
+                    new VeggieRepository.Callback<Uri>() {
+                        @Override
+                        public void onResult(Uri newUri) {
+                            // Show a toast message depending on whether or not the insertion was successful.
+                            if (newUri == null) {
+                                // If the new content URI is null, then there was an error with insertion.
+                                Toast.makeText(appContext, R.string.editor_insert_veggie_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Otherwise, the insertion was successful and we can display a toast.
+                                Toast.makeText(appContext, R.string.editor_insert_veggie_successful,
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
         } else {
             // Otherwise this is an EXISTING veggie, so update the veggie with content URI: mCurrentVeggieUri
-            // and pass in the new ContentValues. Pass in null for the selection and selection args
-            // because mCurrentVeggieUri will already identify the correct row in the database that
-            // we want to modify.
-            int rowsAffected = getContentResolver().update(mCurrentVeggieUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_veggie_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_veggie_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // and pass in the new ContentValues. mCurrentVeggieUri already identifies the correct
+            // row in the database that we want to modify.
+            VeggieRepository.getInstance(this).update(mCurrentVeggieUri, values,
+                    new VeggieRepository.Callback<Integer>() {
+                        @Override
+                        public void onResult(Integer rowsAffected) {
+                            // Show a toast message depending on whether or not the update was successful.
+                            if (rowsAffected == null || rowsAffected == 0) {
+                                // If no rows were affected, then there was an error with the update.
+                                Toast.makeText(appContext, R.string.editor_update_veggie_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Otherwise, the update was successful and we can display a toast.
+                                Toast.makeText(appContext, R.string.editor_update_veggie_successful,
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
         }
     }
 
@@ -338,20 +376,13 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // Since the editor shows all veggie attributes, define a projection that contains
-        // all columns from the veggie table
-        String[] projection = {
-                VeggieEntry._ID,
-                VeggieEntry.COLUMN_VEGGIE_NAME,
-                VeggieEntry.COLUMN_VEGGIE_PRICE,
-                VeggieEntry.COLUMN_VEGGIE_QUANTITY,
-                VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME,
-                VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE};
-
+        // The editor shows all veggie attributes, so it asks for the detail profile. The
+        // supplier columns are only read here, when a single veggie is opened, and never for
+        // the rows of the catalog.
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
                 mCurrentVeggieUri,         // Query the content URI for the current veggie
-                projection,             // Columns to include in the resulting Cursor
+                VeggieEntry.DETAIL_PROJECTION, // Columns to include in the resulting Cursor
                 null,                   // No selection clause
                 null,                   // No selection arguments
                 null);                  // Default sort order
@@ -373,19 +404,22 @@ public class EditorActivity extends AppCompatActivity implements
             int quantityColumnIndex = cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_QUANTITY);
             int supplierColumnIndex = cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME);
             final int phoneColumnIndex = cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE);
+            int skuColumnIndex = cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_SKU);
 
             // Extract out the value from the Cursor for the given column index
             String name = cursor.getString(nameColumnIndex);
-            int price = cursor.getInt(priceColumnIndex);
+            long price = cursor.getLong(priceColumnIndex);
             final int quantity = cursor.getInt(quantityColumnIndex);
             String supplier = cursor.getString(supplierColumnIndex);
             String phone = cursor.getString(phoneColumnIndex);
+            String sku = cursor.getString(skuColumnIndex);
 
 
             // Update the views on the screen with the values from the database
             mNameEditText.setText(name);
-            mPriceEditText.setText(Integer.toString(price));
+            mPriceEditText.setText(PriceFormatter.format(price));
             mQuantityEditText.setText(Integer.toString(quantity));
+            mSkuEditText.setText(sku);
             mSupplierNameEditText.setText(supplier);
             mSupplierPhoneEditText.setText(phone);
 
@@ -438,6 +472,7 @@ public class EditorActivity extends AppCompatActivity implements
         mNameEditText.setText("");
         mPriceEditText.setText("");
         mQuantityEditText.setText("");
+        mSkuEditText.setText("");
         mSupplierNameEditText.setText("");
         mSupplierPhoneEditText.setText("");
     }
@@ -506,21 +541,26 @@ public class EditorActivity extends AppCompatActivity implements
     private void deleteVeggie() {
         // Only perform the delete if this is an existing veggie.
         if (mCurrentVeggieUri != null) {
-            // Call the ContentResolver to delete the veggie at the given content URI.
-            // Pass in null for the selection and selection args because the mCurrentPetUri
-            // content URI already identifies the veggie that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentVeggieUri, null, null);
-
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_veggie_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_veggie_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Ask the repository to delete the veggie at the given content URI in the
+            // background. The mCurrentVeggieUri content URI already identifies the veggie
+            // that we want.
+            final Context appContext = getApplicationContext();
+            VeggieRepository.getInstance(this).delete(mCurrentVeggieUri,
+                    new VeggieRepository.Callback<Integer>() {
+                        @Override
+                        public void onResult(Integer rowsDeleted) {
+                            // Show a toast message depending on whether or not the delete was successful.
+                            if (rowsDeleted == null || rowsDeleted == 0) {
+                                // If no rows were deleted, then there was an error with the delete.
+                                Toast.makeText(appContext, R.string.editor_delete_veggie_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Otherwise, the delete was successful and we can display a toast.
+                                Toast.makeText(appContext, R.string.editor_delete_veggie_successful,
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
         }
 
         // Close the activity
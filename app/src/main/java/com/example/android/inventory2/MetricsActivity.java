@@ -0,0 +1,136 @@
+package com.example.android.inventory2;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import java.util.Locale;
+
+/**
+ * Debug screen that shows the counters of {@link VeggieContract#METHOD_METRICS}: for every
+ * provider operation the calls, rows, latency percentiles and cursor window fills. Use it to
+ * spot a slow query or an operation called far more often than expected.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    /**
+     * Percentiles shown for every operation
+     */
+    private static final int[] PERCENTILES = {50, 95, 99};
+
+    private TextView mMetricsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mMetricsText = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh(false);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_refresh_metrics:
+                refresh(false);
+                return true;
+            case R.id.action_reset_metrics:
+                refresh(true);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Show the current counters, and clear them afterwards if asked to. The provider only copies
+     * counters it keeps in memory, so this is cheap enough for the main thread.
+     */
+    private void refresh(boolean reset) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(VeggieContract.EXTRA_RESET, reset);
+        Bundle metrics = getContentResolver().call(VeggieEntry.CONTENT_URI,
+                VeggieContract.METHOD_METRICS, null, extras);
+        mMetricsText.setText(metrics == null ? "" : formatMetrics(metrics));
+    }
+
+    /**
+     * Format the result of {@link VeggieContract#METHOD_METRICS} as text, one block per
+     * operation.
+     */
+    static String formatMetrics(Bundle metrics) {
+        long[] bounds = metrics.getLongArray(VeggieContract.EXTRA_LATENCY_BUCKETS_MS);
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "Slow call threshold: %d ms\n",
+                metrics.getLong(VeggieContract.EXTRA_SLOW_THRESHOLD_MS)));
+        String[] operations = metrics.getStringArray(VeggieContract.EXTRA_OPERATIONS);
+        if (operations == null) {
+            return text.toString();
+        }
+        for (String name : operations) {
+            Bundle operation = metrics.getBundle(name);
+            long calls = operation.getLong(VeggieContract.EXTRA_CALLS);
+            long[] histogram = operation.getLongArray(VeggieContract.EXTRA_LATENCY_HISTOGRAM);
+
+            text.append('\n').append(name).append('\n');
+            text.append(String.format(Locale.US, "  calls %d  rows %d  slow %d\n", calls,
+                    operation.getLong(VeggieContract.EXTRA_ROWS),
+                    operation.getLong(VeggieContract.EXTRA_SLOW_CALLS)));
+            if (calls != 0) {
+                text.append(String.format(Locale.US, "  avg %.2f ms  max %.2f ms\n",
+                        operation.getLong(VeggieContract.EXTRA_TOTAL_TIME_US) / 1000.0 / calls,
+                        operation.getLong(VeggieContract.EXTRA_MAX_TIME_US) / 1000.0));
+                text.append(' ');
+                for (int percentile : PERCENTILES) {
+                    text.append(" p").append(percentile).append(' ')
+                            .append(formatBucket(histogram, bounds, percentile));
+                }
+                text.append('\n');
+            }
+            long fills = operation.getLong(VeggieContract.EXTRA_WINDOW_FILLS);
+            if (fills != 0) {
+                // Rows per fill shows how many rows fit in a window, for cursors read to the end
+                text.append(String.format(Locale.US, "  window fills %d  %.2f ms  %.0f rows/fill\n",
+                        fills, operation.getLong(VeggieContract.EXTRA_WINDOW_FILL_TIME_US) / 1000.0,
+                        (double) operation.getLong(VeggieContract.EXTRA_ROWS) / fills));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Return the latency bucket holding the given percentile of the calls, such as "<=4ms" or
+     * ">512ms". The histogram only tells which bucket a call fell in, not its exact latency.
+     */
+    static String formatBucket(long[] histogram, long[] bounds, int percentile) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        // The number of calls at or below the percentile, rounded up
+        long rank = (total * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return "<=" + bounds[i] + "ms";
+            }
+        }
+        return ">" + bounds[bounds.length - 1] + "ms";
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.android.inventory2;
+
+import java.math.BigDecimal;
+
+/**
+ * Converts prices between the whole number of cents stored in the database and the text shown
+ * to the user, such as "4.50". Formatted prices below {@link #CACHE_SIZE} cents are kept once
+ * made, so binding a list item with a common price does not build a new String.
+ */
+public final class PriceFormatter {
+
+    /**
+     * Prices from 0.00 up to, but not including, this many cents are cached
+     */
+    static final int CACHE_SIZE = 10000;
+
+    /**
+     * Formatted prices by cents, filled in on first use. Racing threads can only store equal
+     * Strings, so no locking is needed.
+     */
+    private static final String[] sCache = new String[CACHE_SIZE];
+
+    private PriceFormatter() {
+    }
+
+    /**
+     * Return the price as text with two decimals, for example 450 becomes "4.50".
+     */
+    public static String format(long cents) {
+        if (cents >= 0 && cents < CACHE_SIZE) {
+            String formatted = sCache[(int) cents];
+            if (formatted == null) {
+                formatted = formatUncached(cents);
+                sCache[(int) cents] = formatted;
+            }
+            return formatted;
+        }
+        return formatUncached(cents);
+    }
+
+    private static String formatUncached(long cents) {
+        StringBuilder builder = new StringBuilder(12);
+        long remaining = cents;
+        if (remaining < 0) {
+            builder.append('-');
+            remaining = -remaining;
+        }
+        builder.append(remaining / 100).append('.');
+        long fraction = remaining % 100;
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction).toString();
+    }
+
+    /**
+     * Parse a price typed by the user, such as "4", "4.5" or "4.50", into cents.
+     *
+     * @throws NumberFormatException if the text is not a number with at most two decimals
+     */
+    public static long parse(String price) {
+        try {
+            return new BigDecimal(price.trim()).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Price has more than two decimals: " + price);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.inventory2;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.KeyEvent;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Screen for receiving a delivery. Every SKU entered in the scan field, which a barcode
+ * scanner in keyboard mode fills and submits with Enter, adds one unit of that veggie to stock
+ * through a {@link ReceiveSession}. The field stays focused, so the next scan can follow at once.
+ */
+public class ReceiveActivity extends AppCompatActivity implements ReceiveSession.Listener {
+
+    /**
+     * Number of lines kept in the scan log
+     */
+    private static final int MAX_LOG_LINES = 100;
+
+    private EditText mSkuEditText;
+
+    private TextView mLogTextView;
+
+    /**
+     * Lines of the scan log, newest first
+     */
+    private final Deque<String> mLogLines = new ArrayDeque<>();
+
+    private ReceiveSession mSession;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_receive);
+
+        mSkuEditText = (EditText) findViewById(R.id.receive_sku);
+        mLogTextView = (TextView) findViewById(R.id.receive_log);
+
+        mSession = new ReceiveSession(this, VeggieRepository.getInstance(this),
+                AsyncTask.SERIAL_EXECUTOR);
+        mSession.setListener(this);
+        mSession.start();
+
+        mSkuEditText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView view, int actionId, KeyEvent event) {
+                // Scanners send Enter, soft keyboards send the Done action
+                if (actionId == EditorInfo.IME_ACTION_DONE || (event != null
+                        && event.getKeyCode() == KeyEvent.KEYCODE_ENTER
+                        && event.getAction() == KeyEvent.ACTION_DOWN)) {
+                    mSession.scan(mSkuEditText.getText().toString());
+                    mSkuEditText.setText("");
+                }
+                // Keep the focus in the field for the next scan
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Write every scan before the screen goes away
+        mSession.flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSession.stop();
+    }
+
+    @Override
+    public void onReceived(long veggieId, String name, int unitsReceived) {
+        log(getString(R.string.receive_scanned, name, unitsReceived));
+    }
+
+    @Override
+    public void onUnknownSku(String sku) {
+        log(getString(R.string.receive_unknown_sku, sku));
+    }
+
+    @Override
+    public void onReceiveFailed(int units) {
+        Toast.makeText(this, getString(R.string.receive_failed, units), Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Add a line to the top of the scan log.
+     */
+    private void log(String line) {
+        mLogLines.addFirst(line);
+        if (mLogLines.size() > MAX_LOG_LINES) {
+            mLogLines.removeLast();
+        }
+        mLogTextView.setText(TextUtils.join("\n", mLogLines));
+    }
+}
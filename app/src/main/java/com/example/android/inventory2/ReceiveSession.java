@@ -0,0 +1,493 @@
+package com.example.android.inventory2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LongSparseArray;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.StockMovementEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Receiving session for a delivery, fed one barcode at a time by a scanner. When the session
+ * starts, the SKUs of the catalog are read into a map once, so almost every scan is resolved
+ * with a single hash lookup on the main thread instead of a query. A SKU the map doesn't know
+ * is looked up through {@link VeggieEntry#CONTENT_SKU_URI} in the background, in case it was
+ * given to a veggie after the session started. While the session runs it watches the catalog,
+ * and a veggie that changes is dropped from the map, so a SKU that moved to another veggie or
+ * was cleared is looked up again instead of crediting the veggie that used to have it.
+ * <p>
+ * Scanned units are counted in memory. After {@link #FLUSH_DELAY_MS} without a flush, or once
+ * {@link #MAX_PENDING_UNITS} are waiting, they go to the provider as one bulk insert of
+ * {@link StockMovementEntry#REASON_RECEIVE} movements, one per veggie, so a pallet of scans
+ * costs a handful of transactions and notifications instead of one per scan. If a batch is
+ * rolled back, the SKUs of its veggies are dropped from the map so later scans look them up
+ * again, and the units of the veggies that still exist are written once more. A batch whose
+ * veggies all exist most likely found the write queue full, so it is tried again after
+ * {@link #FLUSH_DELAY_MS}, up to {@link #MAX_FLUSH_ATTEMPTS} times.
+ * <p>
+ * Call {@link #flush} when the delivery is done or the screen goes away so no scan is left
+ * behind, and {@link #stop} when the session ends. Only use this class on the main thread.
+ */
+class ReceiveSession {
+
+    /**
+     * Receives the outcome of every scan and write.
+     */
+    interface Listener {
+        /**
+         * Called when a scan matched a veggie, with the units of it received in this session.
+         */
+        void onReceived(long veggieId, String name, int unitsReceived);
+
+        /**
+         * Called when no veggie has the scanned SKU.
+         */
+        void onUnknownSku(String sku);
+
+        /**
+         * Called when scans could not be written, for example because their veggie was deleted
+         * during the session. Those units are not in stock, and no longer counted by
+         * {@link #getReceivedUnits}.
+         */
+        void onReceiveFailed(int units);
+    }
+
+    /**
+     * How long scans are collected before they are written, in milliseconds
+     */
+    static final long FLUSH_DELAY_MS = 1000;
+
+    /**
+     * Number of units waiting to be written that triggers a write without waiting
+     */
+    static final int MAX_PENDING_UNITS = 100;
+
+    /**
+     * Number of times in a row a batch may fail with every veggie in it still there before its
+     * units are reported lost
+     */
+    static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private static final String[] SKU_PROJECTION = {
+            VeggieEntry._ID,
+            VeggieEntry.COLUMN_VEGGIE_NAME,
+            VeggieEntry.COLUMN_VEGGIE_SKU};
+
+    private final ContentResolver mResolver;
+
+    private final VeggieRepository mRepository;
+
+    /**
+     * Runs the SKU queries one at a time, in the order they were made
+     */
+    private final Executor mReader;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Veggies of the catalog by SKU, filled when the session starts and by every lookup since
+     */
+    private final Map<String, Item> mItemsBySku = new HashMap<>();
+
+    /**
+     * Units received per veggie that have not been sent to the provider yet
+     */
+    private final LongSparseArray<Integer> mPendingUnits = new LongSparseArray<>();
+
+    /**
+     * Units received per veggie in this session
+     */
+    private final LongSparseArray<Integer> mReceivedUnits = new LongSparseArray<>();
+
+    private Listener mListener;
+
+    /**
+     * Number of catalog changes seen so far. A bulk read of the SKUs that started before a
+     * change may hold stale codes, so it is dropped.
+     */
+    private int mCatalogChanges;
+
+    /**
+     * True once {@link #mObserver} is registered
+     */
+    private boolean mObserverRegistered;
+
+    /**
+     * Sum of {@link #mPendingUnits}
+     */
+    private int mPendingTotal;
+
+    /**
+     * Batches in a row that failed with every veggie in them still there
+     */
+    private int mFailedFlushes;
+
+    /**
+     * True while {@link #mFlushRunnable} is posted
+     */
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final ContentObserver mObserver = new ContentObserver(mHandler) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onCatalogChanged(uri);
+        }
+    };
+
+    ReceiveSession(Context context, VeggieRepository repository, Executor reader) {
+        mResolver = context.getApplicationContext().getContentResolver();
+        mRepository = repository;
+        mReader = reader;
+    }
+
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Read the SKUs of the catalog in the background and start watching it for changes. Scans
+     * made before the SKUs arrive are looked up one by one, behind the bulk read.
+     */
+    void start() {
+        if (!mObserverRegistered) {
+            mResolver.registerContentObserver(VeggieEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        final int catalogChanges = mCatalogChanges;
+        mReader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, Item> items = new HashMap<>();
+                Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI, SKU_PROJECTION,
+                        VeggieEntry.COLUMN_VEGGIE_SKU + " IS NOT NULL", null, null);
+                if (cursor == null) {
+                    return;
+                }
+                try {
+                    while (cursor.moveToNext()) {
+                        items.put(cursor.getString(2), new Item(cursor.getLong(0),
+                                cursor.getString(1)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The catalog changed while it was read, so leave every code to be
+                        // looked up on its first scan instead
+                        if (mCatalogChanges != catalogChanges) {
+                            return;
+                        }
+                        // Lookups made meanwhile are at least as recent, so they win
+                        for (Map.Entry<String, Item> entry : items.entrySet()) {
+                            if (!mItemsBySku.containsKey(entry.getKey())) {
+                                mItemsBySku.put(entry.getKey(), entry.getValue());
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Write every unit that has not been written yet and stop watching the catalog.
+     */
+    void stop() {
+        flush();
+        if (mObserverRegistered) {
+            mResolver.unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+    }
+
+    /**
+     * Drop the veggies that changed from the map, so their SKUs are looked up again on their
+     * next scan. A change to a single row carries its ID; any other change may have touched
+     * every row, so the whole map goes.
+     */
+    private void onCatalogChanged(Uri uri) {
+        mCatalogChanges++;
+        if (uri == null || uri.getQueryParameter(VeggieContract.PARAM_CHANGE) == null) {
+            mItemsBySku.clear();
+            return;
+        }
+        removeItems(ContentUris.parseId(uri));
+    }
+
+    /**
+     * Remove every SKU of the veggie with the given ID from the map.
+     */
+    private void removeItems(long veggieId) {
+        Iterator<Item> items = mItemsBySku.values().iterator();
+        while (items.hasNext()) {
+            if (items.next().mId == veggieId) {
+                items.remove();
+            }
+        }
+    }
+
+    /**
+     * Receive one unit of the veggie with the given SKU. Surrounding whitespace, such as the
+     * line end some scanners send, is ignored.
+     */
+    void scan(String sku) {
+        final String code = sku.trim();
+        if (code.isEmpty()) {
+            return;
+        }
+        Item item = mItemsBySku.get(code);
+        if (item != null) {
+            receive(item);
+            return;
+        }
+
+        // Not seen yet, so ask the provider
+        mReader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Item found = querySku(code);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (found == null) {
+                            if (mListener != null) {
+                                mListener.onUnknownSku(code);
+                            }
+                            return;
+                        }
+                        mItemsBySku.put(code, found);
+                        receive(found);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return the units of a veggie received in this session.
+     */
+    int getReceivedUnits(long veggieId) {
+        return mReceivedUnits.get(veggieId, 0);
+    }
+
+    /**
+     * Send every unit that has not been written yet.
+     */
+    void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        if (mPendingUnits.size() == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ContentValues[] movements = new ContentValues[mPendingUnits.size()];
+        for (int i = 0; i < mPendingUnits.size(); i++) {
+            ContentValues values = new ContentValues();
+            values.put(StockMovementEntry.COLUMN_VEGGIE_ID, mPendingUnits.keyAt(i));
+            values.put(StockMovementEntry.COLUMN_DELTA, mPendingUnits.valueAt(i));
+            values.put(StockMovementEntry.COLUMN_REASON, StockMovementEntry.REASON_RECEIVE);
+            values.put(StockMovementEntry.COLUMN_TIMESTAMP, now);
+            movements[i] = values;
+        }
+        final LongSparseArray<Integer> batch = mPendingUnits.clone();
+        mPendingUnits.clear();
+        mPendingTotal = 0;
+
+        mRepository.bulkInsert(StockMovementEntry.CONTENT_URI, movements,
+                new VeggieRepository.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer result) {
+                        if (result == null) {
+                            // The whole batch was rolled back, or never ran
+                            onFlushFailed(batch);
+                        } else {
+                            mFailedFlushes = 0;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Handle a batch that was rolled back, or refused by the full write queue of the
+     * repository. The SKUs of its veggies may be stale, so they are dropped from the map and
+     * looked up again on their next scan. If some veggie is gone, the veggies that still exist
+     * get their units written again at once. If none is, the write is tried again after
+     * {@link #FLUSH_DELAY_MS} so the queue can drain, until it has failed
+     * {@link #MAX_FLUSH_ATTEMPTS} times. Units that are given up on are reported lost and no
+     * longer counted as received.
+     */
+    private void onFlushFailed(final LongSparseArray<Integer> batch) {
+        Iterator<Item> items = mItemsBySku.values().iterator();
+        while (items.hasNext()) {
+            if (batch.indexOfKey(items.next().mId) >= 0) {
+                items.remove();
+            }
+        }
+
+        mReader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Set<Long> existing = queryExistingIds(batch);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // With every veggie still there, nothing in the batch was wrong; the
+                        // write was most likely refused because the queue was full
+                        boolean veggieMissing = existing.size() < batch.size();
+                        if (!veggieMissing) {
+                            mFailedFlushes++;
+                        }
+                        boolean retry = veggieMissing || mFailedFlushes < MAX_FLUSH_ATTEMPTS;
+                        if (!retry) {
+                            mFailedFlushes = 0;
+                        }
+                        int lost = 0;
+                        for (int i = 0; i < batch.size(); i++) {
+                            long veggieId = batch.keyAt(i);
+                            int units = batch.valueAt(i);
+                            if (retry && existing.contains(veggieId)) {
+                                mPendingUnits.put(veggieId, mPendingUnits.get(veggieId, 0) + units);
+                                mPendingTotal += units;
+                            } else {
+                                lost += units;
+                                int received = mReceivedUnits.get(veggieId, 0) - units;
+                                if (received > 0) {
+                                    mReceivedUnits.put(veggieId, received);
+                                } else {
+                                    mReceivedUnits.remove(veggieId);
+                                }
+                            }
+                        }
+                        if (mPendingUnits.size() != 0) {
+                            if (veggieMissing) {
+                                flush();
+                            } else {
+                                scheduleFlush();
+                            }
+                        }
+                        if (lost != 0 && mListener != null) {
+                            mListener.onReceiveFailed(lost);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void receive(Item item) {
+        mPendingUnits.put(item.mId, mPendingUnits.get(item.mId, 0) + 1);
+        mPendingTotal++;
+        int received = mReceivedUnits.get(item.mId, 0) + 1;
+        mReceivedUnits.put(item.mId, received);
+        if (mPendingTotal >= MAX_PENDING_UNITS) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+        if (mListener != null) {
+            mListener.onReceived(item.mId, item.mName, received);
+        }
+    }
+
+    /**
+     * Flush after {@link #FLUSH_DELAY_MS}, unless a flush is already scheduled.
+     */
+    private void scheduleFlush() {
+        if (!mFlushScheduled) {
+            mHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+            mFlushScheduled = true;
+        }
+    }
+
+    /**
+     * Return the IDs of the veggies in the batch that still exist. Runs on {@link #mReader}.
+     */
+    private Set<Long> queryExistingIds(LongSparseArray<Integer> batch) {
+        StringBuilder selection = new StringBuilder(VeggieEntry._ID + " IN (");
+        String[] selectionArgs = new String[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i] = String.valueOf(batch.keyAt(i));
+        }
+        selection.append(')');
+
+        Set<Long> ids = new HashSet<>();
+        Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI, new String[]{VeggieEntry._ID},
+                selection.toString(), selectionArgs, null);
+        if (cursor == null) {
+            return ids;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Look up the veggie with the given SKU. Return null if there is none. Runs on
+     * {@link #mReader}.
+     */
+    private Item querySku(String sku) {
+        Uri uri = VeggieEntry.CONTENT_SKU_URI.buildUpon().appendPath(sku).build();
+        Cursor cursor = mResolver.query(uri, SKU_PROJECTION, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? new Item(cursor.getLong(0), cursor.getString(1)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The veggie a SKU belongs to.
+     */
+    private static final class Item {
+        final long mId;
+        final String mName;
+
+        Item(long id, String name) {
+            mId = id;
+            mName = name;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.android.inventory2;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.util.LongSparseArray;
+import android.widget.Toast;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+/**
+ * Write-behind buffer for the "Sale" button. Taps are counted in memory and the quantity shown
+ * drops at once; after {@link #FLUSH_DELAY_MS} without being flushed, all the units sold of one
+ * veggie go to the provider as a single {@link VeggieContract#METHOD_SELL} call, so a burst of
+ * taps costs one transaction, one notification and one list update instead of one per tap.
+ * <p>
+ * Call {@link #flush} when the screen goes away so no sale is left behind. Only use this class
+ * on the main thread.
+ */
+class SaleBuffer {
+
+    /**
+     * Receives changes to the quantity shown for a veggie.
+     */
+    interface Listener {
+        void onQuantityChanged(long veggieId);
+    }
+
+    /**
+     * How long taps are collected before they are written, in milliseconds
+     */
+    static final long FLUSH_DELAY_MS = 50;
+
+    private final Context mContext;
+
+    private final VeggieRepository mRepository;
+
+    private final Handler mHandler = new Handler();
+
+    /**
+     * Quantity to show instead of the one in the list snapshot, for veggies sold since the
+     * snapshot was loaded
+     */
+    private final LongSparseArray<Integer> mQuantities = new LongSparseArray<>();
+
+    /**
+     * Units sold per veggie that have not been sent to the provider yet
+     */
+    private final LongSparseArray<Integer> mPendingUnits = new LongSparseArray<>();
+
+    /**
+     * Units sold per veggie that have been sent to the provider and not answered yet
+     */
+    private final LongSparseArray<Integer> mUnitsInFlight = new LongSparseArray<>();
+
+    private Listener mListener;
+
+    /**
+     * True while {@link #mFlushRunnable} is posted
+     */
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    SaleBuffer(Context context, VeggieRepository repository) {
+        mContext = context.getApplicationContext();
+        mRepository = repository;
+    }
+
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Return the quantity to show for a veggie, given the quantity in the list snapshot.
+     */
+    int getQuantity(long veggieId, int snapshotQuantity) {
+        Integer quantity = mQuantities.get(veggieId);
+        return quantity != null ? quantity : snapshotQuantity;
+    }
+
+    /**
+     * Sell one unit of a veggie. Return false, and show a toast, if it is out of stock as far
+     * as this screen knows.
+     */
+    boolean sell(long veggieId, int snapshotQuantity) {
+        int quantity = getQuantity(veggieId, snapshotQuantity);
+        if (quantity <= 0) {
+            Toast.makeText(mContext, R.string.out_of_stock, Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        mQuantities.put(veggieId, quantity - 1);
+        mPendingUnits.put(veggieId, mPendingUnits.get(veggieId, 0) + 1);
+        if (!mFlushScheduled) {
+            // First tap since the last flush
+            mHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+            mFlushScheduled = true;
+        }
+        notifyQuantityChanged(veggieId);
+        return true;
+    }
+
+    /**
+     * Send every sale that has not been written yet.
+     */
+    void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        for (int i = 0; i < mPendingUnits.size(); i++) {
+            final long veggieId = mPendingUnits.keyAt(i);
+            final int units = mPendingUnits.valueAt(i);
+            Bundle extras = new Bundle();
+            extras.putLong(VeggieEntry._ID, veggieId);
+            extras.putInt(VeggieContract.EXTRA_UNITS, units);
+
+            mUnitsInFlight.put(veggieId, mUnitsInFlight.get(veggieId, 0) + units);
+            mRepository.call(VeggieContract.METHOD_SELL, extras,
+                    new VeggieRepository.Callback<Bundle>() {
+                        @Override
+                        public void onResult(Bundle result) {
+                            onSold(veggieId, units, result);
+                        }
+                    });
+        }
+        mPendingUnits.clear();
+    }
+
+    /**
+     * Handle the answer to a sale call of the given number of units. The provider reports the
+     * quantity it ended up with, so the quantity shown is set to that, less the units of the
+     * sale calls still unanswered and of any taps made since.
+     */
+    private void onSold(long veggieId, int units, Bundle result) {
+        int unitsInFlight = mUnitsInFlight.get(veggieId, 0) - units;
+        if (unitsInFlight > 0) {
+            mUnitsInFlight.put(veggieId, unitsInFlight);
+        } else {
+            unitsInFlight = 0;
+            mUnitsInFlight.remove(veggieId);
+        }
+
+        if (result == null || !result.getBoolean(VeggieContract.EXTRA_SOLD)) {
+            // The stock ran out under us, for example because it was edited meanwhile
+            Toast.makeText(mContext, R.string.out_of_stock, Toast.LENGTH_SHORT).show();
+        }
+        if (result != null && result.getInt(VeggieContract.EXTRA_QUANTITY, -1) >= 0) {
+            int quantity = result.getInt(VeggieContract.EXTRA_QUANTITY)
+                    - unitsInFlight - mPendingUnits.get(veggieId, 0);
+            mQuantities.put(veggieId, Math.max(quantity, 0));
+        } else if (unitsInFlight == 0 && mPendingUnits.get(veggieId) == null) {
+            mQuantities.remove(veggieId);
+        }
+        notifyQuantityChanged(veggieId);
+    }
+
+    /**
+     * Called when a new list snapshot arrives. Every sale that has been written is in the
+     * snapshot by now, so the quantities kept for those veggies are dropped.
+     */
+    void onSnapshot() {
+        for (int i = mQuantities.size() - 1; i >= 0; i--) {
+            long veggieId = mQuantities.keyAt(i);
+            if (mPendingUnits.get(veggieId) == null && mUnitsInFlight.get(veggieId) == null) {
+                mQuantities.removeAt(i);
+            }
+        }
+    }
+
+    private void notifyQuantityChanged(long veggieId) {
+        if (mListener != null) {
+            mListener.onQuantityChanged(veggieId);
+        }
+    }
+}
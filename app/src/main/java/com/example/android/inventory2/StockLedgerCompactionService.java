@@ -0,0 +1,86 @@
+package com.example.android.inventory2;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.inventory2.data.VeggieContract;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that folds old stock movements into daily snapshots through
+ * {@link VeggieContract#METHOD_COMPACT_LEDGER}. It runs about once a day while the device is
+ * idle and charging, so the ledger stays small without the user ever waiting for it.
+ */
+public class StockLedgerCompactionService extends JobService {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = StockLedgerCompactionService.class.getSimpleName();
+
+    /**
+     * Identifier of the compaction job in the JobScheduler
+     */
+    private static final int JOB_ID = 1;
+
+    /**
+     * The compaction currently running, if any
+     */
+    private AsyncTask<Void, Void, Integer> mTask;
+
+    /**
+     * Schedule the daily compaction, unless it is already scheduled.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, StockLedgerCompactionService.class))
+                .setPeriodic(TimeUnit.DAYS.toMillis(1))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        // onStartJob runs on the main thread, so the provider call goes to a background thread
+        mTask = new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... voids) {
+                Bundle result = getContentResolver().call(VeggieContract.BASE_CONTENT_URI,
+                        VeggieContract.METHOD_COMPACT_LEDGER, null, null);
+                return result == null ? 0 : result.getInt(VeggieContract.EXTRA_ROWS_COMPACTED);
+            }
+
+            @Override
+            protected void onPostExecute(Integer rowsCompacted) {
+                Log.i(LOG_TAG, "Compacted " + rowsCompacted + " stock movements");
+                jobFinished(params, false);
+            }
+        };
+        mTask.execute();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Compaction runs in one transaction, so a cancelled run leaves nothing half done.
+        // The next daily run picks up where this one left off.
+        if (mTask != null) {
+            mTask.cancel(false);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.inventory2;
+
+import android.database.Cursor;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+/**
+ * Immutable snapshot of one row of the veggies table, as shown in the catalog list.
+ */
+public final class Veggie {
+
+    /**
+     * Unique ID of the veggie
+     */
+    public final long id;
+
+    /**
+     * Name of the veggie
+     */
+    public final String name;
+
+    /**
+     * Price of the veggie, in cents
+     */
+    public final long price;
+
+    /**
+     * Quantity of the veggie in stock
+     */
+    public final int quantity;
+
+    public Veggie(long id, String name, long price, int quantity) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Column indices of a catalog cursor, so a whole cursor can be read without looking them up
+     * for every row.
+     */
+    static final class Columns {
+        final int id;
+        final int name;
+        final int price;
+        final int quantity;
+
+        Columns(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(VeggieEntry._ID);
+            name = cursor.getColumnIndexOrThrow(VeggieEntry.COLUMN_VEGGIE_NAME);
+            price = cursor.getColumnIndexOrThrow(VeggieEntry.COLUMN_VEGGIE_PRICE);
+            quantity = cursor.getColumnIndexOrThrow(VeggieEntry.COLUMN_VEGGIE_QUANTITY);
+        }
+
+        /**
+         * Read the row the cursor is currently on.
+         */
+        Veggie read(Cursor cursor) {
+            return new Veggie(cursor.getLong(id), cursor.getString(name), cursor.getLong(price),
+                    cursor.getInt(quantity));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Veggie)) {
+            return false;
+        }
+        Veggie other = (Veggie) o;
+        return id == other.id
+                && price == other.price
+                && quantity == other.quantity
+                && (name == null ? other.name == null : name.equals(other.name));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + (int) (price ^ (price >>> 32));
+        result = 31 * result + quantity;
+        return result;
+    }
+}
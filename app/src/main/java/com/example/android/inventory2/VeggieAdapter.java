@@ -0,0 +1,243 @@
+package com.example.android.inventory2;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.AsyncListDiffer;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.util.List;
+
+/**
+ * {@link VeggieAdapter} is a {@link RecyclerView} adapter that shows a list of {@link Veggie}
+ * snapshots. New snapshots are compared with the current one on a background thread, keyed by
+ * veggie ID, so only the rows that actually changed are rebound and the scroll position is kept.
+ */
+public class VeggieAdapter extends RecyclerView.Adapter<VeggieAdapter.ViewHolder> {
+
+    /**
+     * Callback for a click on a list item.
+     */
+    public interface OnVeggieClickListener {
+        void onVeggieClick(long veggieId);
+    }
+
+    /**
+     * Tells DiffUtil that rows with the same ID are the same item, and that the item only needs
+     * rebinding if any of its shown values changed.
+     */
+    private static final DiffUtil.ItemCallback<Veggie> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<Veggie>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull Veggie oldItem, @NonNull Veggie newItem) {
+                    return oldItem.id == newItem.id;
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull Veggie oldItem, @NonNull Veggie newItem) {
+                    return oldItem.equals(newItem);
+                }
+            };
+
+    /**
+     * Computes the diff between snapshots off the main thread
+     */
+    private final AsyncListDiffer<Veggie> mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+
+    /**
+     * Receives clicks on list items
+     */
+    private final OnVeggieClickListener mOnVeggieClickListener;
+
+    /**
+     * One click listener shared by every list item. The row it belongs to is read from the
+     * {@link ViewHolder} stored as the view's tag.
+     */
+    private final View.OnClickListener mItemClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            ViewHolder holder = (ViewHolder) view.getTag();
+            mOnVeggieClickListener.onVeggieClick(holder.veggieId);
+        }
+    };
+
+    /**
+     * Collects the taps on the "Sale" buttons and writes them in batches
+     */
+    private final SaleBuffer mSaleBuffer;
+
+    /**
+     * One click listener shared by every "Sale" button.
+     */
+    private final View.OnClickListener mSaleClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            ViewHolder holder = (ViewHolder) view.getTag();
+
+            // The buffer lowers the quantity shown at once and decrements the quantity in the
+            // database itself a moment later, together with any further taps on this row.
+            // It shows a toast if there is nothing left to sell.
+            mSaleBuffer.sell(holder.veggieId, holder.snapshotQuantity);
+        }
+    };
+
+    /**
+     * Constructs a new {@link VeggieAdapter}.
+     *
+     * @param onVeggieClickListener receives clicks on list items
+     * @param saleBuffer            receives clicks on the "Sale" buttons
+     */
+    public VeggieAdapter(OnVeggieClickListener onVeggieClickListener, SaleBuffer saleBuffer) {
+        mOnVeggieClickListener = onVeggieClickListener;
+        mSaleBuffer = saleBuffer;
+        mSaleBuffer.setListener(new SaleBuffer.Listener() {
+            @Override
+            public void onQuantityChanged(long veggieId) {
+                // Rebind just the row whose quantity changed
+                List<Veggie> veggies = mDiffer.getCurrentList();
+                for (int i = 0; i < veggies.size(); i++) {
+                    if (veggies.get(i).id == veggieId) {
+                        notifyItemChanged(i);
+                        return;
+                    }
+                }
+            }
+        });
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the given snapshot. The diff against the current one runs on a background thread and
+     * the list is updated with just the changed rows once it is done.
+     */
+    public void submitList(List<Veggie> veggies) {
+        mSaleBuffer.onSnapshot();
+        mDiffer.submitList(veggies);
+    }
+
+    /**
+     * Return the snapshot currently shown.
+     */
+    public List<Veggie> getCurrentList() {
+        return mDiffer.getCurrentList();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mDiffer.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mDiffer.getCurrentList().get(position).id;
+    }
+
+    /**
+     * Makes a new blank list item view. No data is set (or bound) to the views yet, but the
+     * child views are looked up once and kept in the {@link ViewHolder}.
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        Context context = parent.getContext();
+
+        // Inflate a list item view using the layout specified in list_item.xml
+        View view = LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+
+        view.setTag(holder);
+        view.setOnClickListener(mItemClickListener);
+
+        /*
+         * Each list view item has a "Sale" button
+         * This "Sale" button has OnClickListener which will decrease the product quantity by one at a time.
+         * The provider only takes the unit out of stock if the quantity is greater than 0.
+         */
+        holder.saleButton.setTag(holder);
+        holder.saleButton.setOnClickListener(mSaleClickListener);
+        return holder;
+    }
+
+    /**
+     * This method binds the veggie data at the given position to the list item layout. Binding
+     * does not allocate: strings come straight from the snapshot, prices from the
+     * {@link PriceFormatter} cache, and the quantity is formatted into a buffer owned by the
+     * holder.
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Veggie veggie = mDiffer.getCurrentList().get(position);
+
+        holder.veggieId = veggie.id;
+        holder.snapshotQuantity = veggie.quantity;
+        // Sales that are not in the snapshot yet are already taken off the quantity shown
+        int quantityLength = formatInt(mSaleBuffer.getQuantity(veggie.id, veggie.quantity),
+                holder.quantityChars);
+
+        // Update the TextViews with the attributes for the current veggie
+        holder.nameTextView.setText(veggie.name);
+        holder.priceTextView.setText(PriceFormatter.format(veggie.price));
+        holder.quantityTextView.setText(holder.quantityChars, 0, quantityLength);
+    }
+
+    /**
+     * Write the decimal digits of the given value into the buffer and return how many chars
+     * were written. Unlike {@link Integer#toString(int)} this does not allocate.
+     */
+    static int formatInt(int value, char[] buffer) {
+        long remaining = value;
+        int length = 0;
+        if (remaining < 0) {
+            buffer[length++] = '-';
+            remaining = -remaining;
+        }
+
+        // Count the digits, then fill them in from the right
+        int digits = 1;
+        for (long rest = remaining / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return length + digits;
+    }
+
+    /**
+     * Cached child views of one list item.
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final Button saleButton;
+
+        /**
+         * ID of the veggie currently bound to this list item
+         */
+        long veggieId;
+
+        /**
+         * Quantity of the bound veggie in the list snapshot
+         */
+        int snapshotQuantity;
+
+        /**
+         * Big enough for the sign and digits of any int
+         */
+        final char[] quantityChars = new char[11];
+
+        ViewHolder(View view) {
+            super(view);
+            nameTextView = (TextView) view.findViewById(R.id.name);
+            priceTextView = (TextView) view.findViewById(R.id.price);
+            quantityTextView = (TextView) view.findViewById(R.id.quantity);
+            saleButton = (Button) view.findViewById(R.id.sale_button);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.android.inventory2;
+
+import android.content.AsyncTaskLoader;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+import android.util.LongSparseArray;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the catalog into a list of {@link Veggie} snapshots on a background thread and keeps it
+ * up to date. Unlike a CursorLoader, the whole result is read off the main thread, so handing it
+ * to the list never touches the database.
+ * <p>
+ * The list grows a page at a time: {@link #loadNextPage} reads only the rows that follow the
+ * last one loaded, by keyset paging in the order of the list, and appends them to the last
+ * snapshot.
+ * <p>
+ * When the provider reports a change to single rows, only those rows are read again and patched
+ * into the last snapshot. Any other change, or a change while showing search results, reloads
+ * the rows loaded so far.
+ */
+public class VeggieListLoader extends AsyncTaskLoader<List<Veggie>> {
+
+    /**
+     * URI the changed rows are read from when patching. Asks for the list profile, like the
+     * catalog itself.
+     */
+    private static final Uri PATCH_URI = VeggieEntry.CONTENT_URI.buildUpon()
+            .appendQueryParameter(VeggieContract.PARAM_PROFILE, VeggieContract.PROFILE_LIST)
+            .build();
+
+    /**
+     * Row limit used when {@link #mUri} has none
+     */
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    /**
+     * Collects the changes reported under {@link VeggieEntry#CONTENT_URI}
+     */
+    private final ContentObserver mObserver = new ContentObserver(new Handler()) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            addPendingChange(uri);
+            onContentChanged();
+        }
+    };
+
+    /**
+     * Content URI to query, including any paging or search parameters
+     */
+    private final Uri mUri;
+
+    /**
+     * {@link VeggieContract#PARAM_SORT} order of {@link #mUri}, which decides the key the next
+     * page is read after
+     */
+    private final String mSort;
+
+    /**
+     * Number of rows added by {@link #loadNextPage}: the limit of {@link #mUri}
+     */
+    private final int mPageSize;
+
+    /**
+     * True if this loader lists the plain catalog in _ID order, whose rows can be patched one
+     * by one. Other orders and supplier filters would decide where a changed row goes, so they
+     * are loaded again in full.
+     */
+    private final boolean mPatchable;
+
+    /**
+     * True once {@link #mObserver} is registered
+     */
+    private boolean mObserverRegistered;
+
+    /**
+     * The last list delivered. Written on the main thread, read by the next background load.
+     */
+    private volatile List<Veggie> mVeggies;
+
+    /**
+     * Rows changed since the last load, mapped to the {@link VeggieContract#PARAM_CHANGE} type
+     * of their latest change. Guarded by this loader.
+     */
+    private LongSparseArray<String> mPendingChanges = new LongSparseArray<>();
+
+    /**
+     * True if a change could not be narrowed down to single rows. Guarded by this loader.
+     */
+    private boolean mFullReloadPending;
+
+    /**
+     * Number of rows the list may hold, a whole number of pages. Guarded by this loader.
+     */
+    private int mRowLimit;
+
+    /**
+     * Row limit of {@link #mVeggies}, which it fills unless the end of the list was reached.
+     * Written and read by the background load only.
+     */
+    private int mLoadedRowLimit;
+
+    /**
+     * Signal for the query in flight, so it can be cancelled. Guarded by this loader.
+     */
+    private CancellationSignal mCancellationSignal;
+
+    public VeggieListLoader(Context context, Uri uri) {
+        super(context);
+        mUri = uri;
+        String limit = uri.getQueryParameter(VeggieContract.PARAM_LIMIT);
+        mPageSize = limit == null ? NO_LIMIT : Integer.parseInt(limit);
+        mRowLimit = mPageSize;
+        String sort = uri.getQueryParameter(VeggieContract.PARAM_SORT);
+        mSort = sort == null ? VeggieContract.SORT_ID : sort;
+        mPatchable = VeggieEntry.CONTENT_URI.getPath().equals(uri.getPath())
+                && (sort == null || VeggieContract.SORT_ID.equals(sort))
+                && uri.getQueryParameter(VeggieContract.PARAM_SUPPLIER_ID) == null;
+    }
+
+    /**
+     * Load one more page of rows after the last one loaded. Only call this on the main thread,
+     * once the list fills {@link #getRowLimit}, or the rows asked for may not exist.
+     */
+    public void loadNextPage() {
+        synchronized (this) {
+            if (mPageSize == NO_LIMIT) {
+                return;
+            }
+            mRowLimit += mPageSize;
+        }
+        onContentChanged();
+    }
+
+    /**
+     * Return the number of rows the list may hold. A list that holds fewer reaches the end of
+     * the catalog.
+     */
+    public synchronized int getRowLimit() {
+        return mRowLimit;
+    }
+
+    /**
+     * Remember which row a change notification is about, or that everything needs reloading.
+     */
+    private synchronized void addPendingChange(Uri uri) {
+        String change = uri == null ? null : uri.getQueryParameter(VeggieContract.PARAM_CHANGE);
+        if (change == null) {
+            mFullReloadPending = true;
+            return;
+        }
+        mPendingChanges.put(ContentUris.parseId(uri), change);
+    }
+
+    @Override
+    public List<Veggie> loadInBackground() {
+        LongSparseArray<String> changes;
+        boolean fullReload;
+        int limit;
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            mCancellationSignal = new CancellationSignal();
+            changes = mPendingChanges;
+            fullReload = mFullReloadPending;
+            limit = mRowLimit;
+            mPendingChanges = new LongSparseArray<>();
+            mFullReloadPending = false;
+        }
+        try {
+            List<Veggie> previous = mVeggies;
+            List<Veggie> veggies;
+            if (fullReload || previous == null || (!mPatchable && changes.size() != 0)) {
+                veggies = queryPage(null, limit);
+            } else if (mPatchable) {
+                veggies = patch(previous, changes, mLoadedRowLimit, limit);
+            } else {
+                // Nothing changed, so only the next page is new
+                veggies = previous;
+                if (previous.size() >= mLoadedRowLimit && previous.size() < limit) {
+                    veggies = new ArrayList<>(previous);
+                    veggies.addAll(queryPage(previous.get(previous.size() - 1),
+                            limit - previous.size()));
+                }
+            }
+            mLoadedRowLimit = limit;
+            return veggies;
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+    }
+
+    /**
+     * Query up to the given number of rows of {@link #mUri} that come after the given one in
+     * its order, or from the first row if it is null.
+     */
+    private List<Veggie> queryPage(Veggie after, int limit) {
+        Uri.Builder builder = mUri.buildUpon().clearQuery();
+        for (String name : mUri.getQueryParameterNames()) {
+            if (!VeggieContract.PARAM_LIMIT.equals(name)) {
+                for (String value : mUri.getQueryParameters(name)) {
+                    builder.appendQueryParameter(name, value);
+                }
+            }
+        }
+        if (limit != NO_LIMIT) {
+            builder.appendQueryParameter(VeggieContract.PARAM_LIMIT, String.valueOf(limit));
+        }
+        if (after != null) {
+            builder.appendQueryParameter(VeggieContract.PARAM_AFTER_ID, String.valueOf(after.id));
+            switch (mSort) {
+                case VeggieContract.SORT_NAME:
+                    builder.appendQueryParameter(VeggieContract.PARAM_AFTER_KEY, after.name);
+                    break;
+                case VeggieContract.SORT_LOW_STOCK:
+                    builder.appendQueryParameter(VeggieContract.PARAM_AFTER_KEY,
+                            String.valueOf(after.quantity));
+                    break;
+            }
+        }
+        Cursor cursor = getContext().getContentResolver().query(builder.build(),
+                VeggieEntry.LIST_PROJECTION, null, null, null, mCancellationSignal);
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+        try {
+            List<Veggie> veggies = new ArrayList<>(cursor.getCount());
+            Veggie.Columns columns = new Veggie.Columns(cursor);
+            while (cursor.moveToNext()) {
+                veggies.add(columns.read(cursor));
+            }
+            return veggies;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return a copy of the previous snapshot with the changed rows applied, holding up to the
+     * given limit. Inserted and updated rows are read again by ID; deleted rows are dropped
+     * without a query. The catalog is in _ID order, so a new row belongs at the end, and only if
+     * the previous snapshot did not fill its limit.
+     * <p>
+     * If the previous snapshot was full, rows beyond it may exist, so deleted rows and a new
+     * page are made up for by reading the rows that follow the last one kept. A list that comes
+     * back short then really is the end of the catalog.
+     */
+    private List<Veggie> patch(List<Veggie> previous, LongSparseArray<String> changes,
+                               int previousLimit, int limit) {
+        if (changes.size() == 0 && limit == previousLimit) {
+            return previous;
+        }
+
+        // Read the rows that were inserted or updated
+        LongSparseArray<Veggie> fetched = fetchRows(changes);
+
+        List<Veggie> veggies = new ArrayList<>(previous.size() + fetched.size());
+        long lastId = -1;
+        for (Veggie veggie : previous) {
+            lastId = veggie.id;
+            if (changes.indexOfKey(veggie.id) < 0) {
+                veggies.add(veggie);
+                continue;
+            }
+            Veggie changed = fetched.get(veggie.id);
+            if (changed != null) {
+                veggies.add(changed);
+                fetched.remove(veggie.id);
+            }
+        }
+
+        if (previous.size() >= previousLimit) {
+            // The list was full, so new rows come after rows not loaded yet. Fill any room the
+            // deletes or a new page left from the rows that follow, new ones included.
+            if (veggies.size() < limit) {
+                Veggie last = veggies.isEmpty() ? null : veggies.get(veggies.size() - 1);
+                veggies.addAll(queryPage(last, limit - veggies.size()));
+            }
+            return veggies;
+        }
+
+        // Whatever is left was not on screen before. fetched is sorted by ID.
+        for (int i = 0; i < fetched.size(); i++) {
+            if (fetched.keyAt(i) > lastId && veggies.size() < limit) {
+                veggies.add(fetched.valueAt(i));
+            }
+        }
+        return veggies;
+    }
+
+    /**
+     * Query the rows whose latest change was an insert or an update. Rows that no longer exist
+     * are simply missing from the result.
+     */
+    private LongSparseArray<Veggie> fetchRows(LongSparseArray<String> changes) {
+        LongSparseArray<Veggie> fetched = new LongSparseArray<>();
+        StringBuilder selection = new StringBuilder(VeggieEntry._ID + " IN (");
+        List<String> selectionArgs = new ArrayList<>();
+        for (int i = 0; i < changes.size(); i++) {
+            if (!VeggieContract.CHANGE_DELETE.equals(changes.valueAt(i))) {
+                selection.append(selectionArgs.isEmpty() ? "?" : ",?");
+                selectionArgs.add(String.valueOf(changes.keyAt(i)));
+            }
+        }
+        if (selectionArgs.isEmpty()) {
+            return fetched;
+        }
+        selection.append(')');
+
+        Cursor cursor = getContext().getContentResolver().query(PATCH_URI,
+                VeggieEntry.LIST_PROJECTION, selection.toString(), selectionArgs.toArray(new String[0]), null,
+                mCancellationSignal);
+        if (cursor == null) {
+            return fetched;
+        }
+        try {
+            Veggie.Columns columns = new Veggie.Columns(cursor);
+            while (cursor.moveToNext()) {
+                Veggie veggie = columns.read(cursor);
+                fetched.put(veggie.id, veggie);
+            }
+        } finally {
+            cursor.close();
+        }
+        return fetched;
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void onCanceled(List<Veggie> veggies) {
+        // The changes this load took over are lost with it, so the next load starts over
+        synchronized (this) {
+            mFullReloadPending = true;
+        }
+    }
+
+    @Override
+    public void deliverResult(List<Veggie> veggies) {
+        if (isReset()) {
+            return;
+        }
+        mVeggies = veggies;
+        if (isStarted()) {
+            super.deliverResult(veggies);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(VeggieEntry.CONTENT_URI,
+                    true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mVeggies != null) {
+            deliverResult(mVeggies);
+        }
+        if (takeContentChanged() || mVeggies == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mVeggies = null;
+    }
+}
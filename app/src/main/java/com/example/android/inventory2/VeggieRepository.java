@@ -0,0 +1,324 @@
+package com.example.android.inventory2;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.SQLException;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.inventory2.data.VeggieContract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every write to the {@link com.example.android.inventory2.data.VeggieProvider} on one
+ * background thread, so the UI thread never waits for SQLite. Writes run in the order they were
+ * made, and their results are handed back on the main thread through a {@link Callback}.
+ * <p>
+ * A write to a single row that is still waiting at the end of the queue absorbs later writes of
+ * the same kind to that row: two updates become one update with the values of both, and a
+ * repeated delete runs once. Every caller's callback still receives the result. Once any other
+ * write is queued behind it, a later write of the same kind is queued on its own, so folding
+ * never moves a write ahead of one made before it.
+ * <p>
+ * The queue is bounded. If it is full, the write is refused and its callback receives null.
+ */
+public final class VeggieRepository {
+
+    /**
+     * Receives the result of a write on the main thread.
+     */
+    public interface Callback<T> {
+        /**
+         * Called with the result of the write, or null if it failed.
+         */
+        void onResult(T result);
+    }
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = VeggieRepository.class.getSimpleName();
+
+    /**
+     * Number of writes that may wait for the writer thread
+     */
+    private static final int MAX_PENDING_WRITES = 64;
+
+    private static VeggieRepository sInstance;
+
+    private final ContentResolver mResolver;
+
+    /**
+     * Runs the writes one at a time
+     */
+    private final Executor mWriter;
+
+    /**
+     * Delivers results on the main thread
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Writes that are queued but have not started yet, by the key they coalesce on. Guarded by
+     * itself.
+     */
+    private final Map<String, Write<?>> mPendingWrites = new HashMap<>();
+
+    /**
+     * The write queued last, or null if it has started or was refused. Only this write may
+     * absorb later ones. Guarded by {@link #mPendingWrites}.
+     */
+    private Write<?> mLastWrite;
+
+    /**
+     * Return the repository of the app, creating it on first use.
+     */
+    public static synchronized VeggieRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new VeggieRepository(context.getApplicationContext().getContentResolver(),
+                    newWriterExecutor());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a repository that runs its writes on the given executor. The executor must run
+     * one task at a time, in order.
+     */
+    VeggieRepository(ContentResolver resolver, Executor writer) {
+        mResolver = resolver;
+        mWriter = writer;
+    }
+
+    /**
+     * Build the single writer thread and its bounded queue.
+     */
+    private static Executor newWriterExecutor() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "VeggieWriter");
+            }
+        });
+    }
+
+    /**
+     * Insert a row. The callback receives the URI of the new row.
+     */
+    public void insert(final Uri uri, final ContentValues values, Callback<Uri> callback) {
+        enqueue(new Write<Uri>(null, callback) {
+            @Override
+            Uri execute() {
+                return mResolver.insert(uri, values);
+            }
+        });
+    }
+
+    /**
+     * Insert several rows in one provider call, which runs them in one transaction. The
+     * callback receives the number of rows inserted.
+     */
+    public void bulkInsert(final Uri uri, final ContentValues[] values,
+                           Callback<Integer> callback) {
+        enqueue(new Write<Integer>(null, callback) {
+            @Override
+            Integer execute() {
+                return mResolver.bulkInsert(uri, values);
+            }
+        });
+    }
+
+    /**
+     * Update the rows at the given URI. The callback receives the number of rows updated.
+     */
+    public void update(Uri uri, ContentValues values, Callback<Integer> callback) {
+        enqueue(new UpdateWrite(uri, values, callback));
+    }
+
+    /**
+     * Delete the rows at the given URI. The callback receives the number of rows deleted.
+     */
+    public void delete(final Uri uri, Callback<Integer> callback) {
+        enqueue(new Write<Integer>("delete " + uri, callback) {
+            @Override
+            Integer execute() {
+                return mResolver.delete(uri, null, null);
+            }
+        });
+    }
+
+    /**
+     * Call a provider method, such as {@link VeggieContract#METHOD_SELL}. The callback receives
+     * the Bundle the method returns.
+     */
+    public void call(final String method, final Bundle extras, Callback<Bundle> callback) {
+        enqueue(new Write<Bundle>(null, callback) {
+            @Override
+            Bundle execute() {
+                return mResolver.call(VeggieContract.BASE_CONTENT_URI, method, null, extras);
+            }
+        });
+    }
+
+    /**
+     * Queue a write, or fold it into the write at the end of the queue if that one has the same
+     * key.
+     */
+    private <T> void enqueue(Write<T> write) {
+        synchronized (mPendingWrites) {
+            if (write.mKey != null) {
+                @SuppressWarnings("unchecked")
+                Write<T> pending = (Write<T>) mPendingWrites.get(write.mKey);
+                if (pending != null && pending == mLastWrite) {
+                    pending.absorb(write);
+                    pending.mCallbacks.addAll(write.mCallbacks);
+                    return;
+                }
+                // A pending write with this key that is not last stays queued as it is
+                mPendingWrites.put(write.mKey, write);
+            }
+            mLastWrite = write;
+        }
+        try {
+            mWriter.execute(write);
+        } catch (RejectedExecutionException e) {
+            Log.e(LOG_TAG, "Too many pending writes, refusing " + write, e);
+            synchronized (mPendingWrites) {
+                if (write.mKey != null && mPendingWrites.get(write.mKey) == write) {
+                    mPendingWrites.remove(write.mKey);
+                }
+                if (mLastWrite == write) {
+                    mLastWrite = null;
+                }
+            }
+            write.deliver(null);
+        }
+    }
+
+    /**
+     * One queued write and the callbacks waiting for its result.
+     */
+    private abstract class Write<T> implements Runnable {
+
+        /**
+         * Key that later writes coalesce on, or null if this write never coalesces
+         */
+        final String mKey;
+
+        /**
+         * Callbacks of this write and of every write folded into it. Guarded by
+         * {@link #mPendingWrites} until the write starts.
+         */
+        final List<Callback<T>> mCallbacks = new ArrayList<>(1);
+
+        Write(String key, Callback<T> callback) {
+            mKey = key;
+            if (callback != null) {
+                mCallbacks.add(callback);
+            }
+        }
+
+        /**
+         * Perform the write on the writer thread.
+         */
+        abstract T execute();
+
+        /**
+         * Fold a later write with the same key into this one, which has not started yet. By
+         * default the later write is simply the same write again.
+         */
+        void absorb(Write<T> later) {
+        }
+
+        @Override
+        public void run() {
+            // From here on nothing can be folded into this write
+            synchronized (mPendingWrites) {
+                if (mKey != null && mPendingWrites.get(mKey) == this) {
+                    mPendingWrites.remove(mKey);
+                }
+                if (mLastWrite == this) {
+                    mLastWrite = null;
+                }
+            }
+            T result = null;
+            try {
+                result = execute();
+            } catch (IllegalArgumentException | SQLException e) {
+                // The provider rejected the values; report it as a failed write
+                Log.e(LOG_TAG, "Write failed", e);
+            }
+            deliver(result);
+        }
+
+        /**
+         * Post the result to every callback on the main thread.
+         */
+        void deliver(final T result) {
+            if (mCallbacks.isEmpty()) {
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Callback<T> callback : mCallbacks) {
+                        callback.onResult(result);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * An update, which absorbs later updates of the same URI by taking over their values.
+     */
+    private final class UpdateWrite extends Write<Integer> {
+
+        private final Uri mUri;
+
+        /**
+         * Values of this update and every later one folded into it. Guarded by
+         * {@link #mPendingWrites} until the write starts.
+         */
+        private final ContentValues mValues;
+
+        UpdateWrite(Uri uri, ContentValues values, Callback<Integer> callback) {
+            super("update " + uri, callback);
+            mUri = uri;
+            // Take a copy, since later updates are merged into it
+            mValues = new ContentValues(values);
+        }
+
+        @Override
+        Integer execute() {
+            return mResolver.update(mUri, mValues, null, null);
+        }
+
+        @Override
+        void absorb(Write<Integer> later) {
+            mValues.putAll(((UpdateWrite) later).mValues);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.android.inventory2.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV one record at a time. Fields may be quoted, and quoted fields may hold
+ * commas, doubled quotes and line breaks. Only the record being read is kept in memory, so a
+ * file of any length can be read in constant space.
+ */
+final class CsvReader {
+
+    /**
+     * Marks that no character has been pushed back
+     */
+    private static final int NONE = -2;
+
+    private final Reader mReader;
+
+    /**
+     * Buffer for the field being read, re-used for every field
+     */
+    private final StringBuilder mField = new StringBuilder();
+
+    /**
+     * A character read ahead of the current record, or {@link #NONE}
+     */
+    private int mPushedBack = NONE;
+
+    /**
+     * Number of the line the next record starts on, counting from 1
+     */
+    private int mLineNumber = 1;
+
+    /**
+     * @param reader to read from; it should be buffered, as it is read one character at a time
+     */
+    CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Return the number of the line the next record starts on, counting from 1.
+     */
+    int getLineNumber() {
+        return mLineNumber;
+    }
+
+    /**
+     * Read the next record into the given list, replacing its contents. Return false at the end
+     * of the input, in which case the list is left empty.
+     */
+    boolean readRecord(List<String> fields) throws IOException {
+        fields.clear();
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+        mField.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field before line " + mLineNumber);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        // A doubled quote stands for one quote
+                        mField.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        mLineNumber++;
+                    }
+                    mField.append((char) c);
+                }
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(mField.toString());
+                mField.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    // Treat \r\n as a single line break
+                    int next = read();
+                    if (next != '\n') {
+                        mPushedBack = next;
+                    }
+                }
+                if (c != -1) {
+                    mLineNumber++;
+                }
+                fields.add(mField.toString());
+                return true;
+            } else {
+                mField.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (mPushedBack != NONE) {
+            int c = mPushedBack;
+            mPushedBack = NONE;
+            return c;
+        }
+        return mReader.read();
+    }
+}
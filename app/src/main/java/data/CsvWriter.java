@@ -0,0 +1,77 @@
+package com.example.android.inventory2.data;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes RFC 4180 CSV one field at a time. Fields that hold a comma, a quote or a line break are
+ * quoted; all others are written as they are. Nothing is buffered here beyond what the
+ * underlying writer buffers.
+ */
+final class CsvWriter {
+
+    private final Writer mWriter;
+
+    /**
+     * True if the next field is the first of its record
+     */
+    private boolean mFirstField = true;
+
+    /**
+     * @param writer to write to; it should be buffered, as fields are written in small pieces
+     */
+    CsvWriter(Writer writer) {
+        mWriter = writer;
+    }
+
+    /**
+     * Write one field of the current record. A null field is written as an empty one.
+     */
+    void writeField(String value) throws IOException {
+        if (!mFirstField) {
+            mWriter.write(',');
+        }
+        mFirstField = false;
+        if (value == null) {
+            return;
+        }
+        if (!needsQuotes(value)) {
+            mWriter.write(value);
+            return;
+        }
+        mWriter.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                mWriter.write('"');
+            }
+            mWriter.write(c);
+        }
+        mWriter.write('"');
+    }
+
+    /**
+     * End the current record.
+     */
+    void endRecord() throws IOException {
+        mWriter.write("\r\n");
+        mFirstField = true;
+    }
+
+    /**
+     * Write the buffered output through to the underlying stream.
+     */
+    void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
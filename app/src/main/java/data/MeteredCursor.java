@@ -0,0 +1,121 @@
+package com.example.android.inventory2.data;
+
+import android.database.CrossProcessCursorWrapper;
+import android.database.Cursor;
+import android.database.CursorWindow;
+
+/**
+ * Wraps a cursor returned by {@link VeggieProvider} and reports every fill of its window to
+ * {@link ProviderMetrics}. SQLite only steps through a query while rows are copied into the
+ * window, so the time spent in these fills is most of the time a query costs.
+ * <p>
+ * A fill is noticed when a call that may move the cursor leaves it with a different window, or
+ * with the window holding a different range of rows.
+ */
+final class MeteredCursor extends CrossProcessCursorWrapper {
+
+    private final ProviderMetrics mMetrics;
+
+    /**
+     * Name of the operation the fills are counted under
+     */
+    private final String mOperation;
+
+    private CursorWindow mLastWindow;
+
+    private int mLastStartPosition = -1;
+
+    private int mLastNumRows = -1;
+
+    MeteredCursor(Cursor cursor, ProviderMetrics metrics, String operation) {
+        super(cursor);
+        mMetrics = metrics;
+        mOperation = operation;
+    }
+
+    @Override
+    public int getCount() {
+        long start = System.nanoTime();
+        int count = super.getCount();
+        checkWindow(start);
+        return count;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        long start = System.nanoTime();
+        boolean moved = super.move(offset);
+        checkWindow(start);
+        return moved;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        long start = System.nanoTime();
+        boolean moved = super.moveToPosition(position);
+        checkWindow(start);
+        return moved;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        long start = System.nanoTime();
+        boolean moved = super.moveToFirst();
+        checkWindow(start);
+        return moved;
+    }
+
+    @Override
+    public boolean moveToLast() {
+        long start = System.nanoTime();
+        boolean moved = super.moveToLast();
+        checkWindow(start);
+        return moved;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        long start = System.nanoTime();
+        boolean moved = super.moveToNext();
+        checkWindow(start);
+        return moved;
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        long start = System.nanoTime();
+        boolean moved = super.moveToPrevious();
+        checkWindow(start);
+        return moved;
+    }
+
+    /**
+     * Called when the cursor is read from another process, with a window owned by the caller.
+     * Every call is a fill.
+     */
+    @Override
+    public void fillWindow(int position, CursorWindow window) {
+        long start = System.nanoTime();
+        super.fillWindow(position, window);
+        mMetrics.recordWindowFill(mOperation, System.nanoTime() - start);
+    }
+
+    /**
+     * Record a fill if the window changed since the last check.
+     */
+    private void checkWindow(long start) {
+        CursorWindow window = getWindow();
+        if (window == null) {
+            return;
+        }
+        int startPosition = window.getStartPosition();
+        int numRows = window.getNumRows();
+        if (window != mLastWindow || startPosition != mLastStartPosition
+                || numRows != mLastNumRows) {
+            mLastWindow = window;
+            mLastStartPosition = startPosition;
+            mLastNumRows = numRows;
+            mMetrics.recordWindowFill(mOperation, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.android.inventory2.data;
+
+import android.os.Bundle;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters for the calls made to {@link VeggieProvider}, kept per operation, such as
+ * "veggies/# query" or "veggies update". For each operation it counts the calls, the rows they
+ * read or wrote, the calls slower than the slow call threshold and the cursor window fills, and
+ * keeps a histogram of the call latencies. The provider hands a copy out through
+ * {@link VeggieContract#METHOD_METRICS}.
+ * <p>
+ * The provider is called on several binder threads at once, so every method is synchronized.
+ * Each one only adds to a few counters.
+ */
+final class ProviderMetrics {
+
+    /**
+     * Upper bounds of the latency histogram buckets, in milliseconds. A bucket holds the calls
+     * that took at most its bound and more than the bound before it; one more bucket at the end
+     * holds the calls slower than all of them.
+     */
+    static final long[] LATENCY_BUCKET_BOUNDS_MS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512};
+
+    /**
+     * Slow call threshold used until {@link #setSlowThresholdMs} is called, in milliseconds
+     */
+    static final long DEFAULT_SLOW_THRESHOLD_MS = 100;
+
+    /**
+     * Counters of a single operation.
+     */
+    private static final class Operation {
+        long calls;
+        long totalNanos;
+        long maxNanos;
+        long rows;
+        long slowCalls;
+        long windowFills;
+        long windowFillNanos;
+        final long[] histogram = new long[LATENCY_BUCKET_BOUNDS_MS.length + 1];
+    }
+
+    /**
+     * Counters by operation name, sorted so the operations of one URI are listed together
+     */
+    private final Map<String, Operation> mOperations = new TreeMap<>();
+
+    private long mSlowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_THRESHOLD_MS);
+
+    /**
+     * Record a finished call that read or wrote the given number of rows. Return true if it
+     * took at least as long as the slow call threshold.
+     */
+    synchronized boolean recordCall(String operation, long elapsedNanos, int rows) {
+        Operation counters = getOperation(operation);
+        counters.calls++;
+        counters.totalNanos += elapsedNanos;
+        counters.maxNanos = Math.max(counters.maxNanos, elapsedNanos);
+        counters.histogram[bucketOf(elapsedNanos)]++;
+        counters.rows += rows;
+        if (elapsedNanos >= mSlowThresholdNanos) {
+            counters.slowCalls++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record that the window of a cursor returned by the operation was filled from SQLite.
+     */
+    synchronized void recordWindowFill(String operation, long elapsedNanos) {
+        Operation counters = getOperation(operation);
+        counters.windowFills++;
+        counters.windowFillNanos += elapsedNanos;
+    }
+
+    synchronized long getSlowThresholdMs() {
+        return TimeUnit.NANOSECONDS.toMillis(mSlowThresholdNanos);
+    }
+
+    /**
+     * Set the latency from which calls count as slow, in milliseconds.
+     */
+    synchronized void setSlowThresholdMs(long slowThresholdMs) {
+        if (slowThresholdMs < 0) {
+            throw new IllegalArgumentException("Slow call threshold must be 0 or more");
+        }
+        mSlowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+    }
+
+    /**
+     * Forget all counters. The slow call threshold is kept.
+     */
+    synchronized void reset() {
+        mOperations.clear();
+    }
+
+    /**
+     * Return a copy of all counters in the layout described at
+     * {@link VeggieContract#METHOD_METRICS}.
+     */
+    synchronized Bundle toBundle() {
+        Bundle result = new Bundle();
+        result.putLong(VeggieContract.EXTRA_SLOW_THRESHOLD_MS, getSlowThresholdMs());
+        result.putLongArray(VeggieContract.EXTRA_LATENCY_BUCKETS_MS, LATENCY_BUCKET_BOUNDS_MS.clone());
+        result.putStringArray(VeggieContract.EXTRA_OPERATIONS,
+                mOperations.keySet().toArray(new String[mOperations.size()]));
+        for (Map.Entry<String, Operation> entry : mOperations.entrySet()) {
+            Operation counters = entry.getValue();
+            Bundle operation = new Bundle();
+            operation.putLong(VeggieContract.EXTRA_CALLS, counters.calls);
+            operation.putLong(VeggieContract.EXTRA_TOTAL_TIME_US,
+                    TimeUnit.NANOSECONDS.toMicros(counters.totalNanos));
+            operation.putLong(VeggieContract.EXTRA_MAX_TIME_US,
+                    TimeUnit.NANOSECONDS.toMicros(counters.maxNanos));
+            operation.putLongArray(VeggieContract.EXTRA_LATENCY_HISTOGRAM, counters.histogram.clone());
+            operation.putLong(VeggieContract.EXTRA_ROWS, counters.rows);
+            operation.putLong(VeggieContract.EXTRA_SLOW_CALLS, counters.slowCalls);
+            operation.putLong(VeggieContract.EXTRA_WINDOW_FILLS, counters.windowFills);
+            operation.putLong(VeggieContract.EXTRA_WINDOW_FILL_TIME_US,
+                    TimeUnit.NANOSECONDS.toMicros(counters.windowFillNanos));
+            result.putBundle(entry.getKey(), operation);
+        }
+        return result;
+    }
+
+    private Operation getOperation(String operation) {
+        Operation counters = mOperations.get(operation);
+        if (counters == null) {
+            counters = new Operation();
+            mOperations.put(operation, counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Return the index of the histogram bucket for the given latency.
+     */
+    static int bucketOf(long elapsedNanos) {
+        for (int i = 0; i < LATENCY_BUCKET_BOUNDS_MS.length; i++) {
+            if (elapsedNanos <= TimeUnit.MILLISECONDS.toNanos(LATENCY_BUCKET_BOUNDS_MS[i])) {
+                return i;
+            }
+        }
+        return LATENCY_BUCKET_BOUNDS_MS.length;
+    }
+}
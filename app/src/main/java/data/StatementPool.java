@@ -0,0 +1,106 @@
+package com.example.android.inventory2.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps compiled statements of {@link VeggieProvider}'s fixed write shapes, such as the insert
+ * of a full veggie row or the update of a single quantity, so they are compiled once instead of
+ * on every call.
+ * <p>
+ * A statement holds its bound arguments, so it must only be used by one thread at a time:
+ * {@link #acquire} hands a statement out to a single caller, which gives it back with
+ * {@link #release} when done, usually in a finally block. Calls that run at the same time get
+ * statements of their own; at most {@link #MAX_IDLE_PER_SQL} of each are kept afterwards.
+ */
+final class StatementPool {
+
+    /**
+     * Number of idle statements kept per SQL string. The provider rarely runs more writes at
+     * once than this.
+     */
+    static final int MAX_IDLE_PER_SQL = 4;
+
+    /**
+     * Idle statements by SQL string
+     */
+    private final Map<String, ArrayDeque<SQLiteStatement>> mIdle = new HashMap<>();
+
+    /**
+     * Database the idle statements were compiled against
+     */
+    private SQLiteDatabase mDatabase;
+
+    /**
+     * Number of statements compiled because none was idle
+     */
+    private int mCompileCount;
+
+    /**
+     * Return a statement for the SQL, compiled against the given database. Give it back with
+     * {@link #release} instead of closing it.
+     */
+    SQLiteStatement acquire(SQLiteDatabase database, String sql) {
+        synchronized (this) {
+            if (database != mDatabase) {
+                // The database was opened again, so the idle statements belong to a closed one
+                closeIdle();
+                mDatabase = database;
+            }
+            ArrayDeque<SQLiteStatement> idle = mIdle.get(sql);
+            SQLiteStatement statement = idle != null ? idle.poll() : null;
+            if (statement != null) {
+                return statement;
+            }
+            mCompileCount++;
+        }
+        // Compile outside the lock, so other threads can take idle statements meanwhile
+        return database.compileStatement(sql);
+    }
+
+    /**
+     * Give back a statement returned by {@link #acquire} for the same database and SQL. It is
+     * kept for the next caller, or closed if enough are idle already.
+     */
+    void release(SQLiteDatabase database, String sql, SQLiteStatement statement) {
+        // Don't keep the last arguments, strings or blobs alive while the statement is idle
+        statement.clearBindings();
+        synchronized (this) {
+            if (database == mDatabase) {
+                ArrayDeque<SQLiteStatement> idle = mIdle.get(sql);
+                if (idle == null) {
+                    idle = new ArrayDeque<>(MAX_IDLE_PER_SQL);
+                    mIdle.put(sql, idle);
+                }
+                if (idle.size() < MAX_IDLE_PER_SQL) {
+                    idle.push(statement);
+                    return;
+                }
+            }
+        }
+        statement.close();
+    }
+
+    /**
+     * Return the number of statements compiled so far.
+     */
+    synchronized int compileCount() {
+        return mCompileCount;
+    }
+
+    /**
+     * Close every idle statement.
+     */
+    synchronized void closeIdle() {
+        for (ArrayDeque<SQLiteStatement> idle : mIdle.values()) {
+            for (SQLiteStatement statement : idle) {
+                statement.close();
+            }
+        }
+        mIdle.clear();
+    }
+}
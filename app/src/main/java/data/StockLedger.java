@@ -0,0 +1,243 @@
+package com.example.android.inventory2.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventory2.data.VeggieContract.StockMovementEntry;
+import com.example.android.inventory2.data.VeggieContract.StockSnapshotEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+/**
+ * Writes the stock movement ledger for {@link VeggieProvider}. Every change to a quantity is
+ * appended to {@link StockMovementEntry#TABLE_NAME}, while the current quantity stays
+ * materialized in the veggies row so the catalog never has to add up the ledger. The
+ * {@link StockLevels stock levels} per location are moved by the same delta in the same
+ * transaction, so they keep adding up to that quantity.
+ * <p>
+ * A ledger is meant to live for the length of one write transaction. Its statements are compiled
+ * on first use, or taken from a {@link StatementPool}, and re-bound for every row after that, so
+ * a batch of movements compiles each statement at most once. Call {@link #close} before the
+ * transaction ends.
+ */
+final class StockLedger {
+
+    /**
+     * Milliseconds in a day. Snapshots are kept per UTC day.
+     */
+    static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Number of days of movements kept when compaction is not told otherwise
+     */
+    static final int DEFAULT_RETENTION_DAYS = 30;
+
+    /**
+     * SQL statement used to append one movement to the ledger.
+     */
+    private static final String SQL_INSERT_MOVEMENT = "INSERT INTO "
+            + StockMovementEntry.TABLE_NAME + " ("
+            + StockMovementEntry.COLUMN_VEGGIE_ID + ", "
+            + StockMovementEntry.COLUMN_DELTA + ", "
+            + StockMovementEntry.COLUMN_REASON + ", "
+            + StockMovementEntry.COLUMN_TIMESTAMP + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * SQL statement used to apply a movement to the materialized quantity. The row is only
+     * changed if the quantity stays at 0 or above.
+     */
+    private static final String SQL_APPLY_MOVEMENT = "UPDATE " + VeggieEntry.TABLE_NAME
+            + " SET " + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " = "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " + ?"
+            + " WHERE " + VeggieEntry._ID + " = ? AND "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " + ? >= 0";
+
+    /**
+     * SQL statement used to fold all movements older than a cutoff into the daily snapshots.
+     * Movements are summed per veggie and day, and added to the snapshot of that day if
+     * an earlier compaction already wrote one.
+     */
+    private static final String SQL_COMPACT_MOVEMENTS = "INSERT OR REPLACE INTO "
+            + StockSnapshotEntry.TABLE_NAME + " ("
+            + StockSnapshotEntry.COLUMN_VEGGIE_ID + ", "
+            + StockSnapshotEntry.COLUMN_DAY + ", "
+            + StockSnapshotEntry.COLUMN_DELTA + ", "
+            + StockSnapshotEntry.COLUMN_MOVEMENT_COUNT + ")"
+            + " SELECT m.veggie_id, m.day, m.delta + IFNULL(s.delta, 0),"
+            + " m.movement_count + IFNULL(s.movement_count, 0)"
+            + " FROM (SELECT " + StockMovementEntry.COLUMN_VEGGIE_ID + " AS veggie_id, "
+            + StockMovementEntry.COLUMN_TIMESTAMP + " / " + DAY_MILLIS + " AS day, "
+            + "SUM(" + StockMovementEntry.COLUMN_DELTA + ") AS delta, COUNT(*) AS movement_count"
+            + " FROM " + StockMovementEntry.TABLE_NAME
+            + " WHERE " + StockMovementEntry.COLUMN_TIMESTAMP + " < ?"
+            + " GROUP BY veggie_id, day) m"
+            + " LEFT JOIN " + StockSnapshotEntry.TABLE_NAME + " s"
+            + " ON s." + StockSnapshotEntry.COLUMN_VEGGIE_ID + " = m.veggie_id"
+            + " AND s." + StockSnapshotEntry.COLUMN_DAY + " = m.day";
+
+    /**
+     * SQL statement used to drop the movements a compaction has folded into snapshots.
+     */
+    private static final String SQL_DELETE_COMPACTED = "DELETE FROM "
+            + StockMovementEntry.TABLE_NAME
+            + " WHERE " + StockMovementEntry.COLUMN_TIMESTAMP + " < ?";
+
+    private final SQLiteDatabase mDatabase;
+
+    /**
+     * Pool the statements are taken from, or null to compile them
+     */
+    private final StatementPool mPool;
+
+    private SQLiteStatement mInsertMovement;
+
+    private SQLiteStatement mApplyMovement;
+
+    private final StockLevels mLevels;
+
+    StockLedger(SQLiteDatabase database) {
+        this(database, null);
+    }
+
+    StockLedger(SQLiteDatabase database, StatementPool pool) {
+        mDatabase = database;
+        mPool = pool;
+        mLevels = new StockLevels(database, pool);
+    }
+
+    /**
+     * Return true if the reason is one of the reasons defined in {@link StockMovementEntry}.
+     */
+    static boolean isValidReason(String reason) {
+        return StockMovementEntry.REASON_SALE.equals(reason)
+                || StockMovementEntry.REASON_RECEIVE.equals(reason)
+                || StockMovementEntry.REASON_ADJUST.equals(reason);
+    }
+
+    /**
+     * Append a movement to the ledger and move the stock levels of the veggie, without touching
+     * the veggies row. Use this when the quantity has already been written, for example by the
+     * insert of a new veggie. Return the ID of the new movement.
+     */
+    long record(long veggieId, long delta, String reason, long timestamp) {
+        mLevels.move(veggieId, delta);
+        if (mInsertMovement == null) {
+            mInsertMovement = acquire(SQL_INSERT_MOVEMENT);
+        }
+        mInsertMovement.bindLong(1, veggieId);
+        mInsertMovement.bindLong(2, delta);
+        mInsertMovement.bindString(3, reason);
+        mInsertMovement.bindLong(4, timestamp);
+        return mInsertMovement.executeInsert();
+    }
+
+    /**
+     * Apply a movement to the quantity of the veggie and append it to the ledger. Return the ID of
+     * the new movement, or -1 if there is no such veggie or the movement would take its quantity
+     * below 0, in which case nothing is written.
+     */
+    long apply(long veggieId, long delta, String reason, long timestamp) {
+        if (mApplyMovement == null) {
+            mApplyMovement = acquire(SQL_APPLY_MOVEMENT);
+        }
+        mApplyMovement.bindLong(1, delta);
+        mApplyMovement.bindLong(2, veggieId);
+        mApplyMovement.bindLong(3, delta);
+        if (mApplyMovement.executeUpdateDelete() != 1) {
+            return -1;
+        }
+        return record(veggieId, delta, reason, timestamp);
+    }
+
+    /**
+     * Record the difference between the current quantity of every veggie in the selection and
+     * the given new quantity as an {@link StockMovementEntry#REASON_ADJUST adjustment}. Must run
+     * before the quantity itself is updated. Return the number of movements recorded.
+     * <p>
+     * Each veggie's stock levels move by its own difference, so the changed rows are read
+     * into Java and recorded one by one.
+     */
+    int recordAdjustments(String selection, String[] selectionArgs, long newQuantity,
+                          long timestamp) {
+        String where = VeggieEntry.COLUMN_VEGGIE_QUANTITY + " != ?";
+        if (selection != null && !selection.isEmpty()) {
+            where = "(" + selection + ") AND " + where;
+        }
+        String[] whereArgs = new String[(selectionArgs != null ? selectionArgs.length : 0) + 1];
+        if (selectionArgs != null) {
+            System.arraycopy(selectionArgs, 0, whereArgs, 0, selectionArgs.length);
+        }
+        whereArgs[whereArgs.length - 1] = String.valueOf(newQuantity);
+
+        Cursor cursor = mDatabase.query(VeggieEntry.TABLE_NAME,
+                new String[]{VeggieEntry._ID, VeggieEntry.COLUMN_VEGGIE_QUANTITY}, where,
+                whereArgs, null, null, null);
+        int adjustments = 0;
+        try {
+            while (cursor.moveToNext()) {
+                record(cursor.getLong(0), newQuantity - cursor.getLong(1),
+                        StockMovementEntry.REASON_ADJUST, timestamp);
+                adjustments++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return adjustments;
+    }
+
+    /**
+     * Release the compiled statements.
+     */
+    void close() {
+        mLevels.close();
+        if (mInsertMovement != null) {
+            release(SQL_INSERT_MOVEMENT, mInsertMovement);
+            mInsertMovement = null;
+        }
+        if (mApplyMovement != null) {
+            release(SQL_APPLY_MOVEMENT, mApplyMovement);
+            mApplyMovement = null;
+        }
+    }
+
+    private SQLiteStatement acquire(String sql) {
+        return mPool != null ? mPool.acquire(mDatabase, sql) : mDatabase.compileStatement(sql);
+    }
+
+    private void release(String sql, SQLiteStatement statement) {
+        if (mPool != null) {
+            mPool.release(mDatabase, sql, statement);
+        } else {
+            statement.close();
+        }
+    }
+
+    /**
+     * Return the start of the day that lies the given number of days before now. Movements
+     * older than this are compacted; cutting at a day boundary keeps every day in one piece.
+     */
+    static long compactionCutoff(long now, int retentionDays) {
+        if (retentionDays < 0) {
+            throw new IllegalArgumentException("Retention cannot be negative");
+        }
+        return (now / DAY_MILLIS - retentionDays) * DAY_MILLIS;
+    }
+
+    /**
+     * Fold every movement older than the cutoff into the daily snapshots and delete it from the
+     * ledger. Must run inside a transaction. Return the number of movements compacted.
+     */
+    static int compact(SQLiteDatabase database, long cutoff) {
+        SQLiteStatement fold = database.compileStatement(SQL_COMPACT_MOVEMENTS);
+        SQLiteStatement delete = database.compileStatement(SQL_DELETE_COMPACTED);
+        try {
+            fold.bindLong(1, cutoff);
+            fold.executeUpdateDelete();
+            delete.bindLong(1, cutoff);
+            return delete.executeUpdateDelete();
+        } finally {
+            fold.close();
+            delete.close();
+        }
+    }
+}
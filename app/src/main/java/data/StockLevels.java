@@ -0,0 +1,215 @@
+package com.example.android.inventory2.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventory2.data.VeggieContract.LocationEntry;
+import com.example.android.inventory2.data.VeggieContract.StockLevelEntry;
+
+/**
+ * Writes the stock levels per veggie and location for {@link VeggieProvider}. The total on
+ * hand stays materialized in the veggies row; {@link StockLedger} moves the levels by the same
+ * delta whenever it changes the total, so the levels of a veggie always add up to its quantity,
+ * and {@link #transfer} moves units between locations without touching the total.
+ * <p>
+ * Like {@link StockLedger}, an instance is meant to live for the length of one write
+ * transaction. Its statements are compiled on first use, or taken from a
+ * {@link StatementPool}. Call {@link #close} before the transaction ends.
+ */
+final class StockLevels {
+
+    /**
+     * SQL statement used to make sure a veggie has a level at a location, so it can be added to.
+     */
+    private static final String SQL_INSERT_LEVEL = "INSERT OR IGNORE INTO "
+            + StockLevelEntry.TABLE_NAME + " ("
+            + StockLevelEntry.COLUMN_VEGGIE_ID + ", "
+            + StockLevelEntry.COLUMN_LOCATION_ID + ", "
+            + StockLevelEntry.COLUMN_QUANTITY + ") VALUES (?, ?, 0)";
+
+    /**
+     * SQL statement used to add units to the level of a veggie at a location.
+     */
+    private static final String SQL_ADD_TO_LEVEL = "UPDATE " + StockLevelEntry.TABLE_NAME
+            + " SET " + StockLevelEntry.COLUMN_QUANTITY + " = "
+            + StockLevelEntry.COLUMN_QUANTITY + " + ?"
+            + " WHERE " + StockLevelEntry.COLUMN_VEGGIE_ID + " = ? AND "
+            + StockLevelEntry.COLUMN_LOCATION_ID + " = ?";
+
+    /**
+     * SQL statement used to take units from the level of a veggie at a location. The row is
+     * only changed when it holds at least that many units.
+     */
+    private static final String SQL_TAKE_FROM_LEVEL = "UPDATE " + StockLevelEntry.TABLE_NAME
+            + " SET " + StockLevelEntry.COLUMN_QUANTITY + " = "
+            + StockLevelEntry.COLUMN_QUANTITY + " - ?"
+            + " WHERE " + StockLevelEntry.COLUMN_VEGGIE_ID + " = ? AND "
+            + StockLevelEntry.COLUMN_LOCATION_ID + " = ? AND "
+            + StockLevelEntry.COLUMN_QUANTITY + " >= ?";
+
+    /**
+     * SQL query for the locations that hold some of a veggie. The unique key on veggie and
+     * location returns them in location order, and the default location has the lowest ID,
+     * so it comes first.
+     */
+    private static final String SQL_SELECT_LEVELS = "SELECT "
+            + StockLevelEntry.COLUMN_LOCATION_ID + ", " + StockLevelEntry.COLUMN_QUANTITY
+            + " FROM " + StockLevelEntry.TABLE_NAME
+            + " WHERE " + StockLevelEntry.COLUMN_VEGGIE_ID + " = ? AND "
+            + StockLevelEntry.COLUMN_QUANTITY + " > 0"
+            + " ORDER BY " + StockLevelEntry.COLUMN_LOCATION_ID;
+
+    /**
+     * SQL statement used to check that a location exists.
+     */
+    private static final String SQL_COUNT_LOCATION = "SELECT COUNT(*) FROM "
+            + LocationEntry.TABLE_NAME + " WHERE " + LocationEntry._ID + " = ?";
+
+    private final SQLiteDatabase mDatabase;
+
+    /**
+     * Pool the statements are taken from, or null to compile them
+     */
+    private final StatementPool mPool;
+
+    private SQLiteStatement mInsertLevel;
+
+    private SQLiteStatement mAddToLevel;
+
+    private SQLiteStatement mTakeFromLevel;
+
+    StockLevels(SQLiteDatabase database, StatementPool pool) {
+        mDatabase = database;
+        mPool = pool;
+    }
+
+    /**
+     * Move the levels of a veggie by a change to its total that names no location. Units
+     * coming in go to the default location. Units going out are taken from the default
+     * location first, then from the other locations in ID order.
+     *
+     * @throws IllegalStateException if the levels hold fewer units than are going out, which
+     *                               means they no longer add up to the total
+     */
+    void move(long veggieId, long delta) {
+        if (delta > 0) {
+            add(veggieId, LocationEntry.DEFAULT_LOCATION_ID, delta);
+        } else if (delta < 0) {
+            drain(veggieId, -delta);
+        }
+    }
+
+    /**
+     * Move units of a veggie from one location to another. Return false, and change nothing,
+     * if the source holds fewer units.
+     */
+    boolean transfer(long veggieId, long fromLocationId, long toLocationId, long units) {
+        if (!take(veggieId, fromLocationId, units)) {
+            return false;
+        }
+        add(veggieId, toLocationId, units);
+        return true;
+    }
+
+    /**
+     * Return true if there is a location with the given ID.
+     */
+    boolean hasLocation(long locationId) {
+        SQLiteStatement count = mDatabase.compileStatement(SQL_COUNT_LOCATION);
+        try {
+            count.bindLong(1, locationId);
+            return count.simpleQueryForLong() != 0;
+        } finally {
+            count.close();
+        }
+    }
+
+    private void add(long veggieId, long locationId, long units) {
+        if (mInsertLevel == null) {
+            mInsertLevel = acquire(SQL_INSERT_LEVEL);
+            mAddToLevel = acquire(SQL_ADD_TO_LEVEL);
+        }
+        mInsertLevel.bindLong(1, veggieId);
+        mInsertLevel.bindLong(2, locationId);
+        mInsertLevel.executeInsert();
+
+        mAddToLevel.bindLong(1, units);
+        mAddToLevel.bindLong(2, veggieId);
+        mAddToLevel.bindLong(3, locationId);
+        mAddToLevel.executeUpdateDelete();
+    }
+
+    private boolean take(long veggieId, long locationId, long units) {
+        if (mTakeFromLevel == null) {
+            mTakeFromLevel = acquire(SQL_TAKE_FROM_LEVEL);
+        }
+        mTakeFromLevel.bindLong(1, units);
+        mTakeFromLevel.bindLong(2, veggieId);
+        mTakeFromLevel.bindLong(3, locationId);
+        mTakeFromLevel.bindLong(4, units);
+        return mTakeFromLevel.executeUpdateDelete() == 1;
+    }
+
+    /**
+     * Take units of a veggie from the locations that hold it, default location first. A veggie
+     * is kept in a few locations at most, so this reads a few rows.
+     */
+    private void drain(long veggieId, long units) {
+        int locations;
+        long[] locationIds;
+        long[] quantities;
+        Cursor cursor = mDatabase.rawQuery(SQL_SELECT_LEVELS,
+                new String[]{String.valueOf(veggieId)});
+        try {
+            locations = cursor.getCount();
+            locationIds = new long[locations];
+            quantities = new long[locations];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                locationIds[i] = cursor.getLong(0);
+                quantities[i] = cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        long remaining = units;
+        for (int i = 0; i < locations && remaining > 0; i++) {
+            long taken = Math.min(remaining, quantities[i]);
+            take(veggieId, locationIds[i], taken);
+            remaining -= taken;
+        }
+        if (remaining > 0) {
+            throw new IllegalStateException("Stock levels of veggie " + veggieId
+                    + " are " + remaining + " units short of its quantity");
+        }
+    }
+
+    /**
+     * Release the compiled statements.
+     */
+    void close() {
+        if (mInsertLevel != null) {
+            release(SQL_INSERT_LEVEL, mInsertLevel);
+            release(SQL_ADD_TO_LEVEL, mAddToLevel);
+            mInsertLevel = null;
+            mAddToLevel = null;
+        }
+        if (mTakeFromLevel != null) {
+            release(SQL_TAKE_FROM_LEVEL, mTakeFromLevel);
+            mTakeFromLevel = null;
+        }
+    }
+
+    private SQLiteStatement acquire(String sql) {
+        return mPool != null ? mPool.acquire(mDatabase, sql) : mDatabase.compileStatement(sql);
+    }
+
+    private void release(String sql, SQLiteStatement statement) {
+        if (mPool != null) {
+            mPool.release(mDatabase, sql, statement);
+        } else {
+            statement.close();
+        }
+    }
+}
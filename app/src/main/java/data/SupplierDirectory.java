@@ -0,0 +1,137 @@
+package com.example.android.inventory2.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventory2.data.VeggieContract.SupplierEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds or creates suppliers by name and phone for {@link VeggieProvider}, which still accepts
+ * the flat supplier columns of {@link VeggieContract.VeggieEntry} and has to turn them into a
+ * supplier ID.
+ * <p>
+ * Like {@link StockLedger}, a directory is meant to live for the length of one write
+ * transaction. Its statements are compiled on first use, or taken from a {@link StatementPool},
+ * and suppliers already resolved are remembered, so a batch of veggies from a handful of
+ * suppliers only looks each one up once. Call {@link #close} before the transaction ends.
+ */
+final class SupplierDirectory {
+
+    /**
+     * SQL statement used to look up a supplier by its unique name and phone.
+     */
+    private static final String SQL_SELECT_SUPPLIER = "SELECT " + SupplierEntry._ID
+            + " FROM " + SupplierEntry.TABLE_NAME
+            + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?"
+            + " AND " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " = ?";
+
+    /**
+     * SQL statement used to add a supplier that was not found.
+     */
+    private static final String SQL_INSERT_SUPPLIER = "INSERT INTO " + SupplierEntry.TABLE_NAME
+            + " (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+            + SupplierEntry.COLUMN_SUPPLIER_PHONE + ") VALUES (?, ?)";
+
+    private final SQLiteDatabase mDatabase;
+
+    /**
+     * Pool the statements are taken from, or null to compile them
+     */
+    private final StatementPool mPool;
+
+    /**
+     * Supplier IDs resolved so far, by name and phone
+     */
+    private final Map<String, Long> mResolved = new HashMap<>();
+
+    private SQLiteStatement mSelectSupplier;
+
+    private SQLiteStatement mInsertSupplier;
+
+    /**
+     * Number of suppliers this directory has created
+     */
+    private int mInsertCount;
+
+    SupplierDirectory(SQLiteDatabase database) {
+        this(database, null);
+    }
+
+    SupplierDirectory(SQLiteDatabase database, StatementPool pool) {
+        mDatabase = database;
+        mPool = pool;
+    }
+
+    /**
+     * Return the ID of the supplier with the given name and phone, creating it if there is none.
+     */
+    long resolve(String name, String phone) {
+        if (name == null || phone == null) {
+            throw new IllegalArgumentException("Supplier requires a name and a phone");
+        }
+        // Neither part can hold a NUL character coming from a ContentValues String
+        String key = name + '\0' + phone;
+        Long id = mResolved.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        if (mSelectSupplier == null) {
+            mSelectSupplier = acquire(SQL_SELECT_SUPPLIER);
+        }
+        mSelectSupplier.bindString(1, name);
+        mSelectSupplier.bindString(2, phone);
+        long supplierId;
+        try {
+            supplierId = mSelectSupplier.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            // No such supplier yet
+            if (mInsertSupplier == null) {
+                mInsertSupplier = acquire(SQL_INSERT_SUPPLIER);
+            }
+            mInsertSupplier.bindString(1, name);
+            mInsertSupplier.bindString(2, phone);
+            supplierId = mInsertSupplier.executeInsert();
+            mInsertCount++;
+        }
+        mResolved.put(key, supplierId);
+        return supplierId;
+    }
+
+    /**
+     * Return true if {@link #resolve} created any supplier.
+     */
+    boolean hasInserted() {
+        return mInsertCount != 0;
+    }
+
+    /**
+     * Release the compiled statements.
+     */
+    void close() {
+        if (mSelectSupplier != null) {
+            release(SQL_SELECT_SUPPLIER, mSelectSupplier);
+            mSelectSupplier = null;
+        }
+        if (mInsertSupplier != null) {
+            release(SQL_INSERT_SUPPLIER, mInsertSupplier);
+            mInsertSupplier = null;
+        }
+    }
+
+    private SQLiteStatement acquire(String sql) {
+        return mPool != null ? mPool.acquire(mDatabase, sql) : mDatabase.compileStatement(sql);
+    }
+
+    private void release(String sql, SQLiteStatement statement) {
+        if (mPool != null) {
+            mPool.release(mDatabase, sql, statement);
+        } else {
+            statement.close();
+        }
+    }
+}
@@ -36,6 +36,365 @@ public final class VeggieContract {
      */
     public static final String PATH_VEGGIES = "veggies";
 
+    /**
+     * Path appended to {@link VeggieEntry#CONTENT_URI} for full-text search. The search terms
+     * follow as the last path segment, for example
+     * content://com.example.android.inventory2/veggies/search/car
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path appended to {@link VeggieEntry#CONTENT_URI} to look a veggie up by its SKU. The SKU
+     * follows as the last path segment, for example
+     * content://com.example.android.inventory2/veggies/sku/4006381333931
+     */
+    public static final String PATH_SKU = "sku";
+
+    /**
+     * Path appended to {@link VeggieEntry#CONTENT_URI} for the aggregate figures of the whole
+     * stock, see {@link VeggieStatsEntry}.
+     */
+    public static final String PATH_STATS = "stats";
+
+    /**
+     * Path appended to {@link VeggieEntry#CONTENT_URI} for the veggies whose quantity is below
+     * the {@link #PARAM_THRESHOLD}, lowest first.
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Possible path for the suppliers table. The veggies of one supplier are at
+     * content://com.example.android.inventory2/suppliers/#/veggies
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Possible path for the append-only ledger of stock movements.
+     */
+    public static final String PATH_STOCK_MOVEMENTS = "stock_movements";
+
+    /**
+     * Possible path for the daily snapshots that old stock movements are compacted into.
+     */
+    public static final String PATH_STOCK_SNAPSHOTS = "stock_snapshots";
+
+    /**
+     * Possible path for the places stock is kept in. What one location holds is at
+     * content://com.example.android.inventory2/locations/#/stock_levels
+     */
+    public static final String PATH_LOCATIONS = "locations";
+
+    /**
+     * Possible path for the quantity of each veggie at each location. Also appended to a
+     * single veggie, as in content://com.example.android.inventory2/veggies/3/stock_levels,
+     * for its stock at every location.
+     */
+    public static final String PATH_STOCK_LEVELS = "stock_levels";
+
+    /**
+     * Query parameter on {@link VeggieEntry#CONTENT_URI} that caps the number of rows returned.
+     * For example "content://com.example.android.inventory2/veggies?limit=50".
+     */
+    public static final String PARAM_LIMIT = "limit";
+
+    /**
+     * Query parameter on {@link VeggieEntry#CONTENT_URI} that skips the given number of rows.
+     * Only used together with {@link #PARAM_LIMIT}.
+     */
+    public static final String PARAM_OFFSET = "offset";
+
+    /**
+     * Query parameter on {@link VeggieEntry#CONTENT_URI} and
+     * {@link VeggieEntry#CONTENT_SEARCH_URI} for keyset paging: only the rows that come after
+     * the row with the given {@link VeggieEntry#_ID} are returned, in _ID order unless
+     * {@link #PARAM_SORT} asks for another. Cheaper than {@link #PARAM_OFFSET} for deep pages,
+     * since SQLite seeks straight to the key.
+     */
+    public static final String PARAM_AFTER_ID = "after_id";
+
+    /**
+     * Query parameter that goes with {@link #PARAM_AFTER_ID} when {@link #PARAM_SORT} is
+     * {@link #SORT_NAME} or {@link #SORT_LOW_STOCK}: the name or quantity of that row as the
+     * caller last saw it. The row may have changed or gone since, so the provider does not look
+     * it up.
+     */
+    public static final String PARAM_AFTER_KEY = "after_key";
+
+    /**
+     * Query parameter on {@link VeggieEntry#CONTENT_URI} that chooses the order of the rows: one
+     * of {@link #SORT_ID}, {@link #SORT_NAME} or {@link #SORT_LOW_STOCK}. Every order is served
+     * by an index, with or without {@link #PARAM_SUPPLIER_ID}, so SQLite never sorts the
+     * catalog. Also accepted by {@link VeggieEntry#CONTENT_SEARCH_URI}. Cannot be combined with
+     * a sortOrder argument.
+     */
+    public static final String PARAM_SORT = "sort";
+
+    /**
+     * {@link #PARAM_SORT} value for the order the veggies were added in
+     */
+    public static final String SORT_ID = "id";
+
+    /**
+     * {@link #PARAM_SORT} value for alphabetical order of the name, ignoring case
+     */
+    public static final String SORT_NAME = "name";
+
+    /**
+     * {@link #PARAM_SORT} value for the lowest quantity first
+     */
+    public static final String SORT_LOW_STOCK = "low_stock";
+
+    /**
+     * Query parameter on {@link VeggieEntry#CONTENT_URI} and
+     * {@link VeggieEntry#CONTENT_SEARCH_URI} that only returns the veggies of the supplier with
+     * the given {@link SupplierEntry#_ID}.
+     */
+    public static final String PARAM_SUPPLIER_ID = "supplier_id";
+
+    /**
+     * Query parameter on {@link VeggieEntry#CONTENT_URI} and
+     * {@link VeggieEntry#CONTENT_SEARCH_URI} that names the projection profile the query is
+     * for. Only {@link #PROFILE_LIST} is checked.
+     */
+    public static final String PARAM_PROFILE = "profile";
+
+    /**
+     * {@link #PARAM_PROFILE} value for list queries. The provider reads a null projection as
+     * {@link VeggieEntry#LIST_PROJECTION} and rejects columns outside it, so a list can't
+     * pull the supplier columns into every row by mistake.
+     */
+    public static final String PROFILE_LIST = "list";
+
+    /**
+     * Query parameter on {@link VeggieEntry#CONTENT_LOW_STOCK_URI} and
+     * {@link VeggieStatsEntry#CONTENT_URI} for the reorder level: a veggie is low on stock when
+     * its quantity is below this number. Defaults to {@link #DEFAULT_LOW_STOCK_THRESHOLD}.
+     */
+    public static final String PARAM_THRESHOLD = "threshold";
+
+    /**
+     * Reorder level used when a query does not give a {@link #PARAM_THRESHOLD}
+     */
+    public static final int DEFAULT_LOW_STOCK_THRESHOLD = 5;
+
+    /**
+     * Name of the provider method that reports the counters of the single-row cache that serves
+     * veggies/# queries. The result holds {@link #EXTRA_HITS}, {@link #EXTRA_MISSES},
+     * {@link #EXTRA_EVICTIONS} and {@link #EXTRA_SIZE}.
+     */
+    public static final String METHOD_ROW_CACHE_STATS = "row_cache_stats";
+
+    /**
+     * Result key for the number of cache hits (int)
+     */
+    public static final String EXTRA_HITS = "hits";
+
+    /**
+     * Result key for the number of cache misses (int)
+     */
+    public static final String EXTRA_MISSES = "misses";
+
+    /**
+     * Result key for the number of cache evictions (int)
+     */
+    public static final String EXTRA_EVICTIONS = "evictions";
+
+    /**
+     * Result key for the number of entries currently cached (int)
+     */
+    public static final String EXTRA_SIZE = "size";
+
+    /**
+     * Name of the provider method that folds stock movements older than the retention period
+     * into {@link StockSnapshotEntry daily snapshots}. Optionally pass
+     * {@link #EXTRA_RETENTION_DAYS} in the extras; the result holds {@link #EXTRA_ROWS_COMPACTED}.
+     */
+    public static final String METHOD_COMPACT_LEDGER = "compact_ledger";
+
+    /**
+     * Extras key for the number of days of stock movements to keep (int)
+     */
+    public static final String EXTRA_RETENTION_DAYS = "retention_days";
+
+    /**
+     * Result key for the number of stock movements folded into snapshots (int)
+     */
+    public static final String EXTRA_ROWS_COMPACTED = "rows_compacted";
+
+    /**
+     * Name of the provider method that reports how the provider has been used since it started.
+     * The result holds {@link #EXTRA_OPERATIONS}, {@link #EXTRA_LATENCY_BUCKETS_MS} and
+     * {@link #EXTRA_SLOW_THRESHOLD_MS}, and for every name in {@link #EXTRA_OPERATIONS} a Bundle
+     * under that name holding {@link #EXTRA_CALLS}, {@link #EXTRA_TOTAL_TIME_US},
+     * {@link #EXTRA_MAX_TIME_US}, {@link #EXTRA_LATENCY_HISTOGRAM}, {@link #EXTRA_ROWS},
+     * {@link #EXTRA_SLOW_CALLS}, {@link #EXTRA_WINDOW_FILLS} and
+     * {@link #EXTRA_WINDOW_FILL_TIME_US}.
+     * <p>
+     * Optionally pass {@link #EXTRA_SLOW_THRESHOLD_MS} in the extras to change the latency from
+     * which calls are logged as slow, or {@link #EXTRA_RESET} to start counting afresh once the
+     * result has been taken.
+     */
+    public static final String METHOD_METRICS = "metrics";
+
+    /**
+     * Extras key asking for the counters to be cleared after they are reported (boolean)
+     */
+    public static final String EXTRA_RESET = "reset";
+
+    /**
+     * Extras and result key for the latency, in milliseconds, from which provider calls are
+     * counted and logged as slow (long)
+     */
+    public static final String EXTRA_SLOW_THRESHOLD_MS = "slow_threshold_ms";
+
+    /**
+     * Result key for the names of the operations that were called, such as "veggies query" or
+     * "veggies/# update": the URI pattern followed by the operation (String[])
+     */
+    public static final String EXTRA_OPERATIONS = "operations";
+
+    /**
+     * Result key for the upper bounds of the latency histogram buckets, in milliseconds. The
+     * histogram has one more bucket, for the calls slower than the last bound (long[]).
+     */
+    public static final String EXTRA_LATENCY_BUCKETS_MS = "latency_buckets_ms";
+
+    /**
+     * Result key for the number of calls of an operation (long)
+     */
+    public static final String EXTRA_CALLS = "calls";
+
+    /**
+     * Result key for the time spent in all calls of an operation, in microseconds (long)
+     */
+    public static final String EXTRA_TOTAL_TIME_US = "total_time_us";
+
+    /**
+     * Result key for the time taken by the slowest call of an operation, in microseconds (long)
+     */
+    public static final String EXTRA_MAX_TIME_US = "max_time_us";
+
+    /**
+     * Result key for the number of calls of an operation in each latency bucket (long[])
+     */
+    public static final String EXTRA_LATENCY_HISTOGRAM = "latency_histogram";
+
+    /**
+     * Result key for the number of rows returned, inserted, updated or deleted by all calls of an
+     * operation (long)
+     */
+    public static final String EXTRA_ROWS = "rows";
+
+    /**
+     * Result key for the number of calls of an operation at or above the slow threshold (long)
+     */
+    public static final String EXTRA_SLOW_CALLS = "slow_calls";
+
+    /**
+     * Result key for the number of times a cursor window was filled for an operation (long)
+     */
+    public static final String EXTRA_WINDOW_FILLS = "window_fills";
+
+    /**
+     * Result key for the time spent filling cursor windows for an operation, in microseconds
+     * (long)
+     */
+    public static final String EXTRA_WINDOW_FILL_TIME_US = "window_fill_time_us";
+
+    /**
+     * Query parameter on change notifications for a single row, such as
+     * content://com.example.android.inventory2/veggies/3?change=update, telling observers what
+     * happened to that row. Notifications on {@link VeggieEntry#CONTENT_URI} itself carry no
+     * row and mean that any row may have changed.
+     */
+    public static final String PARAM_CHANGE = "change";
+
+    /**
+     * {@link #PARAM_CHANGE} value for a row that was inserted
+     */
+    public static final String CHANGE_INSERT = "insert";
+
+    /**
+     * {@link #PARAM_CHANGE} value for a row that was updated
+     */
+    public static final String CHANGE_UPDATE = "update";
+
+    /**
+     * {@link #PARAM_CHANGE} value for a row that was deleted
+     */
+    public static final String CHANGE_DELETE = "delete";
+
+    /**
+     * Name of the provider method that sells units of a veggie. Pass it to
+     * {@link ContentResolver#call(Uri, String, String, android.os.Bundle)} together with
+     * {@link VeggieEntry#CONTENT_URI} and an extras Bundle holding {@link VeggieEntry#_ID} and
+     * {@link #EXTRA_UNITS}. The quantity is decremented atomically in SQL, and only if enough
+     * stock is left.
+     */
+    public static final String METHOD_SELL = "sell";
+
+    /**
+     * Extras key for the number of units to sell (int). Defaults to 1 when missing.
+     */
+    public static final String EXTRA_UNITS = "units";
+
+    /**
+     * Result key holding whether the sale went through (boolean).
+     */
+    public static final String EXTRA_SOLD = "sold";
+
+    /**
+     * Result key holding the stock level after the call (int). If the sale did not go through
+     * this is the unchanged stock level, or -1 if the veggie does not exist.
+     */
+    public static final String EXTRA_QUANTITY = "quantity";
+
+    /**
+     * Name of the provider method that moves units of a veggie from one location to another.
+     * Pass it to {@link ContentResolver#call(Uri, String, String, android.os.Bundle)} together
+     * with {@link VeggieEntry#CONTENT_URI} and an extras Bundle holding {@link VeggieEntry#_ID},
+     * {@link #EXTRA_FROM_LOCATION_ID}, {@link #EXTRA_TO_LOCATION_ID} and {@link #EXTRA_UNITS}.
+     * Both stock levels change in one transaction, and only if the source holds enough units.
+     * The result holds {@link #EXTRA_TRANSFERRED}.
+     */
+    public static final String METHOD_TRANSFER = "transfer";
+
+    /**
+     * Extras key for the {@link LocationEntry#_ID} the units leave from (long)
+     */
+    public static final String EXTRA_FROM_LOCATION_ID = "from_location_id";
+
+    /**
+     * Extras key for the {@link LocationEntry#_ID} the units go to (long)
+     */
+    public static final String EXTRA_TO_LOCATION_ID = "to_location_id";
+
+    /**
+     * Result key holding whether the transfer went through (boolean).
+     */
+    public static final String EXTRA_TRANSFERRED = "transferred";
+
+    /**
+     * Name of the provider method that adds up the stock in SQL. The result holds
+     * {@link #EXTRA_TOTAL_VALUE}, {@link #EXTRA_TOTAL_QUANTITY} and {@link #EXTRA_VEGGIE_COUNT}.
+     */
+    public static final String METHOD_INVENTORY_TOTALS = "inventory_totals";
+
+    /**
+     * Result key for the value of all stock, the sum of price times quantity, in cents (long)
+     */
+    public static final String EXTRA_TOTAL_VALUE = "total_value";
+
+    /**
+     * Result key for the number of units in stock over all veggies (long)
+     */
+    public static final String EXTRA_TOTAL_QUANTITY = "total_quantity";
+
+    /**
+     * Result key for the number of veggies (int)
+     */
+    public static final String EXTRA_VEGGIE_COUNT = "veggie_count";
+
     /**
      * Inner class that defines constant values for the vegetables database table.
      * Each entry in the table represents a single vegetable.
@@ -47,6 +406,24 @@ public final class VeggieContract {
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_VEGGIES);
 
+        /**
+         * The content URI to search veggies by name and supplier. Append the search terms with
+         * {@link Uri.Builder#appendPath(String)}; every term is matched as a word prefix.
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * The content URI for the veggies that are low on stock, lowest quantity first.
+         * Optionally append {@link #PARAM_THRESHOLD}.
+         */
+        public static final Uri CONTENT_LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * The content URI to look a veggie up by its {@link #COLUMN_VEGGIE_SKU}. Append the SKU
+         * with {@link Uri.Builder#appendPath(String)}; the result holds at most one row.
+         */
+        public static final Uri CONTENT_SKU_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SKU);
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of veggies.
          */
@@ -79,33 +456,437 @@ public final class VeggieContract {
         public final static String COLUMN_VEGGIE_NAME = "name";
 
         /**
-         * Price of the vegetable.
+         * Price of the vegetable, in cents. Kept as a whole number so prices add up exactly.
          * <p>
          * Type: INTEGER
          */
         public final static String COLUMN_VEGGIE_PRICE = "price";
 
         /**
-         * Quantity of the vegetable.
+         * Quantity of the vegetable on hand, over all locations. Kept equal to the sum of its
+         * {@link StockLevelEntry stock levels} by every write, so the catalog reads it from
+         * one row instead of adding the levels up.
          * <p>
          * Type: INTEGER
          */
         public final static String COLUMN_VEGGIE_QUANTITY = "quantity";
 
         /**
-         * Name of supplier
+         * ID of the supplier of the vegetable, in {@link SupplierEntry}.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_VEGGIE_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Name of supplier. Stored once per supplier in {@link SupplierEntry} and joined in by
+         * the provider, so queries can still read, filter and sort on it like a column of this
+         * table. Writing it together with {@link #COLUMN_VEGGIE_SUPPLIER_PHONE} moves the veggie
+         * to the supplier with that name and phone, which is created if needed.
          * <p>
          * Type: STRING
          */
         public final static String COLUMN_VEGGIE_SUPPLIER_NAME = "supplierName";
 
         /**
-         * Phone of supplier
+         * Phone of supplier. Joined in from {@link SupplierEntry} like
+         * {@link #COLUMN_VEGGIE_SUPPLIER_NAME}.
          * <p>
          * Type: STRING
          */
         public final static String COLUMN_VEGGIE_SUPPLIER_PHONE = "supplierPhone";
 
+        /**
+         * Stock keeping unit of the vegetable, the code on its barcode. Optional, but no two
+         * vegetables can have the same one.
+         * <p>
+         * Type: TEXT
+         */
+        public final static String COLUMN_VEGGIE_SKU = "sku";
+
+        /**
+         * Columns of the list profile: what a row of the catalog shows. They all live in the
+         * veggies table, so a list query needs no join and packs the most rows into each
+         * CursorWindow. See {@link #PROFILE_LIST}.
+         */
+        public static final String[] LIST_PROJECTION = {
+                _ID,
+                COLUMN_VEGGIE_NAME,
+                COLUMN_VEGGIE_PRICE,
+                COLUMN_VEGGIE_QUANTITY};
+
+        /**
+         * Columns of the detail profile: everything the editor shows for a single veggie,
+         * including the supplier columns that the list leaves out.
+         */
+        public static final String[] DETAIL_PROJECTION = {
+                _ID,
+                COLUMN_VEGGIE_NAME,
+                COLUMN_VEGGIE_PRICE,
+                COLUMN_VEGGIE_QUANTITY,
+                COLUMN_VEGGIE_SUPPLIER_NAME,
+                COLUMN_VEGGIE_SUPPLIER_PHONE,
+                COLUMN_VEGGIE_SKU};
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table.
+     * Each entry in the table represents one supplier, shared by all the vegetables it supplies.
+     * <p>
+     * A supplier with the same name and phone is only stored once; inserting it again returns
+     * the existing row. A supplier cannot be deleted while vegetables refer to it.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the suppliers in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Name of database table for suppliers
+         */
+        public final static String TABLE_NAME = "suppliers";
+
+        /**
+         * Unique ID number for the supplier (only for use in the database table).
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the supplier. Named like {@link VeggieEntry#COLUMN_VEGGIE_SUPPLIER_NAME}, so
+         * joined veggie rows keep their flat columns.
+         * <p>
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_NAME = "supplierName";
+
+        /**
+         * Phone of the supplier. Named like {@link VeggieEntry#COLUMN_VEGGIE_SUPPLIER_PHONE}.
+         * <p>
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_PHONE = "supplierPhone";
+    }
+
+    /**
+     * Inner class that defines constant values for the locations database table.
+     * Each entry is one place stock is kept in, such as the back room or a shop floor.
+     * <p>
+     * Changes to a quantity that don't name a location, such as sales, deliveries and edits,
+     * go to the {@link #DEFAULT_LOCATION_ID default location} when they add stock, and take it
+     * from the default location first and then from the others in {@link #_ID} order.
+     */
+    public static final class LocationEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the locations in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LOCATIONS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of locations.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATIONS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single location.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATIONS;
+
+        /**
+         * Name of database table for locations
+         */
+        public final static String TABLE_NAME = "locations";
+
+        /**
+         * {@link #_ID} of the location that stock without a location belongs to. It always
+         * exists.
+         */
+        public static final long DEFAULT_LOCATION_ID = 1;
+
+        /**
+         * Unique ID number for the location (only for use in the database table).
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the location. No two locations can have the same one.
+         * <p>
+         * Type: TEXT
+         */
+        public final static String COLUMN_LOCATION_NAME = "location_name";
+    }
+
+    /**
+     * Inner class that defines constant values for the stock levels database table.
+     * Each entry is the quantity of one vegetable at one location; a location without an
+     * entry holds none of it. Levels change with every change to
+     * {@link VeggieEntry#COLUMN_VEGGIE_QUANTITY}, and between locations through
+     * {@link #METHOD_TRANSFER}. They can't be written directly.
+     * <p>
+     * The stock of one veggie at every location, including those that hold none, is at
+     * veggies/#/stock_levels. Its rows have the {@link #COLUMN_LOCATION_ID} as {@link #_ID},
+     * together with {@link LocationEntry#COLUMN_LOCATION_NAME} and {@link #COLUMN_QUANTITY}.
+     */
+    public static final class StockLevelEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the stock levels in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STOCK_LEVELS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of stock levels.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK_LEVELS;
+
+        /**
+         * Name of database table for stock levels
+         */
+        public final static String TABLE_NAME = "stock_levels";
+
+        /**
+         * Unique ID number for the stock level (only for use in the database table).
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the vegetable.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_VEGGIE_ID = "veggie_id";
+
+        /**
+         * ID of the location, in {@link LocationEntry}.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_LOCATION_ID = "location_id";
+
+        /**
+         * Units of the vegetable at the location, 0 or more.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_QUANTITY = "quantity";
+    }
+
+    /**
+     * Inner class that defines the columns of the single row returned by
+     * {@link VeggieStatsEntry#CONTENT_URI}. The figures are computed in SQLite over the whole
+     * veggies table, so reading them costs one row however large the stock is.
+     */
+    public static final class VeggieStatsEntry {
+
+        private VeggieStatsEntry() {
+        }
+
+        /**
+         * The content URI for the stock figures. Optionally append {@link #PARAM_THRESHOLD} to
+         * choose the reorder level for {@link #COLUMN_LOW_STOCK_COUNT}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(VeggieEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}, which always holds a single row.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /**
+         * Value of all stock, the sum of price times quantity, in cents.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TOTAL_VALUE = "total_value";
+
+        /**
+         * Number of units in stock over all veggies.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TOTAL_QUANTITY = "total_quantity";
+
+        /**
+         * Number of veggies.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_VEGGIE_COUNT = "veggie_count";
+
+        /**
+         * Number of veggies whose quantity is below the reorder level.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+    }
+
+    /**
+     * Inner class that defines constant values for the stock movements database table.
+     * Each entry is one change to the stock of a vegetable. Entries are only ever appended;
+     * the current quantity is kept up to date in {@link VeggieEntry#COLUMN_VEGGIE_QUANTITY}.
+     * <p>
+     * The history of a vegetable does not outlive it: deleting a vegetable deletes its
+     * movements and snapshots with it, so the ledger of every vegetable that is left still
+     * adds up to its quantity.
+     * <p>
+     * Insert rows through {@link #CONTENT_URI} (bulkInsert for batches) to receive or adjust
+     * stock. Sales made through {@link #METHOD_SELL} and quantity changes made through
+     * {@link VeggieEntry#CONTENT_URI} are recorded automatically.
+     */
+    public static final class StockMovementEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the stock movements in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STOCK_MOVEMENTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of stock movements.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK_MOVEMENTS;
+
+        /**
+         * Name of database table for stock movements
+         */
+        public final static String TABLE_NAME = "stock_movements";
+
+        /**
+         * Unique ID number for the movement (only for use in the database table).
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the vegetable whose stock changed.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_VEGGIE_ID = "veggie_id";
+
+        /**
+         * Change in quantity; negative for stock leaving.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_DELTA = "delta";
+
+        /**
+         * Why the stock changed, one of {@link #REASON_SALE}, {@link #REASON_RECEIVE} or
+         * {@link #REASON_ADJUST}.
+         * <p>
+         * Type: TEXT
+         */
+        public final static String COLUMN_REASON = "reason";
+
+        /**
+         * When the stock changed, in milliseconds since the epoch. Filled in by the provider
+         * if missing.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TIMESTAMP = "timestamp";
+
+        /**
+         * Stock sold to a customer
+         */
+        public final static String REASON_SALE = "sale";
+
+        /**
+         * Stock received from a supplier
+         */
+        public final static String REASON_RECEIVE = "receive";
+
+        /**
+         * Stock corrected by hand, for example in the editor
+         */
+        public final static String REASON_ADJUST = "adjust";
+    }
+
+    /**
+     * Inner class that defines constant values for the stock snapshots database table.
+     * Each entry sums up the stock movements of one vegetable on one day, once those movements
+     * are older than the retention period and have been compacted away. Like the movements,
+     * the snapshots of a vegetable are deleted with it.
+     */
+    public static final class StockSnapshotEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the stock snapshots in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STOCK_SNAPSHOTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of stock snapshots.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK_SNAPSHOTS;
+
+        /**
+         * Name of database table for stock snapshots
+         */
+        public final static String TABLE_NAME = "stock_snapshots";
+
+        /**
+         * Unique ID number for the snapshot (only for use in the database table).
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the vegetable.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_VEGGIE_ID = "veggie_id";
+
+        /**
+         * Day the movements happened on, in days since the epoch (UTC).
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_DAY = "day";
+
+        /**
+         * Sum of the deltas of that day's movements.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_DELTA = "delta";
+
+        /**
+         * Number of movements folded into this snapshot.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_MOVEMENT_COUNT = "movement_count";
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,233 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports and exports the veggies table as CSV through the {@link VeggieProvider}. Both
+ * directions stream: the importer holds one batch of rows at a time and the exporter one page,
+ * so the size of the file does not matter. Neither may be called on the main thread.
+ * <p>
+ * The first record of the file names the columns, using the column names of
+ * {@link VeggieEntry}, and prices are whole cents as stored. The importer ignores the
+ * {@link VeggieEntry#_ID} column and any column it does not know, so an exported file can be
+ * imported again as new rows. The {@link VeggieEntry#COLUMN_VEGGIE_SKU} column may be left out
+ * of an imported file, and a blank SKU is imported as no SKU at all, as the editor does.
+ */
+public final class VeggieCsv {
+
+    /**
+     * Receives the progress of an import or export.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after every committed batch of an import, or every page written by an export,
+         * with the total number of rows transferred so far.
+         */
+        void onProgress(int rows);
+    }
+
+    /**
+     * Columns written by {@link #exportCsv}, in order
+     */
+    static final String[] EXPORT_COLUMNS = {
+            VeggieEntry._ID,
+            VeggieEntry.COLUMN_VEGGIE_NAME,
+            VeggieEntry.COLUMN_VEGGIE_PRICE,
+            VeggieEntry.COLUMN_VEGGIE_QUANTITY,
+            VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME,
+            VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE,
+            VeggieEntry.COLUMN_VEGGIE_SKU};
+
+    /**
+     * Columns read by {@link #importCsv}. All but the SKU must be in the file
+     */
+    private static final String[] IMPORT_COLUMNS = {
+            VeggieEntry.COLUMN_VEGGIE_NAME,
+            VeggieEntry.COLUMN_VEGGIE_PRICE,
+            VeggieEntry.COLUMN_VEGGIE_QUANTITY,
+            VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME,
+            VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE,
+            VeggieEntry.COLUMN_VEGGIE_SKU};
+
+    /**
+     * Number of rows inserted per transaction by {@link #importCsv}
+     */
+    static final int IMPORT_BATCH_SIZE = 500;
+
+    /**
+     * Number of rows read per query by {@link #exportCsv}
+     */
+    static final int EXPORT_PAGE_SIZE = 1000;
+
+    /**
+     * Size of the character buffers in front of the streams
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private VeggieCsv() {
+    }
+
+    /**
+     * Insert every record of the CSV stream as a new veggie. Rows are validated by the provider
+     * with the same rules as a single insert and committed in batches of
+     * {@link #IMPORT_BATCH_SIZE}, one transaction each. An invalid row throws an
+     * {@link IllegalArgumentException} naming its lines; the batches before it stay committed.
+     * The stream is not closed. Return the number of rows imported.
+     */
+    public static int importCsv(ContentResolver resolver, InputStream in,
+                                ProgressListener listener) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE));
+        List<String> fields = new ArrayList<>();
+        if (!reader.readRecord(fields)) {
+            return 0;
+        }
+
+        // Find where each column we need is in the file
+        int[] columnIndexes = new int[IMPORT_COLUMNS.length];
+        for (int i = 0; i < IMPORT_COLUMNS.length; i++) {
+            columnIndexes[i] = fields.indexOf(IMPORT_COLUMNS[i]);
+            if (columnIndexes[i] < 0 && !IMPORT_COLUMNS[i].equals(VeggieEntry.COLUMN_VEGGIE_SKU)) {
+                throw new IllegalArgumentException("CSV is missing the column " + IMPORT_COLUMNS[i]);
+            }
+        }
+
+        ContentValues[] batch = new ContentValues[IMPORT_BATCH_SIZE];
+        int batchSize = 0;
+        int batchFirstLine = reader.getLineNumber();
+        int rowsImported = 0;
+        while (true) {
+            int line = reader.getLineNumber();
+            if (!reader.readRecord(fields)) {
+                break;
+            }
+            // Skip blank lines
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+            if (batchSize == 0) {
+                batchFirstLine = line;
+            }
+
+            ContentValues values = new ContentValues(IMPORT_COLUMNS.length);
+            for (int i = 0; i < IMPORT_COLUMNS.length; i++) {
+                if (columnIndexes[i] < 0) {
+                    continue;
+                }
+                if (columnIndexes[i] >= fields.size()) {
+                    throw new IllegalArgumentException("Line " + line + " has too few fields");
+                }
+                String field = fields.get(columnIndexes[i]).trim();
+                if (field.isEmpty() && IMPORT_COLUMNS[i].equals(VeggieEntry.COLUMN_VEGGIE_SKU)) {
+                    // A veggie without a code has a NULL SKU, which the UNIQUE index allows
+                    // any number of times
+                    values.putNull(IMPORT_COLUMNS[i]);
+                } else {
+                    values.put(IMPORT_COLUMNS[i], field);
+                }
+            }
+            batch[batchSize++] = values;
+
+            if (batchSize == batch.length) {
+                rowsImported += insertBatch(resolver, batch, batchFirstLine, line);
+                batchSize = 0;
+                if (listener != null) {
+                    listener.onProgress(rowsImported);
+                }
+            }
+        }
+        if (batchSize > 0) {
+            ContentValues[] last = new ContentValues[batchSize];
+            System.arraycopy(batch, 0, last, 0, batchSize);
+            rowsImported += insertBatch(resolver, last, batchFirstLine, reader.getLineNumber() - 1);
+            if (listener != null) {
+                listener.onProgress(rowsImported);
+            }
+        }
+        return rowsImported;
+    }
+
+    /**
+     * Insert one batch in one transaction, naming its lines if the provider rejects a row.
+     */
+    private static int insertBatch(ContentResolver resolver, ContentValues[] batch,
+                                   int firstLine, int lastLine) {
+        try {
+            return resolver.bulkInsert(VeggieEntry.CONTENT_URI, batch);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid veggie on lines " + firstLine + "-"
+                    + lastLine + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write every veggie to the stream as CSV, in _ID order. The table is read in pages of
+     * {@link #EXPORT_PAGE_SIZE} rows with keyset paging, so neither the rows nor the file are
+     * ever held in memory as a whole. The listener, if any, hears about every page. The stream
+     * is flushed but not closed. Return the number of rows exported.
+     */
+    public static int exportCsv(ContentResolver resolver, OutputStream out,
+                                ProgressListener listener, CancellationSignal cancellationSignal)
+            throws IOException {
+        CsvWriter writer = new CsvWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+        for (String column : EXPORT_COLUMNS) {
+            writer.writeField(column);
+        }
+        writer.endRecord();
+
+        int rowsExported = 0;
+        long lastId = -1;
+        while (true) {
+            Uri.Builder page = VeggieEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(VeggieContract.PARAM_LIMIT, String.valueOf(EXPORT_PAGE_SIZE));
+            if (lastId >= 0) {
+                page.appendQueryParameter(VeggieContract.PARAM_AFTER_ID, String.valueOf(lastId));
+            }
+            Cursor cursor = resolver.query(page.build(), EXPORT_COLUMNS, null, null,
+                    VeggieEntry._ID, cancellationSignal);
+            if (cursor == null) {
+                break;
+            }
+            int rowsInPage = 0;
+            try {
+                while (cursor.moveToNext()) {
+                    for (int i = 0; i < EXPORT_COLUMNS.length; i++) {
+                        writer.writeField(cursor.getString(i));
+                    }
+                    writer.endRecord();
+                    lastId = cursor.getLong(0);
+                    rowsInPage++;
+                }
+            } finally {
+                cursor.close();
+            }
+            rowsExported += rowsInPage;
+            if (rowsInPage > 0 && listener != null) {
+                listener.onProgress(rowsExported);
+            }
+            if (rowsInPage < EXPORT_PAGE_SIZE) {
+                break;
+            }
+        }
+        writer.flush();
+        return rowsExported;
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.android.inventory2.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.inventory2.data.VeggieContract.LocationEntry;
+import com.example.android.inventory2.data.VeggieContract.StockLevelEntry;
+import com.example.android.inventory2.data.VeggieContract.StockMovementEntry;
+import com.example.android.inventory2.data.VeggieContract.StockSnapshotEntry;
+import com.example.android.inventory2.data.VeggieContract.SupplierEntry;
 import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
 
 /**
@@ -19,9 +25,143 @@ public class VeggieDbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "veggies.db";
 
     /**
-     * Database version. If you change the database schema, you must increment the database version.
+     * Database version. If you change the database schema, you must increment the database version
+     * and add the matching step to {@link #onUpgrade}.
+     * <p>
+     * Version 1: veggies table.
+     * Version 2: indexes on name (case-insensitive), supplierName and quantity.
+     * Version 3: full-text search table over name and supplierName, kept in sync by triggers.
+     * Version 4: stock movement ledger and its daily snapshots.
+     * Version 5: price stored as INTEGER cents instead of REAL.
+     * Version 6: suppliers table; veggies refer to their supplier instead of repeating it.
+     * Version 7: indexes on supplier_id plus name or quantity, for the sorted catalog of one
+     * supplier.
+     * Version 8: sku column with a unique index, for looking veggies up by barcode.
+     * Version 9: locations and the stock level of each veggie at each location.
+     * Version 10: full-text update triggers that only fire when an indexed column changes.
+     * <p>
+     * Steps that rebuild the veggies table must drop {@link #VIEW_VEGGIES_FTS_CONTENT} first and
+     * create it again afterwards, since newer SQLite versions refuse to rename a table while a
+     * view refers to a missing one.
      */
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 10;
+
+    /**
+     * Name of the case-insensitive index on {@link VeggieEntry#COLUMN_VEGGIE_NAME}
+     */
+    static final String INDEX_VEGGIE_NAME = "veggies_name_idx";
+
+    /**
+     * Name of the index on {@link VeggieEntry#COLUMN_VEGGIE_SUPPLIER_NAME}. Only exists up to
+     * version 5; suppliers are looked up by name through the unique key of
+     * {@link SupplierEntry#TABLE_NAME} since.
+     */
+    static final String INDEX_VEGGIE_SUPPLIER_NAME = "veggies_supplier_name_idx";
+
+    /**
+     * Name of the index on {@link VeggieEntry#COLUMN_VEGGIE_QUANTITY}
+     */
+    static final String INDEX_VEGGIE_QUANTITY = "veggies_quantity_idx";
+
+    /**
+     * Name of the index on {@link VeggieEntry#COLUMN_VEGGIE_SUPPLIER_ID}, used to join a
+     * supplier to its veggies
+     */
+    static final String INDEX_VEGGIE_SUPPLIER = "veggies_supplier_idx";
+
+    /**
+     * Name of the index on {@link VeggieEntry#COLUMN_VEGGIE_SUPPLIER_ID} and
+     * {@link VeggieEntry#COLUMN_VEGGIE_NAME} (case-insensitive), which returns the veggies of one
+     * supplier in name order
+     */
+    static final String INDEX_VEGGIE_SUPPLIER_BY_NAME = "veggies_supplier_by_name_idx";
+
+    /**
+     * Name of the index on {@link VeggieEntry#COLUMN_VEGGIE_SUPPLIER_ID} and
+     * {@link VeggieEntry#COLUMN_VEGGIE_QUANTITY}, which returns the veggies of one supplier
+     * lowest stock first
+     */
+    static final String INDEX_VEGGIE_SUPPLIER_BY_QUANTITY = "veggies_supplier_by_quantity_idx";
+
+    /**
+     * Name of the unique index on {@link VeggieEntry#COLUMN_VEGGIE_SKU}. Veggies without a SKU
+     * hold NULL, which the index lets any number of rows share.
+     */
+    static final String INDEX_VEGGIE_SKU = "veggies_sku_idx";
+
+    /**
+     * Name of the index on the location_id and veggie_id of {@link StockLevelEntry}, used to
+     * read what one location holds. Levels of one veggie are found through the unique key.
+     */
+    static final String INDEX_STOCK_LEVEL_LOCATION = "stock_levels_location_idx";
+
+    /**
+     * Names of the locations a new database starts with. The first one is the
+     * {@link LocationEntry#DEFAULT_LOCATION_ID default location}.
+     */
+    static final String[] INITIAL_LOCATIONS = {
+            "Back Room", "Cooler", "Shop Floor 1", "Shop Floor 2"};
+
+    /**
+     * Name of the FTS4 table that indexes the name and supplierName of every veggie. It is an
+     * external content table: it stores only the full-text index, and its docid is the _id of
+     * the matching veggies row.
+     */
+    static final String TABLE_VEGGIES_FTS = "veggies_fts";
+
+    /**
+     * Name of the view the full-text search table reads its content from since version 6. It
+     * joins every veggie to the name of its supplier, keyed by the rowid FTS4 asks for.
+     */
+    static final String VIEW_VEGGIES_FTS_CONTENT = "veggies_fts_content";
+
+    /**
+     * Name of the index on the veggie_id and timestamp of {@link StockMovementEntry}, used to
+     * read the history of one veggie in order
+     */
+    static final String INDEX_STOCK_MOVEMENT_VEGGIE = "stock_movements_veggie_idx";
+
+    /**
+     * Name of the index on the timestamp of {@link StockMovementEntry}, used by compaction to
+     * find the movements older than the retention period
+     */
+    static final String INDEX_STOCK_MOVEMENT_TIMESTAMP = "stock_movements_timestamp_idx";
+
+    /**
+     * PRAGMA synchronous level that only syncs at WAL checkpoints. Safe against corruption in WAL
+     * mode; a power loss can only roll back the most recent commits.
+     */
+    public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+
+    /**
+     * PRAGMA synchronous level that syncs on every commit.
+     */
+    public static final String SYNCHRONOUS_FULL = "FULL";
+
+    /**
+     * Default page cache size, in KiB
+     */
+    private static final int DEFAULT_CACHE_SIZE_KB = 2048;
+
+    /**
+     * Default size of the memory-mapped I/O region, in bytes
+     */
+    private static final long DEFAULT_MMAP_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * PRAGMA synchronous level applied in {@link #onConfigure}
+     */
+    private String mSynchronous = SYNCHRONOUS_NORMAL;
+
+    /**
+     * Page cache size in KiB applied in {@link #onConfigure}
+     */
+    private int mCacheSizeKb = DEFAULT_CACHE_SIZE_KB;
+
+    /**
+     * Memory-mapped I/O size in bytes applied in {@link #onConfigure}. 0 turns mmap off.
+     */
+    private long mMmapSize = DEFAULT_MMAP_SIZE;
 
     /**
      * Constructs a new instance of {@link VeggieDbHelper}.
@@ -29,11 +169,112 @@ public class VeggieDbHelper extends SQLiteOpenHelper {
      * @param context of the app
      */
     public VeggieDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, DATABASE_VERSION);
+    }
+
+    /**
+     * Constructs a new instance of {@link VeggieDbHelper} for the given database file and
+     * version. Used by tests to open databases at older schema versions.
+     *
+     * @param context of the app
+     * @param name    of the database file
+     * @param version of the schema to open
+     */
+    VeggieDbHelper(Context context, String name, int version) {
+        super(context, name, null, version);
+
+        // Write-ahead logging lets the catalog loader keep reading while a sale is being written.
+        // Call setWriteAheadLoggingEnabled(false) before opening the database to turn it off.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Set the PRAGMA synchronous level, for example {@link #SYNCHRONOUS_NORMAL} or
+     * {@link #SYNCHRONOUS_FULL}. Takes effect on the writing connection the next time the
+     * database is opened; see {@link #onConfigure}.
+     */
+    public void setSynchronousMode(String synchronous) {
+        if (!SYNCHRONOUS_NORMAL.equals(synchronous) && !SYNCHRONOUS_FULL.equals(synchronous)) {
+            throw new IllegalArgumentException("Unsupported synchronous mode " + synchronous);
+        }
+        mSynchronous = synchronous;
+    }
+
+    /**
+     * Set the page cache size in KiB. Takes effect on the writing connection the next time the
+     * database is opened; see {@link #onConfigure}.
+     */
+    public void setCacheSizeKb(int cacheSizeKb) {
+        if (cacheSizeKb <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        mCacheSizeKb = cacheSizeKb;
+    }
+
+    /**
+     * Set the memory-mapped I/O size in bytes, or 0 to turn it off. Takes effect on the writing
+     * connection the next time the database is opened; see {@link #onConfigure}.
+     */
+    public void setMmapSize(long mmapSize) {
+        if (mmapSize < 0) {
+            throw new IllegalArgumentException("Mmap size cannot be negative");
+        }
+        mMmapSize = mmapSize;
+    }
+
+    /**
+     * This is called when the database connection is being configured, before the schema is
+     * created or upgraded.
+     * <p>
+     * The synchronous level, page cache size and mmap size are settings of one connection, and
+     * up to API 27 the framework has no hook that runs on every connection of the pool
+     * (OpenParams only learns the synchronous and journal modes in API 28, and never the cache
+     * or mmap size). SQLite applies these PRAGMAs while compiling them, and the framework
+     * compiles every statement that isn't a SELECT on the primary connection, so they always
+     * reach the connection that runs every write and checkpoint, which is the only one the
+     * synchronous level matters for. The read connections that write-ahead logging opens
+     * later keep the framework's WAL synchronous mode and SQLite's default cache and mmap
+     * sizes.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        execPragma(db, "PRAGMA synchronous = " + mSynchronous);
+        // A negative cache_size is read by SQLite as KiB instead of pages
+        execPragma(db, "PRAGMA cache_size = -" + mCacheSizeKb);
+        execPragma(db, "PRAGMA mmap_size = " + mMmapSize);
+    }
+
+    /**
+     * This is called once the database is open and any upgrade has been committed. Foreign keys
+     * are only turned on here, since they cannot be switched inside the upgrade transaction and
+     * the rebuild of the veggies table in version 5 must not cascade into the ledger.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            // Ledger rows reference their veggie and go away with it
+            db.setForeignKeyConstraintsEnabled(true);
+        }
     }
 
     /**
-     * This is called when the database is created for the first time.
+     * Run a PRAGMA through rawQuery, since some PRAGMAs return a row and execSQL refuses those.
+     */
+    private static void execPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * This is called when the database is created for the first time. The version 1 table is
+     * created and then brought up to date by the same steps {@link #onUpgrade} runs, so a new
+     * database and a migrated one always end up with the same schema.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -48,13 +289,403 @@ public class VeggieDbHelper extends SQLiteOpenHelper {
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_VEGGIES_TABLE);
+
+        // Apply every later schema version on top of version 1
+        onUpgrade(db, 1, DATABASE_VERSION);
     }
 
     /**
-     * This is called when the database needs to be upgraded.
+     * This is called when the database needs to be upgraded. Each step moves the schema up by
+     * one version and keeps the existing rows. SQLiteOpenHelper runs this inside a transaction.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        if (oldVersion < 2) {
+            upgradeToVersion2(db);
+        }
+        if (oldVersion < 3) {
+            upgradeToVersion3(db);
+        }
+        if (oldVersion < 4) {
+            upgradeToVersion4(db);
+        }
+        if (oldVersion < 5) {
+            upgradeToVersion5(db);
+        }
+        if (oldVersion < 6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < 8) {
+            upgradeToVersion8(db);
+        }
+        if (oldVersion < 9) {
+            upgradeToVersion9(db);
+        }
+        if (oldVersion < 10) {
+            upgradeToVersion10(db);
+        }
+    }
+
+    /**
+     * Version 2: add indexes for searching by name, filtering by supplier and scanning for
+     * low stock.
+     */
+    private void upgradeToVersion2(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_VEGGIE_NAME + " ON "
+                + VeggieEntry.TABLE_NAME + " (" + VeggieEntry.COLUMN_VEGGIE_NAME + " COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_VEGGIE_SUPPLIER_NAME + " ON "
+                + VeggieEntry.TABLE_NAME + " (" + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_VEGGIE_QUANTITY + " ON "
+                + VeggieEntry.TABLE_NAME + " (" + VeggieEntry.COLUMN_VEGGIE_QUANTITY + ");");
+    }
+
+    /**
+     * Version 3: add the full-text search table, the triggers that keep it in step with the
+     * veggies table, and index the rows that already exist.
+     */
+    private void upgradeToVersion3(SQLiteDatabase db) {
+        // prefix="2,3" keeps extra indexes for short prefixes, so search-as-you-type queries
+        // such as "ca*" do not have to walk every term that starts with "ca".
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_VEGGIES_FTS + " USING fts4("
+                + "content=\"" + VeggieEntry.TABLE_NAME + "\", "
+                + VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ", "
+                + "prefix=\"2,3\");");
+
+        createFtsTriggers(db);
+
+        // Index the rows that were there before the upgrade
+        db.execSQL("INSERT INTO " + TABLE_VEGGIES_FTS + "(" + TABLE_VEGGIES_FTS + ") VALUES('rebuild');");
+    }
+
+    /**
+     * Create the triggers that keep the full-text search table in step with the veggies table,
+     * for versions 3 to 5, in which the veggies table holds the supplier name itself.
+     */
+    private static void createFtsTriggers(SQLiteDatabase db) {
+        String ftsColumns = "(docid, " + VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ")";
+        String newValues = "VALUES (new." + VeggieEntry._ID + ", new." + VeggieEntry.COLUMN_VEGGIE_NAME
+                + ", new." + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ")";
+        String deleteOld = "DELETE FROM " + TABLE_VEGGIES_FTS + " WHERE docid = old." + VeggieEntry._ID + ";";
+
+        String indexedColumns = VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME;
+
+        // An external content table must see the old values removed before the row changes,
+        // and the new values added after. Updates only re-index when an indexed column is
+        // set, so sales and other quantity writes don't touch the full-text index.
+        db.execSQL("CREATE TRIGGER veggies_fts_before_update BEFORE UPDATE OF " + indexedColumns
+                + " ON " + VeggieEntry.TABLE_NAME + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER veggies_fts_before_delete BEFORE DELETE ON "
+                + VeggieEntry.TABLE_NAME + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER veggies_fts_after_update AFTER UPDATE OF " + indexedColumns
+                + " ON " + VeggieEntry.TABLE_NAME + " BEGIN INSERT INTO " + TABLE_VEGGIES_FTS
+                + ftsColumns + " " + newValues + "; END;");
+        db.execSQL("CREATE TRIGGER veggies_fts_after_insert AFTER INSERT ON "
+                + VeggieEntry.TABLE_NAME + " BEGIN INSERT INTO " + TABLE_VEGGIES_FTS
+                + ftsColumns + " " + newValues + "; END;");
+    }
+
+    /**
+     * Version 4: add the stock movement ledger and the daily snapshots that old movements are
+     * compacted into. The quantity of every existing veggie is recorded as its opening movement,
+     * so the ledger of each veggie adds up to its quantity from the start.
+     */
+    private void upgradeToVersion4(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockMovementEntry.COLUMN_VEGGIE_ID + " INTEGER NOT NULL REFERENCES "
+                + VeggieEntry.TABLE_NAME + "(" + VeggieEntry._ID + ") ON DELETE CASCADE, "
+                + StockMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_REASON + " TEXT NOT NULL, "
+                + StockMovementEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_MOVEMENT_VEGGIE + " ON "
+                + StockMovementEntry.TABLE_NAME + " (" + StockMovementEntry.COLUMN_VEGGIE_ID + ", "
+                + StockMovementEntry.COLUMN_TIMESTAMP + ");");
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_MOVEMENT_TIMESTAMP + " ON "
+                + StockMovementEntry.TABLE_NAME + " (" + StockMovementEntry.COLUMN_TIMESTAMP + ");");
+
+        // One row per veggie and day; compaction merges into an existing row with REPLACE
+        db.execSQL("CREATE TABLE " + StockSnapshotEntry.TABLE_NAME + " ("
+                + StockSnapshotEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockSnapshotEntry.COLUMN_VEGGIE_ID + " INTEGER NOT NULL REFERENCES "
+                + VeggieEntry.TABLE_NAME + "(" + VeggieEntry._ID + ") ON DELETE CASCADE, "
+                + StockSnapshotEntry.COLUMN_DAY + " INTEGER NOT NULL, "
+                + StockSnapshotEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                + StockSnapshotEntry.COLUMN_MOVEMENT_COUNT + " INTEGER NOT NULL, "
+                + "UNIQUE (" + StockSnapshotEntry.COLUMN_VEGGIE_ID + ", "
+                + StockSnapshotEntry.COLUMN_DAY + "));");
+
+        // Record the stock that is already there
+        db.execSQL("INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry.COLUMN_VEGGIE_ID + ", "
+                + StockMovementEntry.COLUMN_DELTA + ", "
+                + StockMovementEntry.COLUMN_REASON + ", "
+                + StockMovementEntry.COLUMN_TIMESTAMP + ") SELECT "
+                + VeggieEntry._ID + ", " + VeggieEntry.COLUMN_VEGGIE_QUANTITY + ", ?, ? FROM "
+                + VeggieEntry.TABLE_NAME + " WHERE " + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " != 0;",
+                new Object[]{StockMovementEntry.REASON_ADJUST, System.currentTimeMillis()});
+    }
+
+    /**
+     * Version 5: store the price as a whole number of cents. SQLite cannot change the type of a
+     * column, so the veggies table is rebuilt: the rows are copied into a new table with the
+     * price converted, and it replaces the old table. The indexes and triggers went with the old
+     * table and are created again.
+     */
+    private void upgradeToVersion5(SQLiteDatabase db) {
+        String newTable = VeggieEntry.TABLE_NAME + "_v5";
+        db.execSQL("CREATE TABLE " + newTable + " ("
+                + VeggieEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + VeggieEntry.COLUMN_VEGGIE_NAME + " TEXT NOT NULL, "
+                + VeggieEntry.COLUMN_VEGGIE_PRICE + " INTEGER NOT NULL, "
+                + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " INTEGER NOT NULL, "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + " TEXT NOT NULL, "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE + " TEXT NOT NULL);");
+
+        // Prices were whole or fractional dollars
+        db.execSQL("INSERT INTO " + newTable + " SELECT "
+                + VeggieEntry._ID + ", "
+                + VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + "CAST(ROUND(" + VeggieEntry.COLUMN_VEGGIE_PRICE + " * 100) AS INTEGER), "
+                + VeggieEntry.COLUMN_VEGGIE_QUANTITY + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE + " FROM " + VeggieEntry.TABLE_NAME + ";");
+
+        replaceVeggiesTable(db, newTable);
+
+        upgradeToVersion2(db);
+        createFtsTriggers(db);
+    }
+
+    /**
+     * Version 6: move the suppliers into their own table. Each distinct name and phone becomes
+     * one supplier, and the veggies table is rebuilt with a supplier_id in place of the two text
+     * columns. The full-text search table now reads the supplier name through a view, and a
+     * trigger on the suppliers table re-indexes its veggies when a supplier is renamed.
+     */
+    private void upgradeToVersion6(SQLiteDatabase db) {
+        // The unique key both stops duplicates and serves lookups by name
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " TEXT NOT NULL, "
+                + "UNIQUE (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + "));");
+        db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + ") SELECT "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE + " FROM " + VeggieEntry.TABLE_NAME
+                + " GROUP BY " + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE
+                + " ORDER BY MIN(" + VeggieEntry._ID + ");");
+
+        // The old full-text table reads the supplier name from the veggies table, which is
+        // about to lose it
+        db.execSQL("DROP TABLE " + TABLE_VEGGIES_FTS + ";");
+
+        String newTable = VeggieEntry.TABLE_NAME + "_v6";
+        db.execSQL("CREATE TABLE " + newTable + " ("
+                + VeggieEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + VeggieEntry.COLUMN_VEGGIE_NAME + " TEXT NOT NULL, "
+                + VeggieEntry.COLUMN_VEGGIE_PRICE + " INTEGER NOT NULL, "
+                + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " INTEGER NOT NULL, "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + "(" + SupplierEntry._ID + "));");
+        db.execSQL("INSERT INTO " + newTable + " SELECT v."
+                + VeggieEntry._ID + ", v."
+                + VeggieEntry.COLUMN_VEGGIE_NAME + ", v."
+                + VeggieEntry.COLUMN_VEGGIE_PRICE + ", v."
+                + VeggieEntry.COLUMN_VEGGIE_QUANTITY + ", s."
+                + SupplierEntry._ID + " FROM " + VeggieEntry.TABLE_NAME + " v JOIN "
+                + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " = v." + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + " AND s."
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " = v."
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE + ";");
+        replaceVeggiesTable(db, newTable);
+
+        db.execSQL("CREATE INDEX " + INDEX_VEGGIE_NAME + " ON " + VeggieEntry.TABLE_NAME + " ("
+                + VeggieEntry.COLUMN_VEGGIE_NAME + " COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX " + INDEX_VEGGIE_QUANTITY + " ON " + VeggieEntry.TABLE_NAME
+                + " (" + VeggieEntry.COLUMN_VEGGIE_QUANTITY + ");");
+        db.execSQL("CREATE INDEX " + INDEX_VEGGIE_SUPPLIER + " ON " + VeggieEntry.TABLE_NAME
+                + " (" + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + ");");
+
+        // FTS4 reads the old values of a row from its content table when the row is removed
+        // from the index, so the view has to show each veggie under its rowid
+        db.execSQL("CREATE VIEW " + VIEW_VEGGIES_FTS_CONTENT + " AS SELECT v."
+                + VeggieEntry._ID + " AS rowid, v."
+                + VeggieEntry.COLUMN_VEGGIE_NAME + " AS " + VeggieEntry.COLUMN_VEGGIE_NAME + ", s."
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME
+                + " FROM " + VeggieEntry.TABLE_NAME + " v JOIN " + SupplierEntry.TABLE_NAME
+                + " s ON s." + SupplierEntry._ID + " = v." + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + ";");
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_VEGGIES_FTS + " USING fts4("
+                + "content=\"" + VIEW_VEGGIES_FTS_CONTENT + "\", "
+                + VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ", "
+                + "prefix=\"2,3\");");
+        createSupplierFtsTriggers(db);
+        db.execSQL("INSERT INTO " + TABLE_VEGGIES_FTS + "(" + TABLE_VEGGIES_FTS + ") VALUES('rebuild');");
+    }
+
+    /**
+     * Version 7: add an index per catalog order for the veggies of one supplier. The order by
+     * _id needs none, since {@link #INDEX_VEGGIE_SUPPLIER} keeps the rowid of each entry.
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_VEGGIE_SUPPLIER_BY_NAME + " ON " + VeggieEntry.TABLE_NAME
+                + " (" + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + ", "
+                + VeggieEntry.COLUMN_VEGGIE_NAME + " COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX " + INDEX_VEGGIE_SUPPLIER_BY_QUANTITY + " ON "
+                + VeggieEntry.TABLE_NAME + " (" + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + ", "
+                + VeggieEntry.COLUMN_VEGGIE_QUANTITY + ");");
+    }
+
+    /**
+     * Version 8: add the optional sku column and its unique index. Adding a nullable column
+     * needs no rebuild of the veggies table.
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + VeggieEntry.TABLE_NAME + " ADD COLUMN "
+                + VeggieEntry.COLUMN_VEGGIE_SKU + " TEXT;");
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_VEGGIE_SKU + " ON " + VeggieEntry.TABLE_NAME
+                + " (" + VeggieEntry.COLUMN_VEGGIE_SKU + ");");
+    }
+
+    /**
+     * Version 9: add the locations and the stock levels per veggie and location. The stock that
+     * is already there is put at the default location, so the levels of every veggie add up to
+     * its quantity from the start.
+     */
+    private void upgradeToVersion9(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + LocationEntry.TABLE_NAME + " ("
+                + LocationEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + LocationEntry.COLUMN_LOCATION_NAME + " TEXT NOT NULL UNIQUE);");
+        for (String name : INITIAL_LOCATIONS) {
+            db.execSQL("INSERT INTO " + LocationEntry.TABLE_NAME + " ("
+                    + LocationEntry.COLUMN_LOCATION_NAME + ") VALUES (?);", new Object[]{name});
+        }
+
+        // A location can't be deleted while it holds stock. The unique key serves the levels
+        // of one veggie.
+        db.execSQL("CREATE TABLE " + StockLevelEntry.TABLE_NAME + " ("
+                + StockLevelEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockLevelEntry.COLUMN_VEGGIE_ID + " INTEGER NOT NULL REFERENCES "
+                + VeggieEntry.TABLE_NAME + "(" + VeggieEntry._ID + ") ON DELETE CASCADE, "
+                + StockLevelEntry.COLUMN_LOCATION_ID + " INTEGER NOT NULL REFERENCES "
+                + LocationEntry.TABLE_NAME + "(" + LocationEntry._ID + "), "
+                + StockLevelEntry.COLUMN_QUANTITY + " INTEGER NOT NULL CHECK ("
+                + StockLevelEntry.COLUMN_QUANTITY + " >= 0), "
+                + "UNIQUE (" + StockLevelEntry.COLUMN_VEGGIE_ID + ", "
+                + StockLevelEntry.COLUMN_LOCATION_ID + "));");
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_LEVEL_LOCATION + " ON "
+                + StockLevelEntry.TABLE_NAME + " (" + StockLevelEntry.COLUMN_LOCATION_ID + ", "
+                + StockLevelEntry.COLUMN_VEGGIE_ID + ");");
+
+        // Put the stock that is already there at the default location
+        db.execSQL("INSERT INTO " + StockLevelEntry.TABLE_NAME + " ("
+                + StockLevelEntry.COLUMN_VEGGIE_ID + ", "
+                + StockLevelEntry.COLUMN_LOCATION_ID + ", "
+                + StockLevelEntry.COLUMN_QUANTITY + ") SELECT "
+                + VeggieEntry._ID + ", ?, " + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " FROM "
+                + VeggieEntry.TABLE_NAME + " WHERE " + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " != 0;",
+                new Object[]{LocationEntry.DEFAULT_LOCATION_ID});
+    }
+
+    /**
+     * Version 10: replace the veggie update triggers of the full-text search table, which
+     * re-indexed the row on every update, quantity-only ones included, by triggers that only
+     * fire when the name or the supplier changes.
+     */
+    private void upgradeToVersion10(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER veggies_fts_before_update;");
+        db.execSQL("DROP TRIGGER veggies_fts_after_update;");
+        createSupplierFtsUpdateTriggers(db);
+    }
+
+    /**
+     * Create the triggers that keep the full-text search table in step with the veggies and
+     * suppliers tables, from version 6 on. The supplier name of a new row is looked up in the
+     * suppliers table.
+     */
+    private static void createSupplierFtsTriggers(SQLiteDatabase db) {
+        String ftsColumns = "(docid, " + VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ")";
+        String newValues = "SELECT new." + VeggieEntry._ID + ", new." + VeggieEntry.COLUMN_VEGGIE_NAME
+                + ", " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry._ID + " = new." + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID;
+        String deleteOld = "DELETE FROM " + TABLE_VEGGIES_FTS + " WHERE docid = old." + VeggieEntry._ID + ";";
+
+        createSupplierFtsUpdateTriggers(db);
+        db.execSQL("CREATE TRIGGER veggies_fts_before_delete BEFORE DELETE ON "
+                + VeggieEntry.TABLE_NAME + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER veggies_fts_after_insert AFTER INSERT ON "
+                + VeggieEntry.TABLE_NAME + " BEGIN INSERT INTO " + TABLE_VEGGIES_FTS
+                + ftsColumns + " " + newValues + "; END;");
+
+        // Renaming a supplier changes the indexed text of all its veggies. They are found
+        // through the supplier index, and FTS4 looks up each docid directly.
+        db.execSQL("CREATE TRIGGER suppliers_fts_before_update BEFORE UPDATE OF "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME
+                + " BEGIN DELETE FROM " + TABLE_VEGGIES_FTS + " WHERE docid IN (SELECT "
+                + VeggieEntry._ID + " FROM " + VeggieEntry.TABLE_NAME + " WHERE "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + " = old." + SupplierEntry._ID + "); END;");
+        db.execSQL("CREATE TRIGGER suppliers_fts_after_update AFTER UPDATE OF "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME
+                + " BEGIN INSERT INTO " + TABLE_VEGGIES_FTS + ftsColumns + " SELECT "
+                + VeggieEntry._ID + ", " + VeggieEntry.COLUMN_VEGGIE_NAME + ", new."
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + VeggieEntry.TABLE_NAME + " WHERE "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + " = new." + SupplierEntry._ID + "; END;");
+    }
+
+    /**
+     * Create the triggers that re-index a veggie when its name or supplier changes. They
+     * don't fire on updates of any other column, so sales and other quantity writes neither
+     * touch the full-text index nor look the supplier name up.
+     */
+    private static void createSupplierFtsUpdateTriggers(SQLiteDatabase db) {
+        String ftsColumns = "(docid, " + VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME + ")";
+        String newValues = "SELECT new." + VeggieEntry._ID + ", new." + VeggieEntry.COLUMN_VEGGIE_NAME
+                + ", " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry._ID + " = new." + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID;
+        String indexedColumns = VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+                + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID;
+
+        db.execSQL("CREATE TRIGGER veggies_fts_before_update BEFORE UPDATE OF " + indexedColumns
+                + " ON " + VeggieEntry.TABLE_NAME + " BEGIN DELETE FROM " + TABLE_VEGGIES_FTS
+                + " WHERE docid = old." + VeggieEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER veggies_fts_after_update AFTER UPDATE OF " + indexedColumns
+                + " ON " + VeggieEntry.TABLE_NAME + " BEGIN INSERT INTO " + TABLE_VEGGIES_FTS
+                + ftsColumns + " " + newValues + "; END;");
+    }
+
+    /**
+     * Replace the veggies table by the given table, which holds the same rows. The old table is
+     * dropped, together with its indexes and triggers, and the new one takes its name. Row IDs
+     * are kept, so the ledger still points at the right rows, and so is the AUTOINCREMENT
+     * counter, so IDs of deleted veggies are not handed out again.
+     */
+    private static void replaceVeggiesTable(SQLiteDatabase db, String newTable) {
+        long sequence = 0;
+        Cursor cursor = db.rawQuery("SELECT seq FROM sqlite_sequence WHERE name = ?",
+                new String[]{VeggieEntry.TABLE_NAME});
+        try {
+            if (cursor.moveToFirst()) {
+                sequence = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.execSQL("DROP TABLE " + VeggieEntry.TABLE_NAME + ";");
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + VeggieEntry.TABLE_NAME + ";");
+        db.execSQL("UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?",
+                new Object[]{sequence, VeggieEntry.TABLE_NAME});
     }
-}
\ No newline at end of file
+}
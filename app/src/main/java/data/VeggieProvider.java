@@ -1,191 +1,1735 @@
 package com.example.android.inventory2.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.database.AbstractWindowedCursor;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.LocationEntry;
+import com.example.android.inventory2.data.VeggieContract.StockLevelEntry;
+import com.example.android.inventory2.data.VeggieContract.StockMovementEntry;
+import com.example.android.inventory2.data.VeggieContract.StockSnapshotEntry;
+import com.example.android.inventory2.data.VeggieContract.SupplierEntry;
 import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieStatsEntry;
 import com.example.android.inventory2.data.VeggieDbHelper;
 
-/**
- * {@link ContentProvider} for Inventory2 app.
- */
-public class VeggieProvider extends ContentProvider {
+/**
+ * {@link ContentProvider} for Inventory2 app.
+ */
+public class VeggieProvider extends ContentProvider {
+
+    /**
+     * Tag for the log messages
+     */
+    public static final String LOG_TAG = VeggieProvider.class.getSimpleName();
+
+    /**
+     * URI matcher code for the content URI for the veggies table
+     */
+    private static final int VEGGIES = 100;
+
+    /**
+     * URI matcher code for the content URI for a single veggie in the veggies table
+     */
+    private static final int VEGGIE_ID = 101;
+
+    /**
+     * URI matcher code for the content URI for a full-text search of the veggies table
+     */
+    private static final int VEGGIE_SEARCH = 102;
+
+    /**
+     * URI matcher code for the content URI for the aggregate figures of the veggies table
+     */
+    private static final int VEGGIE_STATS = 103;
+
+    /**
+     * URI matcher code for the content URI for the veggies that are low on stock
+     */
+    private static final int VEGGIE_LOW_STOCK = 104;
+
+    /**
+     * URI matcher code for the content URI for the veggie with a given SKU
+     */
+    private static final int VEGGIE_SKU = 105;
+
+    /**
+     * URI matcher code for the content URI for the stock of a single veggie at every location
+     */
+    private static final int VEGGIE_STOCK_LEVELS = 106;
+
+    /**
+     * URI matcher code for the content URI for the stock movements table
+     */
+    private static final int STOCK_MOVEMENTS = 200;
+
+    /**
+     * URI matcher code for the content URI for the stock snapshots table
+     */
+    private static final int STOCK_SNAPSHOTS = 300;
+
+    /**
+     * URI matcher code for the content URI for the suppliers table
+     */
+    private static final int SUPPLIERS = 400;
+
+    /**
+     * URI matcher code for the content URI for a single supplier in the suppliers table
+     */
+    private static final int SUPPLIER_ID = 401;
+
+    /**
+     * URI matcher code for the content URI for the veggies of a single supplier
+     */
+    private static final int SUPPLIER_VEGGIES = 402;
+
+    /**
+     * URI matcher code for the content URI for the locations table
+     */
+    private static final int LOCATIONS = 500;
+
+    /**
+     * URI matcher code for the content URI for a single location in the locations table
+     */
+    private static final int LOCATION_ID = 501;
+
+    /**
+     * URI matcher code for the content URI for the stock levels of a single location
+     */
+    private static final int LOCATION_STOCK_LEVELS = 502;
+
+    /**
+     * URI matcher code for the content URI for the stock levels table
+     */
+    private static final int STOCK_LEVELS = 600;
+
+    /**
+     * UriMatcher object to match a content URI to a corresponding code.
+     * The input passed into the constructor represents the code to return for the root URI.
+     * It's common to use NO_MATCH as the input for this case.
+     */
+    private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    /**
+     * URI patterns by matcher code, used to name the operations in {@link #mMetrics}
+     */
+    private static final SparseArray<String> sUriPatterns = new SparseArray<>();
+
+    // Static initializer. This is run the first time anything is called from this class.
+    static {
+        // The calls to addUri() go here, for all of the content URI patterns that the provider
+        // should recognize. All paths added to the UriMatcher have a corresponding code to return
+        // when a match is found.
+
+        // The content URI of the form "content://com.example.android.veggies/veggies" will map to the
+        // integer code {@link #VEGGIES}. This URI is used to provide access to MULTIPLE rows
+        // of the veggies table.
+        addUri(VeggieContract.PATH_VEGGIES, VEGGIES);
+
+        // The content URI of the form "content://com.example.android.veggies/veggies/#" will map to the
+        // integer code {@link #VEGGIE_ID}. This URI is used to provide access to ONE single row
+        // of the veggies table.
+        //
+        // In this case, the "#" wildcard is used where "#" can be substituted for an integer.
+        // For example, "content://com.example.android.veggies/veggies/3" matches, but
+        // "content://com.example.android.veggies/veggies" (without a number at the end) doesn't match.
+        addUri(VeggieContract.PATH_VEGGIES + "/#", VEGGIE_ID);
+
+        // The content URI of the form "content://com.example.android.veggies/veggies/search/*"
+        // will map to the integer code {@link #VEGGIE_SEARCH}. The last segment holds the search terms.
+        addUri(VeggieContract.PATH_VEGGIES + "/" + VeggieContract.PATH_SEARCH + "/*", VEGGIE_SEARCH);
+
+        // The aggregate content URIs "content://com.example.android.veggies/veggies/stats" and
+        // "content://com.example.android.veggies/veggies/low_stock". They don't clash with
+        // {@link #VEGGIE_ID}, since "#" only matches numbers.
+        addUri(VeggieContract.PATH_VEGGIES + "/" + VeggieContract.PATH_STATS, VEGGIE_STATS);
+        addUri(VeggieContract.PATH_VEGGIES + "/" + VeggieContract.PATH_LOW_STOCK, VEGGIE_LOW_STOCK);
+
+        // The content URI of the form "content://com.example.android.veggies/veggies/sku/*"
+        // will map to the integer code {@link #VEGGIE_SKU}. The last segment holds the scanned code.
+        addUri(VeggieContract.PATH_VEGGIES + "/" + VeggieContract.PATH_SKU + "/*", VEGGIE_SKU);
+
+        // The content URIs of the stock ledger. Movements can be queried and appended to;
+        // snapshots are written by compaction only and can just be queried.
+        addUri(VeggieContract.PATH_STOCK_MOVEMENTS, STOCK_MOVEMENTS);
+        addUri(VeggieContract.PATH_STOCK_SNAPSHOTS, STOCK_SNAPSHOTS);
+
+        // The content URIs of the suppliers, and of the veggies of one supplier, such as
+        // "content://com.example.android.veggies/suppliers/3/veggies"
+        addUri(VeggieContract.PATH_SUPPLIERS, SUPPLIERS);
+        addUri(VeggieContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        addUri(VeggieContract.PATH_SUPPLIERS + "/#/" + VeggieContract.PATH_VEGGIES, SUPPLIER_VEGGIES);
+
+        // The content URIs of the locations and the stock levels. The levels can be read as a
+        // whole, for one location as in "content://com.example.android.veggies/locations/2/stock_levels",
+        // or for one veggie at every location as in
+        // "content://com.example.android.veggies/veggies/3/stock_levels".
+        addUri(VeggieContract.PATH_LOCATIONS, LOCATIONS);
+        addUri(VeggieContract.PATH_LOCATIONS + "/#", LOCATION_ID);
+        addUri(VeggieContract.PATH_LOCATIONS + "/#/" + VeggieContract.PATH_STOCK_LEVELS,
+                LOCATION_STOCK_LEVELS);
+        addUri(VeggieContract.PATH_STOCK_LEVELS, STOCK_LEVELS);
+        addUri(VeggieContract.PATH_VEGGIES + "/#/" + VeggieContract.PATH_STOCK_LEVELS,
+                VEGGIE_STOCK_LEVELS);
+    }
+
+    /**
+     * The veggies table with the name and phone of each veggie's supplier joined in, so rows
+     * read from it have the flat columns of {@link VeggieEntry}. The suppliers are renamed
+     * inside the join so that every column name, _ID included, stays unambiguous; SQLite
+     * flattens the subquery and looks each supplier up by its primary key.
+     */
+    static final String TABLES_VEGGIES_WITH_SUPPLIER = VeggieEntry.TABLE_NAME
+            + " JOIN (SELECT " + SupplierEntry._ID + " AS " + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID
+            + ", " + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE
+            + " FROM " + SupplierEntry.TABLE_NAME + ") USING ("
+            + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + ")";
+
+    /**
+     * SQL statement used to insert one full veggie row, by {@link #bulkInsert} for every row and
+     * by {@link #insert} when all the columns are given. It is taken from {@link #mStatements}
+     * and re-bound for every row.
+     */
+    private static final String SQL_INSERT_VEGGIE = "INSERT INTO " + VeggieEntry.TABLE_NAME + " ("
+            + VeggieEntry.COLUMN_VEGGIE_NAME + ", "
+            + VeggieEntry.COLUMN_VEGGIE_PRICE + ", "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + ", "
+            + VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + ", "
+            + VeggieEntry.COLUMN_VEGGIE_SKU + ") VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * SQL statement used by {@link #sellVeggie} to take units out of stock. The row is only
+     * changed when it holds at least the requested number of units, so the quantity can never
+     * go below 0 and concurrent sales cannot overwrite each other.
+     */
+    private static final String SQL_SELL_VEGGIE = "UPDATE " + VeggieEntry.TABLE_NAME
+            + " SET " + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " = "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " - ?"
+            + " WHERE " + VeggieEntry._ID + " = ? AND "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " >= ?";
+
+    /**
+     * SQL statement used to set the stock level of a single veggie.
+     */
+    private static final String SQL_UPDATE_QUANTITY = "UPDATE " + VeggieEntry.TABLE_NAME
+            + " SET " + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " = ?"
+            + " WHERE " + VeggieEntry._ID + " = ?";
+
+    /**
+     * SQL statement used to delete a single veggie.
+     */
+    private static final String SQL_DELETE_VEGGIE = "DELETE FROM " + VeggieEntry.TABLE_NAME
+            + " WHERE " + VeggieEntry._ID + " = ?";
+
+    /**
+     * SQL statement used to read back the stock level of a single veggie.
+     */
+    private static final String SQL_SELECT_QUANTITY = "SELECT "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " FROM " + VeggieEntry.TABLE_NAME
+            + " WHERE " + VeggieEntry._ID + " = ?";
+
+    /**
+     * SQL statement used to add up the value and size of the stock. Prices are whole cents, so
+     * the sums are exact.
+     */
+    private static final String SQL_INVENTORY_TOTALS = "SELECT "
+            + "IFNULL(SUM(" + VeggieEntry.COLUMN_VEGGIE_PRICE + " * "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + "), 0), "
+            + "IFNULL(SUM(" + VeggieEntry.COLUMN_VEGGIE_QUANTITY + "), 0), "
+            + "COUNT(*) FROM " + VeggieEntry.TABLE_NAME;
+
+    /**
+     * SQL statement behind {@link VeggieStatsEntry#CONTENT_URI}. The sums need one pass over the
+     * table; the low stock count is answered from the quantity index alone. The only argument
+     * is the reorder level.
+     */
+    private static final String SQL_VEGGIE_STATS = "SELECT "
+            + "IFNULL(SUM(" + VeggieEntry.COLUMN_VEGGIE_PRICE + " * "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + "), 0) AS "
+            + VeggieStatsEntry.COLUMN_TOTAL_VALUE + ", "
+            + "IFNULL(SUM(" + VeggieEntry.COLUMN_VEGGIE_QUANTITY + "), 0) AS "
+            + VeggieStatsEntry.COLUMN_TOTAL_QUANTITY + ", "
+            + "COUNT(*) AS " + VeggieStatsEntry.COLUMN_VEGGIE_COUNT + ", "
+            + "(SELECT COUNT(*) FROM " + VeggieEntry.TABLE_NAME + " WHERE "
+            + VeggieEntry.COLUMN_VEGGIE_QUANTITY + " < ?) AS "
+            + VeggieStatsEntry.COLUMN_LOW_STOCK_COUNT
+            + " FROM " + VeggieEntry.TABLE_NAME;
+
+    /**
+     * SQL query for the stock of one veggie at every location, those that hold none of it
+     * included. The unique key on veggie and location finds each level with a single probe.
+     */
+    private static final String SQL_VEGGIE_STOCK_LEVELS = "SELECT "
+            + "l." + LocationEntry._ID + " AS " + StockLevelEntry._ID + ", "
+            + "l." + LocationEntry.COLUMN_LOCATION_NAME + " AS "
+            + LocationEntry.COLUMN_LOCATION_NAME + ", "
+            + "IFNULL(s." + StockLevelEntry.COLUMN_QUANTITY + ", 0) AS "
+            + StockLevelEntry.COLUMN_QUANTITY
+            + " FROM " + LocationEntry.TABLE_NAME + " l LEFT JOIN " + StockLevelEntry.TABLE_NAME
+            + " s ON s." + StockLevelEntry.COLUMN_LOCATION_ID + " = l." + LocationEntry._ID
+            + " AND s." + StockLevelEntry.COLUMN_VEGGIE_ID + " = ?"
+            + " ORDER BY l." + LocationEntry._ID;
+
+    /**
+     * Default order of {@link VeggieEntry#CONTENT_LOW_STOCK_URI}, which the quantity index
+     * already returns rows in
+     */
+    private static final String LOW_STOCK_SORT_ORDER = VeggieEntry.COLUMN_VEGGIE_QUANTITY + ", "
+            + VeggieEntry._ID;
+
+    /**
+     * Order of {@link VeggieContract#SORT_NAME}, which the name indexes return rows in. The
+     * collation must match theirs, or SQLite sorts the rows itself.
+     */
+    private static final String NAME_SORT_ORDER = VeggieEntry.COLUMN_VEGGIE_NAME + " COLLATE NOCASE, "
+            + VeggieEntry._ID;
+
+    /**
+     * Number of rows kept by {@link #mRowCache}
+     */
+    private static final int ROW_CACHE_SIZE = 256;
+
+    /**
+     * Database helper object
+     */
+    private VeggieDbHelper mDbHelper;
+
+    /**
+     * Cache of single rows, used to answer {@link #VEGGIE_ID} queries without SQLite
+     */
+    private final VeggieRowCache mRowCache = new VeggieRowCache(ROW_CACHE_SIZE);
+
+    /**
+     * Counters of every call made to this provider, reported by
+     * {@link VeggieContract#METHOD_METRICS}
+     */
+    private final ProviderMetrics mMetrics = new ProviderMetrics();
+
+    /**
+     * Compiled statements of the fixed write shapes: a full veggie row insert, a quantity update
+     * and a delete by ID, and the statements of the stock ledger and the supplier lookup
+     */
+    private final StatementPool mStatements = new StatementPool();
+
+    /**
+     * True while {@link #applyBatch} is running on the current thread. Change notifications are
+     * held back until the whole batch has been committed.
+     */
+    private final ThreadLocal<Boolean> mApplyingBatch = new ThreadLocal<>();
+
+    /**
+     * True if an operation inside the current {@link #applyBatch} changed any data.
+     */
+    private final ThreadLocal<Boolean> mBatchChanged = new ThreadLocal<>();
+
+    @Override
+    public boolean onCreate() {
+        mDbHelper = new VeggieDbHelper(getContext());
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Query the provider. The CursorLoader passes a {@link CancellationSignal}, which is handed
+     * on to SQLite so that a query the loader no longer needs (for example the previous search
+     * while the user is still typing) stops running as soon as it is cancelled.
+     * <p>
+     * The first window of the cursor is filled before returning, so the time SQLite takes to
+     * run the query is counted in {@link #mMetrics}. Every caller reads the rows right away in
+     * any case.
+     */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+        String operation = getOperationName(uri, "query");
+        Cursor cursor = doQuery(uri, projection, selection, selectionArgs, sortOrder,
+                cancellationSignal);
+        if (cursor instanceof AbstractWindowedCursor) {
+            cursor = new MeteredCursor(cursor, mMetrics, operation);
+        }
+        int rows;
+        try {
+            rows = cursor.getCount();
+        } catch (RuntimeException e) {
+            // For example the query was cancelled while it ran
+            cursor.close();
+            throw e;
+        }
+        recordCall(operation, uri, start, rows);
+        return cursor;
+    }
+
+    private Cursor doQuery(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                           String sortOrder, CancellationSignal cancellationSignal) {
+        // Get readable database
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+
+        // This cursor will hold the result of the query
+        Cursor cursor;
+
+        // Figure out if the URI matcher can match the URI to a specific code
+        int match = sUriMatcher.match(uri);
+        switch (match) {
+            case VEGGIES:
+                // For the VEGGIES code, query the veggies table directly with the given
+                // projection, selection, selection arguments, and sort order. The cursor
+                // could contain multiple rows of the veggies table.
+                //
+                // The optional sort and supplier parameters become a whitelisted ORDER BY and
+                // WHERE clause, and the optional paging parameters narrow this down to a single
+                // page.
+                projection = getListProjection(uri, projection);
+                sortOrder = getSortOrder(uri, sortOrder);
+                String supplierId = uri.getQueryParameter(VeggieContract.PARAM_SUPPLIER_ID);
+                if (supplierId != null) {
+                    selection = appendSelection(selection, VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + "=?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseSupplierId(uri, supplierId)));
+                }
+                if (uri.getQueryParameter(VeggieContract.PARAM_AFTER_ID) != null) {
+                    if (sortOrder == null) {
+                        sortOrder = VeggieEntry._ID;
+                    }
+                    selection = appendSelection(selection, getKeysetSelection(uri, sortOrder));
+                    selectionArgs = appendKeysetSelectionArgs(uri, sortOrder, selectionArgs);
+                }
+                cursor = database.query(false, getVeggiesTable(projection, selection, sortOrder),
+                        projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri),
+                        cancellationSignal);
+                break;
+            case VEGGIE_SEARCH:
+                // For the VEGGIE_SEARCH code, turn the last path segment into an FTS match
+                // expression and restrict the veggies table to the rows the FTS table matches.
+                // Rows are read from the veggies table itself, so any projection works.
+                // The sort and supplier parameters work as they do on the catalog, though
+                // SQLite may sort the matches itself.
+                String matchExpression = buildMatchExpression(uri.getLastPathSegment());
+                if (matchExpression != null) {
+                    selection = appendSelection(selection, VeggieEntry._ID + " IN (SELECT docid FROM "
+                            + VeggieDbHelper.TABLE_VEGGIES_FTS + " WHERE "
+                            + VeggieDbHelper.TABLE_VEGGIES_FTS + " MATCH ?)");
+                    selectionArgs = appendSelectionArg(selectionArgs, matchExpression);
+                }
+                projection = getListProjection(uri, projection);
+                sortOrder = getSortOrder(uri, sortOrder);
+                String searchSupplierId = uri.getQueryParameter(VeggieContract.PARAM_SUPPLIER_ID);
+                if (searchSupplierId != null) {
+                    selection = appendSelection(selection, VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + "=?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseSupplierId(uri, searchSupplierId)));
+                }
+                if (uri.getQueryParameter(VeggieContract.PARAM_AFTER_ID) != null) {
+                    if (sortOrder == null) {
+                        sortOrder = VeggieEntry._ID;
+                    }
+                    selection = appendSelection(selection, getKeysetSelection(uri, sortOrder));
+                    selectionArgs = appendKeysetSelectionArgs(uri, sortOrder, selectionArgs);
+                }
+                cursor = database.query(false, getVeggiesTable(projection, selection, sortOrder),
+                        projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri),
+                        cancellationSignal);
+
+                // Search results change whenever any veggie changes, so watch the whole table
+                cursor.setNotificationUri(getContext().getContentResolver(), VeggieEntry.CONTENT_URI);
+                return cursor;
+            case VEGGIE_STATS:
+                // For the VEGGIE_STATS code, compute the figures in SQLite and return them as a
+                // single row. The projection, selection and sort order don't apply.
+                cursor = database.rawQuery(SQL_VEGGIE_STATS,
+                        new String[]{String.valueOf(getLowStockThreshold(uri))}, cancellationSignal);
+
+                // The figures change whenever any veggie changes, so watch the whole table
+                cursor.setNotificationUri(getContext().getContentResolver(), VeggieEntry.CONTENT_URI);
+                return cursor;
+            case VEGGIE_LOW_STOCK:
+                // For the VEGGIE_LOW_STOCK code, restrict the veggies table to the rows below the
+                // reorder level. The quantity index serves both the filter and the default order.
+                selection = appendSelection(selection, VeggieEntry.COLUMN_VEGGIE_QUANTITY + "<?");
+                selectionArgs = appendSelectionArg(selectionArgs,
+                        String.valueOf(getLowStockThreshold(uri)));
+                if (sortOrder == null) {
+                    sortOrder = LOW_STOCK_SORT_ORDER;
+                }
+                cursor = database.query(false, getVeggiesTable(projection, selection, sortOrder),
+                        projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri),
+                        cancellationSignal);
+
+                // Any veggie may cross the reorder level, so watch the whole table
+                cursor.setNotificationUri(getContext().getContentResolver(), VeggieEntry.CONTENT_URI);
+                return cursor;
+            case VEGGIE_ID:
+                // For the VEGGIE_ID code, extract out the ID from the URI.
+                // For an example URI such as "content://com.example.android.veggies/veggies/3",
+                // the selection will be "_id=?" and the selection argument will be a
+                // String array containing the actual ID of 3 in this case.
+                //
+                // For every "?" in the selection, we need to have an element in the selection
+                // arguments that will fill in the "?". Since we have 1 question mark in the
+                // selection, we have 1 String in the selection arguments' String array.
+                long id = ContentUris.parseId(uri);
+                selection = VeggieEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(id)};
+
+                // Inside a batch the row may hold writes that are rolled back later, so it is
+                // read from the database and never cached
+                if (VeggieRowCache.covers(projection)
+                        && !Boolean.TRUE.equals(mApplyingBatch.get())) {
+                    // Serve the row from the row cache, filling it from the database on a miss
+                    cursor = queryCachedVeggie(database, id, projection, selection, selectionArgs,
+                            cancellationSignal);
+                    break;
+                }
+
+                // This will perform a query on the veggies table where the _id equals 3 to return a
+                // Cursor containing that row of the table.
+                cursor = database.query(false, getVeggiesTable(projection, selection, sortOrder),
+                        projection, selection, selectionArgs, null, null, sortOrder, null,
+                        cancellationSignal);
+                break;
+            case VEGGIE_SKU:
+                // For the VEGGIE_SKU code, look the veggie up by the code in the last path
+                // segment. The unique SKU index finds it with a single probe. A blank code is
+                // rejected here as it is on insert and update, since no veggie can have one.
+                String sku = uri.getLastPathSegment();
+                checkSku(sku);
+                selection = VeggieEntry.COLUMN_VEGGIE_SKU + "=?";
+                selectionArgs = new String[]{sku};
+                cursor = database.query(false, getVeggiesTable(projection, selection, sortOrder),
+                        projection, selection, selectionArgs, null, null, sortOrder, null,
+                        cancellationSignal);
+
+                // Any veggie may be given the code, so watch the whole table
+                cursor.setNotificationUri(getContext().getContentResolver(), VeggieEntry.CONTENT_URI);
+                return cursor;
+            case STOCK_MOVEMENTS:
+                cursor = database.query(false, StockMovementEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, getLimit(uri), cancellationSignal);
+                break;
+            case STOCK_SNAPSHOTS:
+                cursor = database.query(false, StockSnapshotEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, getLimit(uri), cancellationSignal);
+                break;
+            case SUPPLIERS:
+                cursor = database.query(false, SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, getLimit(uri), cancellationSignal);
+                break;
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(false, SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, null, cancellationSignal);
+                break;
+            case LOCATIONS:
+                cursor = database.query(false, LocationEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, getLimit(uri), cancellationSignal);
+                break;
+            case LOCATION_ID:
+                selection = LocationEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(false, LocationEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, null, cancellationSignal);
+                break;
+            case LOCATION_STOCK_LEVELS:
+                // For the LOCATION_STOCK_LEVELS code, restrict the levels to the location in the
+                // URI. The location index finds them without scanning the stock levels table.
+                selection = appendSelection(selection, StockLevelEntry.COLUMN_LOCATION_ID + "=?");
+                selectionArgs = appendSelectionArg(selectionArgs, uri.getPathSegments().get(1));
+                cursor = database.query(false, StockLevelEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, getLimit(uri), cancellationSignal);
+
+                // Levels are notified on the table URI only
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        StockLevelEntry.CONTENT_URI);
+                return cursor;
+            case STOCK_LEVELS:
+                cursor = database.query(false, StockLevelEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, getLimit(uri), cancellationSignal);
+                break;
+            case VEGGIE_STOCK_LEVELS:
+                // For the VEGGIE_STOCK_LEVELS code, list every location with the veggie's stock
+                // there. The projection, selection and sort order don't apply.
+                cursor = database.rawQuery(SQL_VEGGIE_STOCK_LEVELS,
+                        new String[]{uri.getPathSegments().get(1)}, cancellationSignal);
+
+                // Levels are notified on the table URI only
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        StockLevelEntry.CONTENT_URI);
+                return cursor;
+            case SUPPLIER_VEGGIES:
+                // For the SUPPLIER_VEGGIES code, restrict the veggies to the supplier in the
+                // URI. The supplier index finds them without scanning the veggies table.
+                selection = appendSelection(selection, VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID + "=?");
+                selectionArgs = appendSelectionArg(selectionArgs, uri.getPathSegments().get(1));
+                cursor = database.query(false, getVeggiesTable(projection, selection, sortOrder),
+                        projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri),
+                        cancellationSignal);
+
+                // Veggies are notified on their own URI, so watch the whole veggies table
+                cursor.setNotificationUri(getContext().getContentResolver(), VeggieEntry.CONTENT_URI);
+                return cursor;
+            default:
+                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
+        }
+        // Set notification URI on the Cursor,
+        // so we know what content URI the Cursor was created for.
+        // If the data at this URI changes, then we know we need to update the Cursor.
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+
+        // Return the cursor
+        return cursor;
+    }
+
+    /**
+     * Return a one-row cursor for the veggie with the given ID, built from the row cache. On a
+     * miss the whole row is read from the database and cached. Return an empty cursor if there
+     * is no such veggie.
+     */
+    private Cursor queryCachedVeggie(SQLiteDatabase database, long id, String[] projection,
+                                     String selection, String[] selectionArgs,
+                                     CancellationSignal cancellationSignal) {
+        Object[] row = mRowCache.get(id);
+        if (row == null) {
+            long generation = mRowCache.generation();
+            Cursor cursor = database.query(false, TABLES_VEGGIES_WITH_SUPPLIER,
+                    VeggieRowCache.ALL_COLUMNS, selection, selectionArgs, null, null, null, null,
+                    cancellationSignal);
+            try {
+                if (cursor.moveToFirst()) {
+                    row = mRowCache.put(cursor, generation);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if (row == null) {
+            return new MatrixCursor(projection != null ? projection : VeggieRowCache.ALL_COLUMNS, 0);
+        }
+        return VeggieRowCache.toCursor(row, projection);
+    }
+
+    /**
+     * Drop the rows touched by a committed update or delete on the given URI from the row cache.
+     */
+    private void invalidateRowCache(Uri uri) {
+        if (sUriMatcher.match(uri) == VEGGIE_ID) {
+            mRowCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            mRowCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Turn the text the user typed into an FTS match expression in which every word is matched
+     * as a prefix, for example "red on" becomes "red* on*". Characters that have a meaning in
+     * the FTS query syntax are dropped. Return null if no words are left.
+     */
+    static String buildMatchExpression(String terms) {
+        if (terms == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String term : terms.split("\\s+")) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    word.append(c);
+                }
+            }
+            if (word.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(word).append('*');
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * Build the LIMIT clause from the {@link VeggieContract#PARAM_LIMIT} and
+     * {@link VeggieContract#PARAM_OFFSET} query parameters, or return null if the URI asks for
+     * all rows.
+     */
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(VeggieContract.PARAM_LIMIT);
+        if (limit == null) {
+            return null;
+        }
+        long limitValue = parsePagingParameter(uri, limit);
+        String offset = uri.getQueryParameter(VeggieContract.PARAM_OFFSET);
+        if (offset == null) {
+            return String.valueOf(limitValue);
+        }
+        // SQLite reads "LIMIT a,b" as offset a, count b
+        return parsePagingParameter(uri, offset) + "," + limitValue;
+    }
+
+    /**
+     * Return the projection to use for a query with the {@link VeggieContract#PARAM_PROFILE}
+     * query parameter. A list query may only ask for {@link VeggieEntry#LIST_PROJECTION}
+     * columns, and gets all of them if it asks for none; any other query keeps its projection.
+     */
+    private static String[] getListProjection(Uri uri, String[] projection) {
+        if (!VeggieContract.PROFILE_LIST.equals(uri.getQueryParameter(VeggieContract.PARAM_PROFILE))) {
+            return projection;
+        }
+        if (projection == null) {
+            return VeggieEntry.LIST_PROJECTION.clone();
+        }
+        for (String column : projection) {
+            if (!Arrays.asList(VeggieEntry.LIST_PROJECTION).contains(column)) {
+                throw new IllegalArgumentException("Column " + column
+                        + " is not in the list profile " + uri);
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * Return the ORDER BY clause for the {@link VeggieContract#PARAM_SORT} query parameter, or
+     * the given sort order if there is none. Only the listed orders are accepted, since each one
+     * needs an index to be read without sorting.
+     */
+    static String getSortOrder(Uri uri, String sortOrder) {
+        String sort = uri.getQueryParameter(VeggieContract.PARAM_SORT);
+        if (sort == null) {
+            return sortOrder;
+        }
+        if (sortOrder != null) {
+            throw new IllegalArgumentException("Cannot combine a sort order with " + uri);
+        }
+        switch (sort) {
+            case VeggieContract.SORT_ID:
+                return VeggieEntry._ID;
+            case VeggieContract.SORT_NAME:
+                return NAME_SORT_ORDER;
+            case VeggieContract.SORT_LOW_STOCK:
+                return LOW_STOCK_SORT_ORDER;
+            default:
+                throw new IllegalArgumentException("Unknown sort " + sort + " in " + uri);
+        }
+    }
+
+    /**
+     * Return the WHERE clause that keeps the rows after the {@link VeggieContract#PARAM_AFTER_ID}
+     * row in the given order. The key of the name and low stock orders is their sort column
+     * followed by _ID, so the clause starts with a range on the sort column, which lets SQLite
+     * seek into the index that serves the order instead of scanning it from the start.
+     */
+    private static String getKeysetSelection(Uri uri, String sortOrder) {
+        String column;
+        if (VeggieEntry._ID.equals(sortOrder)) {
+            return VeggieEntry._ID + ">?";
+        } else if (NAME_SORT_ORDER.equals(sortOrder)) {
+            column = VeggieEntry.COLUMN_VEGGIE_NAME + " COLLATE NOCASE";
+        } else if (LOW_STOCK_SORT_ORDER.equals(sortOrder)) {
+            column = VeggieEntry.COLUMN_VEGGIE_QUANTITY;
+        } else {
+            throw new IllegalArgumentException("Keyset paging requires a "
+                    + VeggieContract.PARAM_SORT + " order " + uri);
+        }
+        if (uri.getQueryParameter(VeggieContract.PARAM_AFTER_KEY) == null) {
+            throw new IllegalArgumentException("Keyset paging in this order requires "
+                    + VeggieContract.PARAM_AFTER_KEY + " " + uri);
+        }
+        return "(" + column + ">=? AND (" + column + ">? OR " + VeggieEntry._ID + ">?))";
+    }
+
+    /**
+     * Return the given selection arguments with the arguments of
+     * {@link #getKeysetSelection} added at the end.
+     */
+    private static String[] appendKeysetSelectionArgs(Uri uri, String sortOrder,
+                                                      String[] selectionArgs) {
+        String afterId = String.valueOf(parsePagingParameter(uri,
+                uri.getQueryParameter(VeggieContract.PARAM_AFTER_ID)));
+        if (!VeggieEntry._ID.equals(sortOrder)) {
+            String afterKey = uri.getQueryParameter(VeggieContract.PARAM_AFTER_KEY);
+            selectionArgs = appendSelectionArg(selectionArgs, afterKey);
+            selectionArgs = appendSelectionArg(selectionArgs, afterKey);
+        }
+        return appendSelectionArg(selectionArgs, afterId);
+    }
+
+    /**
+     * Parse the {@link VeggieContract#PARAM_SUPPLIER_ID} query parameter, which must be a
+     * number.
+     */
+    private static long parseSupplierId(Uri uri, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid supplier ID " + value + " in " + uri);
+        }
+    }
+
+    /**
+     * Parse a paging query parameter, which must be a non-negative number.
+     */
+    private static long parsePagingParameter(Uri uri, String value) {
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the exception below
+        }
+        throw new IllegalArgumentException("Invalid paging parameter " + value + " in " + uri);
+    }
+
+    /**
+     * Return the table to read veggies from. The suppliers are only joined in when the query
+     * reads, filters on or sorts by a supplier column, so the catalog list, which shows none of
+     * them, reads the veggies table alone. A null projection asks for every column.
+     */
+    private static String getVeggiesTable(String[] projection, String selection, String sortOrder) {
+        if (projection == null || mentionsSupplier(selection) || mentionsSupplier(sortOrder)) {
+            return TABLES_VEGGIES_WITH_SUPPLIER;
+        }
+        for (String column : projection) {
+            if (mentionsSupplier(column)) {
+                return TABLES_VEGGIES_WITH_SUPPLIER;
+            }
+        }
+        return VeggieEntry.TABLE_NAME;
+    }
+
+    /**
+     * Return true if the SQL clause refers to the supplier name or phone. SQL names are not case
+     * sensitive, so neither is this check.
+     */
+    private static boolean mentionsSupplier(String clause) {
+        if (clause == null) {
+            return false;
+        }
+        String lowerCase = clause.toLowerCase(Locale.ROOT);
+        return lowerCase.contains(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME.toLowerCase(Locale.ROOT))
+                || lowerCase.contains(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Return a copy of the veggie values for the veggies table, with the supplier name and phone
+     * replaced by the ID of that supplier, which is created if there is none yet. Values without
+     * the supplier columns are returned unchanged.
+     */
+    private static ContentValues resolveSupplier(ContentValues values, SupplierDirectory suppliers) {
+        if (!values.containsKey(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME)
+                && !values.containsKey(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE)) {
+            return values;
+        }
+        ContentValues row = new ContentValues(values);
+        row.remove(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME);
+        row.remove(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE);
+        row.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID, suppliers.resolve(
+                values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME),
+                values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE)));
+        return row;
+    }
+
+    /**
+     * Return the reorder level given by the {@link VeggieContract#PARAM_THRESHOLD} query
+     * parameter, or {@link VeggieContract#DEFAULT_LOW_STOCK_THRESHOLD} if there is none.
+     */
+    private static long getLowStockThreshold(Uri uri) {
+        String threshold = uri.getQueryParameter(VeggieContract.PARAM_THRESHOLD);
+        if (threshold == null) {
+            return VeggieContract.DEFAULT_LOW_STOCK_THRESHOLD;
+        }
+        try {
+            return Long.parseLong(threshold);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid threshold " + threshold + " in " + uri);
+        }
+    }
+
+    /**
+     * Return the given selection with the clause ANDed onto it.
+     */
+    private static String appendSelection(String selection, String clause) {
+        if (selection == null || selection.isEmpty()) {
+            return clause;
+        }
+        return "(" + selection + ") AND " + clause;
+    }
+
+    /**
+     * Return the given selection arguments with the argument added at the end.
+     */
+    private static String[] appendSelectionArg(String[] selectionArgs, String arg) {
+        if (selectionArgs == null) {
+            return new String[]{arg};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+        args[selectionArgs.length] = arg;
+        return args;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = System.nanoTime();
+        Uri result = doInsert(uri, contentValues);
+        recordCall(getOperationName(uri, "insert"), uri, start, result != null ? 1 : 0);
+        return result;
+    }
+
+    private Uri doInsert(Uri uri, ContentValues contentValues) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case VEGGIES:
+                return insertVeggie(uri, contentValues);
+            case STOCK_MOVEMENTS:
+                return insertStockMovement(uri, contentValues);
+            case SUPPLIERS:
+                return insertSupplier(contentValues);
+            case LOCATIONS:
+                return insertLocation(contentValues);
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Insert a veggie into the database with the given content values. Return the new content URI
+     * for that specific row in the database.
+     */
+    private Uri insertVeggie(Uri uri, ContentValues values) {
+        // Check that the name is not null
+        String name = values.getAsString(VeggieEntry.COLUMN_VEGGIE_NAME);
+        if (name == null) {
+            throw new IllegalArgumentException("Veggie requires a name");
+        }
+
+        // If the price is provided, check that it is a whole number of cents, 0 or more
+        Long price = values.getAsLong(VeggieEntry.COLUMN_VEGGIE_PRICE);
+        if (price != null && price < 0) {
+            throw new IllegalArgumentException("Veggie requires valid price");
+        }
+
+        // If the quantity is provided, check that it is greater than or equal to $0
+        Integer quantity = values.getAsInteger(VeggieEntry.COLUMN_VEGGIE_QUANTITY);
+        if (quantity != null && quantity < 0) {
+            throw new IllegalArgumentException("Veggie requires valid quantity");
+        }
+
+        // If the SKU is provided, check that it is not blank
+        String sku = values.getAsString(VeggieEntry.COLUMN_VEGGIE_SKU);
+        checkSku(sku);
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Insert the new veggie with the given values, and record its opening stock in the
+        // ledger in the same transaction
+        // The supplier is looked up, or created, in the same transaction too
+        long id;
+        database.beginTransaction();
+        StockLedger ledger = new StockLedger(database, mStatements);
+        SupplierDirectory suppliers = new SupplierDirectory(database, mStatements);
+        try {
+            if (isFullRow(values)) {
+                // Every column is given, so the pooled statement fits and the values are bound
+                // without building any SQL. Like SQLiteDatabase.insert, report a row that breaks
+                // a constraint as -1.
+                try {
+                    id = insertRow(database, name, price, quantity,
+                            getSupplierId(values, suppliers), sku);
+                } catch (SQLException e) {
+                    Log.e(LOG_TAG, "Error inserting " + values, e);
+                    id = -1;
+                }
+            } else {
+                id = database.insert(VeggieEntry.TABLE_NAME, null, resolveSupplier(values, suppliers));
+            }
+            if (id != -1 && quantity != null && quantity != 0) {
+                ledger.record(id, quantity, StockMovementEntry.REASON_ADJUST,
+                        System.currentTimeMillis());
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            ledger.close();
+            suppliers.close();
+            database.endTransaction();
+        }
+        if (suppliers.hasInserted()) {
+            notifySupplierChange();
+        }
+        // If the ID is -1, then the insertion failed. Log an error and return null.
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        notifyLedgerChange();
+
+        // Notify all listeners that the new row has been added
+        notifyChange(ContentUris.withAppendedId(uri, id), VeggieContract.CHANGE_INSERT);
+
+        // Return the new URI with the ID (of the newly inserted row) appended at the end
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Check that a veggie SKU is either absent or holds something other than whitespace. A
+     * veggie without a code stores null, which the unique index lets any number of rows share.
+     */
+    private static void checkSku(String sku) {
+        if (sku != null && sku.trim().isEmpty()) {
+            throw new IllegalArgumentException("Veggie requires a valid SKU");
+        }
+    }
+
+    /**
+     * Return true if the veggie values hold the name, price and quantity and a supplier, given
+     * either by ID or by name and phone, an optional SKU and nothing else. Those rows are
+     * inserted with {@link #SQL_INSERT_VEGGIE}.
+     */
+    private static boolean isFullRow(ContentValues values) {
+        int supplierColumns;
+        if (values.getAsLong(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID) != null) {
+            supplierColumns = 1;
+        } else if (values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME) != null
+                && values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE) != null) {
+            supplierColumns = 2;
+        } else {
+            return false;
+        }
+        return values.getAsString(VeggieEntry.COLUMN_VEGGIE_NAME) != null
+                && values.getAsLong(VeggieEntry.COLUMN_VEGGIE_PRICE) != null
+                && values.getAsInteger(VeggieEntry.COLUMN_VEGGIE_QUANTITY) != null
+                && values.size() == 3 + supplierColumns
+                + (values.containsKey(VeggieEntry.COLUMN_VEGGIE_SKU) ? 1 : 0);
+    }
+
+    /**
+     * Return the ID of the supplier of the veggie values, given either by ID or by name and
+     * phone, creating the supplier if there is none yet. Return null if neither is given.
+     */
+    private static Long getSupplierId(ContentValues values, SupplierDirectory suppliers) {
+        Long supplierId = values.getAsLong(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID);
+        if (supplierId != null) {
+            return supplierId;
+        }
+        String supplierName = values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME);
+        String supplierPhone = values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE);
+        if (supplierName == null || supplierPhone == null) {
+            return null;
+        }
+        return suppliers.resolve(supplierName, supplierPhone);
+    }
+
+    /**
+     * Insert one full veggie row with a statement from {@link #mStatements}. The SKU may be
+     * null. Return the ID of the new row.
+     */
+    private long insertRow(SQLiteDatabase database, String name, long price, long quantity,
+                           long supplierId, String sku) {
+        SQLiteStatement statement = mStatements.acquire(database, SQL_INSERT_VEGGIE);
+        try {
+            return executeInsertRow(statement, name, price, quantity, supplierId, sku);
+        } finally {
+            mStatements.release(database, SQL_INSERT_VEGGIE, statement);
+        }
+    }
+
+    /**
+     * Bind one full veggie row to a {@link #SQL_INSERT_VEGGIE} statement and run it. The SKU
+     * may be null. Return the ID of the new row.
+     */
+    private static long executeInsertRow(SQLiteStatement statement, String name, long price,
+                                         long quantity, long supplierId, String sku) {
+        statement.bindString(1, name);
+        statement.bindLong(2, price);
+        statement.bindLong(3, quantity);
+        statement.bindLong(4, supplierId);
+        if (sku != null) {
+            statement.bindString(5, sku);
+        } else {
+            // The statement is pooled, so clear the code a previous row may have bound
+            statement.bindNull(5);
+        }
+        return statement.executeInsert();
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = System.nanoTime();
+        int rowsInserted = doBulkInsert(uri, values);
+        recordCall(getOperationName(uri, "bulk_insert"), uri, start, rowsInserted);
+        return rowsInserted;
+    }
+
+    private int doBulkInsert(Uri uri, ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case VEGGIES:
+                return bulkInsertVeggies(uri, values);
+            case STOCK_MOVEMENTS:
+                return bulkInsertStockMovements(values);
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Insert a location. Return its content URI, or null if there already is a location with the
+     * same name.
+     */
+    private Uri insertLocation(ContentValues values) {
+        String name = values.getAsString(LocationEntry.COLUMN_LOCATION_NAME);
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Location requires a name");
+        }
+
+        ContentValues row = new ContentValues();
+        row.put(LocationEntry.COLUMN_LOCATION_NAME, name);
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id = database.insert(LocationEntry.TABLE_NAME, null, row);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert location " + name);
+            return null;
+        }
+
+        // A new location holds nothing, so no stock level changed
+        notifyLocationChange();
+        return ContentUris.withAppendedId(LocationEntry.CONTENT_URI, id);
+    }
+
+    /**
+     * Insert a supplier, or find the one with the same name and phone. Return the content URI of
+     * the supplier.
+     */
+    private Uri insertSupplier(ContentValues values) {
+        String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        String phone = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_PHONE);
+        if (name == null || phone == null) {
+            throw new IllegalArgumentException("Supplier requires a name and a phone");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // The lookup and the insert run in one transaction, so two callers cannot both create
+        // the same supplier
+        long id;
+        database.beginTransaction();
+        SupplierDirectory suppliers = new SupplierDirectory(database, mStatements);
+        try {
+            id = suppliers.resolve(name, phone);
+            database.setTransactionSuccessful();
+        } finally {
+            suppliers.close();
+            database.endTransaction();
+        }
+
+        if (suppliers.hasInserted()) {
+            notifySupplierChange();
+        }
+        return ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, id);
+    }
+
+    /**
+     * Append a movement to the stock ledger and apply it to the quantity of its veggie, in one
+     * transaction. The timestamp defaults to now. Return the content URI of the new movement.
+     */
+    private Uri insertStockMovement(Uri uri, ContentValues values) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        long movementId;
+        long veggieId;
+        database.beginTransaction();
+        StockLedger ledger = new StockLedger(database, mStatements);
+        try {
+            veggieId = checkStockMovement(values, System.currentTimeMillis());
+            movementId = ledger.apply(veggieId, values.getAsLong(StockMovementEntry.COLUMN_DELTA),
+                    values.getAsString(StockMovementEntry.COLUMN_REASON),
+                    values.getAsLong(StockMovementEntry.COLUMN_TIMESTAMP));
+            database.setTransactionSuccessful();
+        } finally {
+            ledger.close();
+            database.endTransaction();
+        }
+
+        if (movementId == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        // Only the veggie the movement is about changed
+        mRowCache.invalidate(veggieId);
+        notifyChange(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, veggieId),
+                VeggieContract.CHANGE_UPDATE);
+        notifyLedgerChange();
+        return ContentUris.withAppendedId(uri, movementId);
+    }
+
+    /**
+     * Check a stock movement before it is written and fill in its timestamp if it has none.
+     * Return the ID of the veggie it is about.
+     */
+    private static long checkStockMovement(ContentValues values, long now) {
+        Long veggieId = values.getAsLong(StockMovementEntry.COLUMN_VEGGIE_ID);
+        if (veggieId == null) {
+            throw new IllegalArgumentException("Stock movement requires a veggie id");
+        }
+        Long delta = values.getAsLong(StockMovementEntry.COLUMN_DELTA);
+        if (delta == null || delta == 0) {
+            throw new IllegalArgumentException("Stock movement requires a non-zero delta");
+        }
+        if (!StockLedger.isValidReason(values.getAsString(StockMovementEntry.COLUMN_REASON))) {
+            throw new IllegalArgumentException("Stock movement requires a valid reason");
+        }
+        if (values.getAsLong(StockMovementEntry.COLUMN_TIMESTAMP) == null) {
+            values.put(StockMovementEntry.COLUMN_TIMESTAMP, now);
+        }
+        return veggieId;
+    }
+
+    /**
+     * Insert all the given veggies in a single transaction, re-using one compiled statement for
+     * every row. Each row is validated with the same rules as {@link #insertVeggie}; an invalid
+     * row rolls back the whole batch. Listeners are notified once, after the commit.
+     * Return the number of rows that were inserted.
+     */
+    private int bulkInsertVeggies(Uri uri, ContentValues[] values) {
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rowsInserted = 0;
+        long now = System.currentTimeMillis();
+        database.beginTransaction();
+        SQLiteStatement statement = mStatements.acquire(database, SQL_INSERT_VEGGIE);
+        StockLedger ledger = new StockLedger(database, mStatements);
+        SupplierDirectory suppliers = new SupplierDirectory(database, mStatements);
+        try {
+            for (ContentValues value : values) {
+                // Check that the name is not null
+                String name = value.getAsString(VeggieEntry.COLUMN_VEGGIE_NAME);
+                if (name == null) {
+                    throw new IllegalArgumentException("Veggie requires a name");
+                }
+
+                // Check that the price is provided and a whole number of cents, 0 or more
+                Long price = value.getAsLong(VeggieEntry.COLUMN_VEGGIE_PRICE);
+                if (price == null || price < 0) {
+                    throw new IllegalArgumentException("Veggie requires valid price");
+                }
+
+                // Check that the quantity is provided and greater than or equal to 0
+                Integer quantity = value.getAsInteger(VeggieEntry.COLUMN_VEGGIE_QUANTITY);
+                if (quantity == null || quantity < 0) {
+                    throw new IllegalArgumentException("Veggie requires valid quantity");
+                }
+
+                // The supplier is NOT NULL in the schema, so check it up front instead of
+                // letting the statement fail half way through the batch
+                Long supplierId = getSupplierId(value, suppliers);
+                if (supplierId == null) {
+                    throw new IllegalArgumentException("Veggie requires a supplier");
+                }
+
+                // If the SKU is provided, check that it is not blank
+                String sku = value.getAsString(VeggieEntry.COLUMN_VEGGIE_SKU);
+                checkSku(sku);
+
+                long id = executeInsertRow(statement, name, price, quantity, supplierId, sku);
+                if (id != -1) {
+                    rowsInserted++;
+                    if (quantity != 0) {
+                        ledger.record(id, quantity, StockMovementEntry.REASON_ADJUST, now);
+                    }
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            mStatements.release(database, SQL_INSERT_VEGGIE, statement);
+            ledger.close();
+            suppliers.close();
+            database.endTransaction();
+        }
+
+        // Notify all listeners once for the whole batch
+        if (rowsInserted != 0) {
+            notifyChange(uri, VeggieContract.CHANGE_INSERT);
+            notifyLedgerChange();
+        }
+        if (suppliers.hasInserted()) {
+            notifySupplierChange();
+        }
+
+        // Return the number of rows inserted
+        return rowsInserted;
+    }
+
+    /**
+     * Append all the given stock movements to the ledger and apply them to the quantities in a
+     * single transaction, re-using the same compiled statements for every movement. A movement
+     * that is invalid, refers to a missing veggie or would take a quantity below 0 rolls back
+     * the whole batch. Return the number of movements appended.
+     */
+    private int bulkInsertStockMovements(ContentValues[] values) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        long now = System.currentTimeMillis();
+        database.beginTransaction();
+        StockLedger ledger = new StockLedger(database, mStatements);
+        try {
+            for (ContentValues value : values) {
+                long veggieId = checkStockMovement(value, now);
+                if (ledger.apply(veggieId, value.getAsLong(StockMovementEntry.COLUMN_DELTA),
+                        value.getAsString(StockMovementEntry.COLUMN_REASON),
+                        value.getAsLong(StockMovementEntry.COLUMN_TIMESTAMP)) == -1) {
+                    throw new IllegalArgumentException("Stock movement for veggie " + veggieId
+                            + " does not match a veggie with enough stock");
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            ledger.close();
+            database.endTransaction();
+        }
+
+        if (values.length != 0) {
+            mRowCache.invalidateAll();
+            notifyChange(VeggieEntry.CONTENT_URI, VeggieContract.CHANGE_UPDATE);
+            notifyLedgerChange();
+        }
+        return values.length;
+    }
 
     /**
-     * Tag for the log messages
+     * Apply all the operations in a single transaction. Change notifications raised by the
+     * individual operations are coalesced into one notification on
+     * {@link VeggieEntry#CONTENT_URI} once the batch has been committed.
      */
-    public static final String LOG_TAG = VeggieProvider.class.getSimpleName();
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = System.nanoTime();
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        ContentProviderResult[] results;
+        mApplyingBatch.set(true);
+        mBatchChanged.set(false);
+        database.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mApplyingBatch.set(false);
+
+            // Other threads may have cached rows between an operation's own invalidation and
+            // the commit, and a rollback undoes the invalidated writes, so drop them all now
+            if (Boolean.TRUE.equals(mBatchChanged.get())) {
+                mRowCache.invalidateAll();
+            }
+        }
+
+        // Only reached when the batch was committed
+        if (Boolean.TRUE.equals(mBatchChanged.get())) {
+            getContext().getContentResolver().notifyChange(VeggieEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(StockMovementEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(StockSnapshotEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(SupplierEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(LocationEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(StockLevelEntry.CONTENT_URI, null);
+        }
+
+        // Each operation is counted on its own as well
+        recordCall("batch", null, start, operations.size());
+        return results;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (VeggieContract.METHOD_METRICS.equals(method)) {
+            // Not counted itself, so reading the metrics does not change them
+            return getMetrics(extras);
+        }
+        long start = System.nanoTime();
+        Bundle result = doCall(method, arg, extras);
+        recordCall("call " + method, null, start, 0);
+        return result;
+    }
+
+    private Bundle doCall(String method, String arg, Bundle extras) {
+        if (VeggieContract.METHOD_SELL.equals(method)) {
+            if (extras == null || !extras.containsKey(VeggieEntry._ID)) {
+                throw new IllegalArgumentException("Sale requires a veggie id");
+            }
+            return sellVeggie(extras.getLong(VeggieEntry._ID),
+                    extras.getInt(VeggieContract.EXTRA_UNITS, 1));
+        }
+        if (VeggieContract.METHOD_ROW_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(VeggieContract.EXTRA_HITS, mRowCache.hitCount());
+            result.putInt(VeggieContract.EXTRA_MISSES, mRowCache.missCount());
+            result.putInt(VeggieContract.EXTRA_EVICTIONS, mRowCache.evictionCount());
+            result.putInt(VeggieContract.EXTRA_SIZE, mRowCache.size());
+            return result;
+        }
+        if (VeggieContract.METHOD_INVENTORY_TOTALS.equals(method)) {
+            return queryInventoryTotals();
+        }
+        if (VeggieContract.METHOD_COMPACT_LEDGER.equals(method)) {
+            int retentionDays = extras == null ? StockLedger.DEFAULT_RETENTION_DAYS
+                    : extras.getInt(VeggieContract.EXTRA_RETENTION_DAYS,
+                    StockLedger.DEFAULT_RETENTION_DAYS);
+            return compactLedger(retentionDays);
+        }
+        if (VeggieContract.METHOD_TRANSFER.equals(method)) {
+            if (extras == null || !extras.containsKey(VeggieEntry._ID)
+                    || !extras.containsKey(VeggieContract.EXTRA_FROM_LOCATION_ID)
+                    || !extras.containsKey(VeggieContract.EXTRA_TO_LOCATION_ID)) {
+                throw new IllegalArgumentException("Transfer requires a veggie id and two locations");
+            }
+            return transferStock(extras.getLong(VeggieEntry._ID),
+                    extras.getLong(VeggieContract.EXTRA_FROM_LOCATION_ID),
+                    extras.getLong(VeggieContract.EXTRA_TO_LOCATION_ID),
+                    extras.getInt(VeggieContract.EXTRA_UNITS, 1));
+        }
+        return super.call(method, arg, extras);
+    }
 
     /**
-     * URI matcher code for the content URI for the veggies table
+     * Answer {@link VeggieContract#METHOD_METRICS}: apply the new slow call threshold if there
+     * is one, and return the counters, clearing them afterwards if asked to.
      */
-    private static final int VEGGIES = 100;
+    private Bundle getMetrics(Bundle extras) {
+        if (extras != null && extras.containsKey(VeggieContract.EXTRA_SLOW_THRESHOLD_MS)) {
+            mMetrics.setSlowThresholdMs(extras.getLong(VeggieContract.EXTRA_SLOW_THRESHOLD_MS));
+        }
+        Bundle result = mMetrics.toBundle();
+        if (extras != null && extras.getBoolean(VeggieContract.EXTRA_RESET)) {
+            mMetrics.reset();
+        }
+        return result;
+    }
 
     /**
-     * URI matcher code for the content URI for a single veggie in the veggies table
+     * Return the name {@link #mMetrics} counts calls of the given operation on the URI under,
+     * made of the URI pattern and the operation, such as "veggies/# query".
      */
-    private static final int VEGGIE_ID = 101;
+    private static String getOperationName(Uri uri, String operation) {
+        return sUriPatterns.get(sUriMatcher.match(uri), "unknown") + " " + operation;
+    }
 
     /**
-     * UriMatcher object to match a content URI to a corresponding code.
-     * The input passed into the constructor represents the code to return for the root URI.
-     * It's common to use NO_MATCH as the input for this case.
+     * Count a call that started at the given {@link System#nanoTime} and just finished, and log
+     * it if it was slow. Calls that throw are not counted.
      */
-    private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+    private void recordCall(String operation, Uri uri, long start, int rows) {
+        long elapsedNanos = System.nanoTime() - start;
+        if (mMetrics.recordCall(operation, elapsedNanos, rows)) {
+            Log.w(LOG_TAG, "Slow " + operation + ": "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms, " + rows + " rows"
+                    + (uri != null ? ", " + uri : ""));
+        }
+    }
 
-    // Static initializer. This is run the first time anything is called from this class.
-    static {
-        // The calls to addURI() go here, for all of the content URI patterns that the provider
-        // should recognize. All paths added to the UriMatcher have a corresponding code to return
-        // when a match is found.
+    /**
+     * Take the given number of units of a veggie out of stock. The decrement and the read of the
+     * new stock level run in one transaction, so the returned quantity is exactly the result of
+     * this sale. Return a Bundle holding {@link VeggieContract#EXTRA_SOLD} and
+     * {@link VeggieContract#EXTRA_QUANTITY}.
+     */
+    private Bundle sellVeggie(long id, int units) {
+        // Check that the number of units is positive
+        if (units <= 0) {
+            throw new IllegalArgumentException("Sale requires a positive number of units");
+        }
 
-        // The content URI of the form "content://com.example.android.veggies/veggies" will map to the
-        // integer code {@link #VEGGIES}. This URI is used to provide access to MULTIPLE rows
-        // of the veggies table.
-        sUriMatcher.addURI(VeggieContract.CONTENT_AUTHORITY, VeggieContract.PATH_VEGGIES, VEGGIES);
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // The content URI of the form "content://com.example.android.veggies/veggies/#" will map to the
-        // integer code {@link #VEGGIE_ID}. This URI is used to provide access to ONE single row
-        // of the veggies table.
-        //
-        // In this case, the "#" wildcard is used where "#" can be substituted for an integer.
-        // For example, "content://com.example.android.veggies/veggies/3" matches, but
-        // "content://com.example.android.veggies/veggies" (without a number at the end) doesn't match.
-        sUriMatcher.addURI(VeggieContract.CONTENT_AUTHORITY, VeggieContract.PATH_VEGGIES + "/#", VEGGIE_ID);
+        boolean sold;
+        long quantity;
+        database.beginTransaction();
+        SQLiteStatement sell = mStatements.acquire(database, SQL_SELL_VEGGIE);
+        SQLiteStatement select = mStatements.acquire(database, SQL_SELECT_QUANTITY);
+        StockLedger ledger = new StockLedger(database, mStatements);
+        try {
+            sell.bindLong(1, units);
+            sell.bindLong(2, id);
+            sell.bindLong(3, units);
+            sold = sell.executeUpdateDelete() == 1;
+            if (sold) {
+                ledger.record(id, -units, StockMovementEntry.REASON_SALE, System.currentTimeMillis());
+            }
+
+            select.bindLong(1, id);
+            try {
+                quantity = select.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                // There is no veggie with this id
+                quantity = -1;
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            mStatements.release(database, SQL_SELL_VEGGIE, sell);
+            mStatements.release(database, SQL_SELECT_QUANTITY, select);
+            ledger.close();
+            database.endTransaction();
+        }
+
+        // Only the sold row changed, so notify listeners of that row
+        if (sold) {
+            mRowCache.invalidate(id);
+            notifyChange(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, id),
+                    VeggieContract.CHANGE_UPDATE);
+            notifyLedgerChange();
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean(VeggieContract.EXTRA_SOLD, sold);
+        result.putInt(VeggieContract.EXTRA_QUANTITY, (int) quantity);
+        return result;
     }
 
     /**
-     * Database helper object
+     * Move the given number of units of a veggie from one location to another. Both levels
+     * change in one transaction, and only if the source holds enough units. The total on hand
+     * is unchanged, so the veggies table and the ledger are not touched. Return a Bundle
+     * holding {@link VeggieContract#EXTRA_TRANSFERRED}.
      */
-    private VeggieDbHelper mDbHelper;
+    private Bundle transferStock(long id, long fromLocationId, long toLocationId, int units) {
+        // Check that the number of units is positive and that the units really move
+        if (units <= 0) {
+            throw new IllegalArgumentException("Transfer requires a positive number of units");
+        }
+        if (fromLocationId == toLocationId) {
+            throw new IllegalArgumentException("Transfer requires two different locations");
+        }
 
-    @Override
-    public boolean onCreate() {
-        mDbHelper = new VeggieDbHelper(getContext());
-        return true;
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        boolean transferred;
+        database.beginTransaction();
+        StockLevels levels = new StockLevels(database, mStatements);
+        try {
+            if (!levels.hasLocation(fromLocationId) || !levels.hasLocation(toLocationId)) {
+                throw new IllegalArgumentException("Transfer requires existing locations");
+            }
+            transferred = levels.transfer(id, fromLocationId, toLocationId, units);
+            database.setTransactionSuccessful();
+        } finally {
+            levels.close();
+            database.endTransaction();
+        }
+
+        if (transferred) {
+            notifyStockLevelChange();
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean(VeggieContract.EXTRA_TRANSFERRED, transferred);
+        return result;
     }
 
-    @Override
-    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
-                        String sortOrder) {
-        // Get readable database
+    /**
+     * Add up the value and the number of units of all stock in one SQL query, so no rows have
+     * to be read into Java. Return a Bundle holding {@link VeggieContract#EXTRA_TOTAL_VALUE},
+     * {@link VeggieContract#EXTRA_TOTAL_QUANTITY} and {@link VeggieContract#EXTRA_VEGGIE_COUNT}.
+     */
+    private Bundle queryInventoryTotals() {
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
-        // This cursor will hold the result of the query
-        Cursor cursor;
+        Bundle result = new Bundle();
+        Cursor cursor = database.rawQuery(SQL_INVENTORY_TOTALS, null);
+        try {
+            cursor.moveToFirst();
+            result.putLong(VeggieContract.EXTRA_TOTAL_VALUE, cursor.getLong(0));
+            result.putLong(VeggieContract.EXTRA_TOTAL_QUANTITY, cursor.getLong(1));
+            result.putInt(VeggieContract.EXTRA_VEGGIE_COUNT, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
 
-        // Figure out if the URI matcher can match the URI to a specific code
-        int match = sUriMatcher.match(uri);
-        switch (match) {
-            case VEGGIES:
-                // For the VEGGIES code, query the veggies table directly with the given
-                // projection, selection, selection arguments, and sort order. The cursor
-                // could contain multiple rows of the veggies table.
-                cursor = database.query(VeggieEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
-                break;
-            case VEGGIE_ID:
-                // For the VEGGIE_ID code, extract out the ID from the URI.
-                // For an example URI such as "content://com.example.android.veggies/veggies/3",
-                // the selection will be "_id=?" and the selection argument will be a
-                // String array containing the actual ID of 3 in this case.
-                //
-                // For every "?" in the selection, we need to have an element in the selection
-                // arguments that will fill in the "?". Since we have 1 question mark in the
-                // selection, we have 1 String in the selection arguments' String array.
-                selection = VeggieEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+    /**
+     * Fold the stock movements older than the given number of days into daily snapshots, so
+     * reading the ledger stays bounded however long the app is used. Return a Bundle holding
+     * {@link VeggieContract#EXTRA_ROWS_COMPACTED}.
+     */
+    private Bundle compactLedger(int retentionDays) {
+        long cutoff = StockLedger.compactionCutoff(System.currentTimeMillis(), retentionDays);
 
-                // This will perform a query on the veggies table where the _id equals 3 to return a
-                // Cursor containing that row of the table.
-                cursor = database.query(VeggieEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
-                break;
-            default:
-                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rowsCompacted;
+        database.beginTransaction();
+        try {
+            rowsCompacted = StockLedger.compact(database, cutoff);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
-        // Set notification URI on the Cursor,
-        // so we know what content URI the Cursor was created for.
-        // If the data at this URI changes, then we know we need to update the Cursor.
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
 
-        // Return the cursor
-        return cursor;
+        // Quantities are unchanged, only the ledger tables are
+        if (rowsCompacted != 0) {
+            getContext().getContentResolver().notifyChange(StockMovementEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(StockSnapshotEntry.CONTENT_URI, null);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(VeggieContract.EXTRA_ROWS_COMPACTED, rowsCompacted);
+        return result;
     }
 
-    @Override
-    public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case VEGGIES:
-                return insertVeggie(uri, contentValues);
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+    /**
+     * Notify listeners of {@link StockMovementEntry#CONTENT_URI} that movements were appended,
+     * and of {@link StockLevelEntry#CONTENT_URI}, since every movement moves the stock levels
+     * too. Inside an {@link #applyBatch} this is deferred like {@link #notifyChange}.
+     */
+    private void notifyLedgerChange() {
+        if (Boolean.TRUE.equals(mApplyingBatch.get())) {
+            mBatchChanged.set(true);
+            return;
         }
+        getContext().getContentResolver().notifyChange(StockMovementEntry.CONTENT_URI, null);
+        getContext().getContentResolver().notifyChange(StockLevelEntry.CONTENT_URI, null);
     }
 
     /**
-     * Insert a veggie into the database with the given content values. Return the new content URI
-     * for that specific row in the database.
+     * Notify listeners of {@link StockSnapshotEntry#CONTENT_URI} that snapshots were removed.
+     * Inside an {@link #applyBatch} this is deferred like {@link #notifyChange}.
      */
-    private Uri insertVeggie(Uri uri, ContentValues values) {
-        // Check that the name is not null
-        String name = values.getAsString(VeggieEntry.COLUMN_VEGGIE_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Veggie requires a name");
+    private void notifySnapshotChange() {
+        if (Boolean.TRUE.equals(mApplyingBatch.get())) {
+            mBatchChanged.set(true);
+            return;
         }
+        getContext().getContentResolver().notifyChange(StockSnapshotEntry.CONTENT_URI, null);
+    }
 
-        // If the price is provided, check that it is greater than or equal to $0
-        Integer price = values.getAsInteger(VeggieEntry.COLUMN_VEGGIE_PRICE);
-        if (price != null && price < 0) {
-            throw new IllegalArgumentException("Veggie requires valid price");
+    /**
+     * Notify listeners of {@link StockLevelEntry#CONTENT_URI} that stock levels changed. Inside
+     * an {@link #applyBatch} this is deferred like {@link #notifyChange}.
+     */
+    private void notifyStockLevelChange() {
+        if (Boolean.TRUE.equals(mApplyingBatch.get())) {
+            mBatchChanged.set(true);
+            return;
         }
+        getContext().getContentResolver().notifyChange(StockLevelEntry.CONTENT_URI, null);
+    }
 
-        // If the quantity is provided, check that it is greater than or equal to $0
-        Integer quantity = values.getAsInteger(VeggieEntry.COLUMN_VEGGIE_QUANTITY);
-        if (quantity != null && quantity < 0) {
-            throw new IllegalArgumentException("Veggie requires valid quantity");
+    /**
+     * Notify listeners of {@link LocationEntry#CONTENT_URI} that locations were added. Inside an
+     * {@link #applyBatch} this is deferred like {@link #notifyChange}.
+     */
+    private void notifyLocationChange() {
+        if (Boolean.TRUE.equals(mApplyingBatch.get())) {
+            mBatchChanged.set(true);
+            return;
         }
+        getContext().getContentResolver().notifyChange(LocationEntry.CONTENT_URI, null);
+    }
 
-        // Get writable database
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
-
-        // Insert the new veggie with the given values
-        long id = database.insert(VeggieEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+    /**
+     * Notify listeners of {@link SupplierEntry#CONTENT_URI} that suppliers were added, changed
+     * or removed. Inside an {@link #applyBatch} this is deferred like {@link #notifyChange}.
+     */
+    private void notifySupplierChange() {
+        if (Boolean.TRUE.equals(mApplyingBatch.get())) {
+            mBatchChanged.set(true);
+            return;
         }
+        getContext().getContentResolver().notifyChange(SupplierEntry.CONTENT_URI, null);
+    }
 
-        // Notify all listeners that the data has changed for the veggie content URI
+    /**
+     * Notify all listeners that the data at the given URI has changed, unless an
+     * {@link #applyBatch} is in progress on this thread, in which case the notification is
+     * deferred until the batch commits.
+     * <p>
+     * For a single row URI the notification carries the kind of change in the
+     * {@link VeggieContract#PARAM_CHANGE} query parameter, so observers can patch just that row.
+     * Any other URI means "anything may have changed".
+     */
+    private void notifyChange(Uri uri, String change) {
+        if (Boolean.TRUE.equals(mApplyingBatch.get())) {
+            mBatchChanged.set(true);
+            return;
+        }
+        if (sUriMatcher.match(uri) == VEGGIE_ID) {
+            uri = uri.buildUpon()
+                    .clearQuery()
+                    .appendQueryParameter(VeggieContract.PARAM_CHANGE, change)
+                    .build();
+        } else {
+            uri = VeggieEntry.CONTENT_URI;
+        }
         getContext().getContentResolver().notifyChange(uri, null);
-
-        // Return the new URI with the ID (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, id);
     }
 
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsUpdated = doUpdate(uri, contentValues, selection, selectionArgs);
+        recordCall(getOperationName(uri, "update"), uri, start, rowsUpdated);
+        return rowsUpdated;
+    }
+
+    private int doUpdate(Uri uri, ContentValues contentValues, String selection,
+                         String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case VEGGIES:
                 return updateVeggie(uri, contentValues, selection, selectionArgs);
             case VEGGIE_ID:
+                // A new quantity alone, as sent by the quantity buttons, has its own statement
+                Integer quantity = contentValues.getAsInteger(VeggieEntry.COLUMN_VEGGIE_QUANTITY);
+                if (quantity != null && contentValues.size() == 1) {
+                    return updateVeggieQuantity(uri, ContentUris.parseId(uri), quantity);
+                }
+
                 // For the VEGGIE_ID code, extract out the ID from the URI,
                 // so we know which row to update. Selection will be "_id=?" and selection
                 // arguments will be a String array containing the actual ID.
                 selection = VeggieEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 return updateVeggie(uri, contentValues, selection, selectionArgs);
+            case SUPPLIERS:
+                return updateSupplier(contentValues, selection, selectionArgs);
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                return updateSupplier(contentValues, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
@@ -209,8 +1753,8 @@ public class VeggieProvider extends ContentProvider {
         // If the {@link VeggieEntry#COLUMN_VEGGIE_PRICE} key is present,
         // check that the price value is valid.
         if (values.containsKey(VeggieEntry.COLUMN_VEGGIE_PRICE)) {
-            // Check that the price is greater than or equal to $0
-            Integer price = values.getAsInteger(VeggieEntry.COLUMN_VEGGIE_PRICE);
+            // Check that the price is a whole number of cents, 0 or more
+            Long price = values.getAsLong(VeggieEntry.COLUMN_VEGGIE_PRICE);
             if (price != null && price < 0) {
                 throw new IllegalArgumentException("Veggie requires valid price");
             }
@@ -226,6 +1770,22 @@ public class VeggieProvider extends ContentProvider {
             }
         }
 
+        // If the {@link VeggieEntry#COLUMN_VEGGIE_SKU} key is present, check that the code is
+        // either null, which clears it, or not blank.
+        if (values.containsKey(VeggieEntry.COLUMN_VEGGIE_SKU)) {
+            checkSku(values.getAsString(VeggieEntry.COLUMN_VEGGIE_SKU));
+        }
+
+        // If either supplier key is present, check that both are there and not null. Together
+        // they name the supplier the veggies move to.
+        if (values.containsKey(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME)
+                || values.containsKey(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE)) {
+            if (values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME) == null
+                    || values.getAsString(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE) == null) {
+                throw new IllegalArgumentException("Veggie requires a supplier name and phone");
+            }
+        }
+
         // If there are no values to update, then don't try to update the database
         if (values.size() == 0) {
             return 0;
@@ -234,21 +1794,144 @@ public class VeggieProvider extends ContentProvider {
         // Otherwise, get writable database to update the data
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(VeggieEntry.TABLE_NAME, values, selection, selectionArgs);
+        // A new quantity is an adjustment; record how far it moves each row before the rows
+        // are overwritten, in the same transaction as the update
+        Integer quantity = values.getAsInteger(VeggieEntry.COLUMN_VEGGIE_QUANTITY);
+        int adjustments = 0;
+        int rowsUpdated;
+        database.beginTransaction();
+        StockLedger ledger = new StockLedger(database, mStatements);
+        SupplierDirectory suppliers = new SupplierDirectory(database, mStatements);
+        try {
+            if (quantity != null) {
+                adjustments = ledger.recordAdjustments(selection, selectionArgs, quantity,
+                        System.currentTimeMillis());
+            }
+
+            // Perform the update on the database and get the number of rows affected
+            rowsUpdated = database.update(VeggieEntry.TABLE_NAME,
+                    resolveSupplier(values, suppliers), selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            ledger.close();
+            suppliers.close();
+            database.endTransaction();
+        }
+        if (suppliers.hasInserted()) {
+            notifySupplierChange();
+        }
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateRowCache(uri);
+            notifyChange(uri, VeggieContract.CHANGE_UPDATE);
+        }
+        if (adjustments != 0) {
+            notifyLedgerChange();
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
 
+    /**
+     * Set the quantity of a single veggie with statements from {@link #mStatements}, recording
+     * the change as an adjustment like {@link #updateVeggie} does. Return the number of rows
+     * updated, 0 if there is no such veggie.
+     */
+    private int updateVeggieQuantity(Uri uri, long id, int quantity) {
+        // Check that the quantity is greater than or equal to 0
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Veggie requires valid quantity");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rowsUpdated = 0;
+        boolean adjusted = false;
+        database.beginTransaction();
+        SQLiteStatement select = mStatements.acquire(database, SQL_SELECT_QUANTITY);
+        SQLiteStatement update = mStatements.acquire(database, SQL_UPDATE_QUANTITY);
+        StockLedger ledger = new StockLedger(database, mStatements);
+        try {
+            select.bindLong(1, id);
+            Long oldQuantity;
+            try {
+                oldQuantity = select.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                // There is no veggie with this id
+                oldQuantity = null;
+            }
+            if (oldQuantity != null) {
+                update.bindLong(1, quantity);
+                update.bindLong(2, id);
+                rowsUpdated = update.executeUpdateDelete();
+                if (quantity != oldQuantity) {
+                    ledger.record(id, quantity - oldQuantity, StockMovementEntry.REASON_ADJUST,
+                            System.currentTimeMillis());
+                    adjusted = true;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            mStatements.release(database, SQL_SELECT_QUANTITY, select);
+            mStatements.release(database, SQL_UPDATE_QUANTITY, update);
+            ledger.close();
+            database.endTransaction();
+        }
+
+        if (rowsUpdated != 0) {
+            invalidateRowCache(uri);
+            notifyChange(uri, VeggieContract.CHANGE_UPDATE);
+        }
+        if (adjusted) {
+            notifyLedgerChange();
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Update suppliers with the given content values. A changed name or phone shows in every
+     * veggie of the supplier at once, so veggie listeners are notified as well. Throws
+     * {@link android.database.SQLException} if the change would make two suppliers equal.
+     * Return the number of suppliers updated.
+     */
+    private int updateSupplier(ContentValues values, String selection, String[] selectionArgs) {
+        // The name and phone are NOT NULL in the schema
+        if ((values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)
+                && values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME) == null)
+                || (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_PHONE)
+                && values.getAsString(SupplierEntry.COLUMN_SUPPLIER_PHONE) == null)) {
+            throw new IllegalArgumentException("Supplier requires a name and a phone");
+        }
+
+        // If there are no values to update, then don't try to update the database
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsUpdated = database.update(SupplierEntry.TABLE_NAME, values, selection,
+                selectionArgs);
+        if (rowsUpdated != 0) {
+            // Cached veggie rows hold the old supplier columns
+            mRowCache.invalidateAll();
+            notifySupplierChange();
+            notifyChange(VeggieEntry.CONTENT_URI, VeggieContract.CHANGE_UPDATE);
+        }
+        return rowsUpdated;
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsDeleted = doDelete(uri, selection, selectionArgs);
+        recordCall(getOperationName(uri, "delete"), uri, start, rowsDeleted);
+        return rowsDeleted;
+    }
+
+    private int doDelete(Uri uri, String selection, String[] selectionArgs) {
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
@@ -263,10 +1946,17 @@ public class VeggieProvider extends ContentProvider {
                 break;
             case VEGGIE_ID:
                 // Delete a single row given by the ID in the URI
-                selection = VeggieEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                rowsDeleted = database.delete(VeggieEntry.TABLE_NAME, selection, selectionArgs);
+                SQLiteStatement delete = mStatements.acquire(database, SQL_DELETE_VEGGIE);
+                try {
+                    delete.bindLong(1, ContentUris.parseId(uri));
+                    rowsDeleted = delete.executeUpdateDelete();
+                } finally {
+                    mStatements.release(database, SQL_DELETE_VEGGIE, delete);
+                }
                 break;
+            case SUPPLIERS:
+            case SUPPLIER_ID:
+                return deleteSupplier(uri, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
@@ -274,13 +1964,35 @@ public class VeggieProvider extends ContentProvider {
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateRowCache(uri);
+            notifyChange(uri, VeggieContract.CHANGE_DELETE);
+            // The ledger, snapshots and stock levels of deleted veggies were deleted with them
+            notifyLedgerChange();
+            notifySnapshotChange();
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Delete suppliers. The foreign key of the veggies table keeps a supplier from being deleted
+     * while veggies refer to it, in which case an {@link android.database.SQLException} is thrown.
+     * Return the number of suppliers deleted.
+     */
+    private int deleteSupplier(Uri uri, String selection, String[] selectionArgs) {
+        if (sUriMatcher.match(uri) == SUPPLIER_ID) {
+            selection = SupplierEntry._ID + "=?";
+            selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+        }
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+        if (rowsDeleted != 0) {
+            notifySupplierChange();
+        }
+        return rowsDeleted;
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
@@ -289,6 +2001,34 @@ public class VeggieProvider extends ContentProvider {
                 return VeggieEntry.CONTENT_LIST_TYPE;
             case VEGGIE_ID:
                 return VeggieEntry.CONTENT_ITEM_TYPE;
+            case VEGGIE_SEARCH:
+                return VeggieEntry.CONTENT_LIST_TYPE;
+            case VEGGIE_STATS:
+                return VeggieStatsEntry.CONTENT_ITEM_TYPE;
+            case VEGGIE_LOW_STOCK:
+                return VeggieEntry.CONTENT_LIST_TYPE;
+            case VEGGIE_SKU:
+                return VeggieEntry.CONTENT_ITEM_TYPE;
+            case STOCK_MOVEMENTS:
+                return StockMovementEntry.CONTENT_LIST_TYPE;
+            case STOCK_SNAPSHOTS:
+                return StockSnapshotEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_VEGGIES:
+                return VeggieEntry.CONTENT_LIST_TYPE;
+            case VEGGIE_STOCK_LEVELS:
+                return StockLevelEntry.CONTENT_LIST_TYPE;
+            case LOCATIONS:
+                return LocationEntry.CONTENT_LIST_TYPE;
+            case LOCATION_ID:
+                return LocationEntry.CONTENT_ITEM_TYPE;
+            case LOCATION_STOCK_LEVELS:
+                return StockLevelEntry.CONTENT_LIST_TYPE;
+            case STOCK_LEVELS:
+                return StockLevelEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -0,0 +1,175 @@
+package com.example.android.inventory2.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+/**
+ * LRU cache of whole veggies rows, keyed by _ID, used by {@link VeggieProvider} to answer
+ * single-item queries without going to SQLite.
+ * <p>
+ * Writers must call {@link #invalidate} or {@link #invalidateAll} after their change has been
+ * committed. Every invalidation bumps a generation counter, and a row read from the database is
+ * only cached if no invalidation happened since the read started, so a reader that raced a
+ * writer can never put a stale row back into the cache.
+ */
+class VeggieRowCache {
+
+    /**
+     * Every column of a veggie, with its supplier joined in, in the order the cached values are
+     * stored
+     */
+    static final String[] ALL_COLUMNS = {
+            VeggieEntry._ID,
+            VeggieEntry.COLUMN_VEGGIE_NAME,
+            VeggieEntry.COLUMN_VEGGIE_PRICE,
+            VeggieEntry.COLUMN_VEGGIE_QUANTITY,
+            VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID,
+            VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME,
+            VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE,
+            VeggieEntry.COLUMN_VEGGIE_SKU};
+
+    /**
+     * Cached rows, each holding the values of {@link #ALL_COLUMNS}
+     */
+    private final LruCache<Long, Object[]> mRows;
+
+    /**
+     * Number of invalidations so far. Guarded by this cache.
+     */
+    private long mGeneration;
+
+    /**
+     * Constructs a cache that holds up to the given number of rows.
+     */
+    VeggieRowCache(int maxRows) {
+        mRows = new LruCache<>(maxRows);
+    }
+
+    /**
+     * Return the current generation. Read it before querying the database for a row that will be
+     * passed to {@link #put}.
+     */
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * Return the cached values of the row with the given ID, or null on a miss.
+     */
+    Object[] get(long id) {
+        return mRows.get(id);
+    }
+
+    /**
+     * Cache the row the cursor is on, which must have been queried with {@link #ALL_COLUMNS},
+     * unless the cache was invalidated after the given generation was read. Return the values.
+     */
+    Object[] put(Cursor cursor, long generation) {
+        Object[] row = new Object[ALL_COLUMNS.length];
+        for (int i = 0; i < row.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    row[i] = null;
+                    break;
+            }
+        }
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mRows.put((Long) row[0], row);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Drop the row with the given ID.
+     */
+    synchronized void invalidate(long id) {
+        mGeneration++;
+        mRows.remove(id);
+    }
+
+    /**
+     * Drop every row.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mRows.evictAll();
+    }
+
+    /**
+     * Build a one-row cursor holding the given columns of a cached row. Return null if the
+     * projection asks for a column that is not cached.
+     */
+    static MatrixCursor toCursor(Object[] row, String[] projection) {
+        if (projection == null) {
+            projection = ALL_COLUMNS;
+        }
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            int column = indexOf(projection[i]);
+            if (column < 0) {
+                return null;
+            }
+            values[i] = row[column];
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+
+    /**
+     * Return true if every column in the projection is cached.
+     */
+    static boolean covers(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (indexOf(column) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            if (ALL_COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int hitCount() {
+        return mRows.hitCount();
+    }
+
+    int missCount() {
+        return mRows.missCount();
+    }
+
+    int evictionCount() {
+        return mRows.evictionCount();
+    }
+
+    int size() {
+        return mRows.size();
+    }
+}
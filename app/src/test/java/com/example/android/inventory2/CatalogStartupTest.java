@@ -0,0 +1,181 @@
+package com.example.android.inventory2;
+
+import android.content.Context;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.TestVeggies;
+import com.example.android.inventory2.data.VeggieProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local startup tests for {@link CatalogActivity} and its {@link CatalogSnapshot}, run through
+ * Robolectric. Background work is held back to stand in for a database that is still opening,
+ * and with -Pbenchmark the time from launch to the first rows in the list is printed for a
+ * start with and without a snapshot.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CatalogStartupTest {
+
+    /**
+     * Longest wait for the live rows to replace the snapshot, or to arrive without one
+     */
+    private static final long RECONCILE_TIMEOUT_MS = 5000;
+
+    /**
+     * Whether to print the time to first content, set by the -Pbenchmark build flag
+     */
+    private static final boolean REPORT_TIMINGS = Boolean.getBoolean("benchmark");
+
+    private static final String DEFAULT_KEY = CatalogActivity.getSnapshotKey(
+            VeggieContract.SORT_ID, CatalogActivity.ALL_SUPPLIERS);
+
+    private File mSnapshotFile;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mSnapshotFile = CatalogSnapshot.getFile(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        Robolectric.getBackgroundThreadScheduler().unPause();
+        mSnapshotFile.delete();
+    }
+
+    @Test
+    public void snapshot_roundTrips() {
+        List<Veggie> veggies = Arrays.asList(new Veggie(1, "Carrot", 400, 3),
+                new Veggie(2, "Leek", 250, 0), new Veggie(3, "Onion", 100, 9));
+        CatalogSnapshot.write(mSnapshotFile, DEFAULT_KEY, veggies, 2);
+
+        assertEquals(veggies.subList(0, 2), CatalogSnapshot.read(mSnapshotFile, DEFAULT_KEY));
+        assertNull(CatalogSnapshot.read(mSnapshotFile, "name/-1"));
+
+        // An empty catalog leaves no snapshot behind
+        CatalogSnapshot.write(mSnapshotFile, DEFAULT_KEY, new ArrayList<Veggie>(), 2);
+        assertNull(CatalogSnapshot.read(mSnapshotFile, DEFAULT_KEY));
+    }
+
+    @Test
+    public void coldStart_drawsSnapshotBeforeTheDatabaseAnswers() {
+        CatalogSnapshot.write(mSnapshotFile, DEFAULT_KEY, veggies(50), 50);
+
+        // The database is empty, so the rows can only have come from the snapshot
+        CatalogActivity activity = launchUntilFirstContent("snapshot");
+        assertEquals(50, activity.mAdapter.getItemCount());
+    }
+
+    @Test
+    public void coldStart_withoutSnapshot_waitsForTheDatabase() {
+        insertVeggie("Carrot");
+
+        CatalogActivity activity = launchUntilFirstContent("database");
+        assertEquals(1, activity.mAdapter.getItemCount());
+    }
+
+    @Test
+    public void liveRows_replaceTheSnapshot() {
+        long carrotId = insertVeggie("Carrot");
+        insertVeggie("Leek");
+        // The snapshot has an outdated Carrot and a veggie deleted since
+        CatalogSnapshot.write(mSnapshotFile, DEFAULT_KEY, Arrays.asList(
+                new Veggie(carrotId, "Carrot", 400, 7), new Veggie(carrotId + 100, "Kale", 100, 1)),
+                50);
+
+        Robolectric.getBackgroundThreadScheduler().pause();
+        CatalogActivity activity = Robolectric.setupActivity(CatalogActivity.class);
+        assertEquals("Kale", activity.mAdapter.getCurrentList().get(1).name);
+
+        Robolectric.getBackgroundThreadScheduler().unPause();
+        List<String> names = Arrays.asList("Carrot", "Leek");
+        long deadline = System.currentTimeMillis() + RECONCILE_TIMEOUT_MS;
+        // The adapter diffs the two lists on a thread of its own
+        while (!names.equals(names(activity.mAdapter.getCurrentList()))
+                && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            Thread.yield();
+        }
+        assertEquals(names, names(activity.mAdapter.getCurrentList()));
+        assertEquals(3, activity.mAdapter.getCurrentList().get(0).quantity);
+    }
+
+    @Test
+    public void snapshotOfAnotherView_isNotShown() {
+        CatalogSnapshot.write(mSnapshotFile,
+                CatalogActivity.getSnapshotKey(VeggieContract.SORT_NAME, CatalogActivity.ALL_SUPPLIERS),
+                veggies(5), 50);
+
+        Robolectric.getBackgroundThreadScheduler().pause();
+        CatalogActivity activity = Robolectric.setupActivity(CatalogActivity.class);
+        assertEquals(0, activity.mAdapter.getItemCount());
+    }
+
+    /**
+     * Launch the catalog with the background tasks held back and run it until the list first
+     * has rows, whether they come from the snapshot or from the database. The time from launch
+     * to that point is reported when the benchmark flag is set, so both sources are measured
+     * up to the same boundary.
+     */
+    private static CatalogActivity launchUntilFirstContent(String source) {
+        Robolectric.getBackgroundThreadScheduler().pause();
+        long start = System.nanoTime();
+        CatalogActivity activity = Robolectric.setupActivity(CatalogActivity.class);
+        if (activity.mAdapter.getItemCount() == 0) {
+            // Nothing to draw yet, so let the catalog query run and deliver its rows
+            Robolectric.getBackgroundThreadScheduler().unPause();
+            long deadline = System.currentTimeMillis() + RECONCILE_TIMEOUT_MS;
+            while (activity.mAdapter.getItemCount() == 0
+                    && System.currentTimeMillis() < deadline) {
+                ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+                Thread.yield();
+            }
+        }
+        long firstContentNanos = System.nanoTime() - start;
+
+        if (REPORT_TIMINGS) {
+            System.out.println(String.format(Locale.US, "time to first content from %s: %.1f ms",
+                    source, firstContentNanos / 1e6));
+        }
+        return activity;
+    }
+
+    private static List<Veggie> veggies(int count) {
+        List<Veggie> veggies = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            veggies.add(new Veggie(i, "Veggie " + i, 100, i % 10));
+        }
+        return veggies;
+    }
+
+    private static List<String> names(List<Veggie> veggies) {
+        List<String> names = new ArrayList<>(veggies.size());
+        for (Veggie veggie : veggies) {
+            names.add(veggie.name);
+        }
+        return names;
+    }
+
+    private static long insertVeggie(String name) {
+        Context context = RuntimeEnvironment.application;
+        return Long.parseLong(TestVeggies.insert(context.getContentResolver(), name)
+                .getLastPathSegment());
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.android.inventory2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PriceFormatter}.
+ */
+public class PriceFormatterTest {
+
+    @Test
+    public void format_writesTwoDecimals() {
+        assertEquals("4.50", PriceFormatter.format(450));
+        assertEquals("0.05", PriceFormatter.format(5));
+        assertEquals("0.00", PriceFormatter.format(0));
+        assertEquals("-1.25", PriceFormatter.format(-125));
+        assertEquals("1234567.89", PriceFormatter.format(123456789));
+    }
+
+    @Test
+    public void format_reusesCachedStrings() {
+        assertSame(PriceFormatter.format(199), PriceFormatter.format(199));
+    }
+
+    @Test
+    public void parse_readsDollarsIntoCents() {
+        assertEquals(400, PriceFormatter.parse("4"));
+        assertEquals(450, PriceFormatter.parse("4.5"));
+        assertEquals(450, PriceFormatter.parse(" 4.50 "));
+        assertEquals(5, PriceFormatter.parse(".05"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_rejectsFractionsOfACent() {
+        PriceFormatter.parse("4.555");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_rejectsText() {
+        PriceFormatter.parse("four");
+    }
+}
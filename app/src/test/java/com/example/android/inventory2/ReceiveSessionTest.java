@@ -0,0 +1,337 @@
+package com.example.android.inventory2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.StockMovementEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.TestVeggies;
+import com.example.android.inventory2.data.VeggieProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ReceiveSession}, run against the real {@link VeggieProvider}
+ * through Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReceiveSessionTest {
+
+    private final Queue<Runnable> mWriterQueue = new ArrayDeque<>();
+
+    /**
+     * True to refuse every write, as a full write queue does
+     */
+    private boolean mRejectWrites;
+
+    /**
+     * Every scan the session reported, as "id:units" or "unknown:sku"
+     */
+    private final List<String> mScans = new ArrayList<>();
+
+    private ContentResolver mResolver;
+
+    private ReceiveSession mSession;
+
+    private long mCarrotId;
+
+    private long mLeekId;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        VeggieRepository repository = new VeggieRepository(mResolver, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (mRejectWrites) {
+                    throw new RejectedExecutionException();
+                }
+                mWriterQueue.add(command);
+            }
+        });
+        // Reads run at once; their results still arrive through the main looper
+        mSession = new ReceiveSession(RuntimeEnvironment.application, repository, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        mSession.setListener(new ReceiveSession.Listener() {
+            @Override
+            public void onReceived(long veggieId, String name, int unitsReceived) {
+                mScans.add(veggieId + ":" + unitsReceived);
+            }
+
+            @Override
+            public void onUnknownSku(String sku) {
+                mScans.add("unknown:" + sku);
+            }
+
+            @Override
+            public void onReceiveFailed(int units) {
+                mScans.add("failed:" + units);
+            }
+        });
+
+        mCarrotId = insertVeggie("Carrot", "4001");
+        mLeekId = insertVeggie("Leek", "4002");
+    }
+
+    @Test
+    public void scansOfKnownSkus_areWrittenAsOneBatch() {
+        mSession.start();
+        ShadowLooper.runUiThreadTasks();
+
+        // Known codes are resolved from the map, without waiting for a query
+        mSession.scan("4001");
+        mSession.scan("4001\n");
+        mSession.scan("4002");
+        mSession.scan("4001");
+        assertEquals(4, mScans.size());
+        assertEquals(mCarrotId + ":3", mScans.get(3));
+
+        // Nothing is written until the flush delay has passed, and then all at once
+        assertTrue(mWriterQueue.isEmpty());
+        ShadowLooper.idleMainLooper(ReceiveSession.FLUSH_DELAY_MS);
+        assertEquals(1, mWriterQueue.size());
+        mWriterQueue.poll().run();
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals(5 + 3, queryQuantity(mCarrotId));
+        assertEquals(5 + 1, queryQuantity(mLeekId));
+        assertEquals(2, countReceiveMovements());
+    }
+
+    @Test
+    public void fullBatch_isWrittenWithoutWaiting() {
+        mSession.start();
+        ShadowLooper.runUiThreadTasks();
+
+        for (int i = 0; i < ReceiveSession.MAX_PENDING_UNITS; i++) {
+            mSession.scan("4002");
+        }
+        assertEquals(1, mWriterQueue.size());
+        mWriterQueue.poll().run();
+        assertEquals(5 + ReceiveSession.MAX_PENDING_UNITS, queryQuantity(mLeekId));
+    }
+
+    @Test
+    public void skuGivenDuringSession_isLookedUp() {
+        mSession.start();
+        ShadowLooper.runUiThreadTasks();
+
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_SKU, "4003");
+        mResolver.update(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, mCarrotId), values,
+                null, null);
+
+        mSession.scan("4003");
+        mSession.scan("9999");
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(mCarrotId + ":1", mScans.get(0));
+        assertEquals("unknown:9999", mScans.get(1));
+
+        mSession.flush();
+        mWriterQueue.poll().run();
+        assertEquals(6, queryQuantity(mCarrotId));
+    }
+
+    @Test
+    public void skuMovedDuringSession_creditsItsNewVeggie() {
+        mSession.start();
+        ShadowLooper.runUiThreadTasks();
+        mSession.scan("4001");
+        assertEquals(mCarrotId + ":1", mScans.get(0));
+
+        // The code goes from the carrot to the leek
+        setSku(mCarrotId, null);
+        setSku(mLeekId, "4001");
+        ShadowLooper.runUiThreadTasks();
+
+        mSession.scan("4001");
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(mLeekId + ":1", mScans.get(1));
+
+        // Once cleared, the code belongs to nobody
+        setSku(mLeekId, null);
+        ShadowLooper.runUiThreadTasks();
+        mSession.scan("4001");
+        ShadowLooper.runUiThreadTasks();
+        assertEquals("unknown:4001", mScans.get(2));
+        mSession.stop();
+    }
+
+    @Test
+    public void veggieDeletedDuringSession_losesOnlyItsOwnUnits() {
+        mSession.start();
+        ShadowLooper.runUiThreadTasks();
+        mSession.scan("4001");
+        mSession.scan("4002");
+        mSession.scan("4002");
+        mResolver.delete(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, mCarrotId), null,
+                null);
+
+        // The batch is rolled back, then the leek's units are written on their own
+        mSession.flush();
+        mWriterQueue.poll().run();
+        ShadowLooper.runUiThreadTasks();
+        ShadowLooper.runUiThreadTasks();
+        assertEquals("failed:1", mScans.get(3));
+        assertEquals(0, mSession.getReceivedUnits(mCarrotId));
+        assertEquals(1, mWriterQueue.size());
+        mWriterQueue.poll().run();
+        assertEquals(5 + 2, queryQuantity(mLeekId));
+        assertEquals(2, mSession.getReceivedUnits(mLeekId));
+
+        // The carrot's code no longer resolves to the deleted veggie
+        mSession.scan("4001");
+        ShadowLooper.runUiThreadTasks();
+        assertEquals("unknown:4001", mScans.get(4));
+        assertTrue(mWriterQueue.isEmpty());
+    }
+
+    @Test
+    public void refusedWrite_isTriedAgain() {
+        mSession.start();
+        ShadowLooper.runUiThreadTasks();
+        mSession.scan("4001");
+        mSession.scan("4001");
+
+        mRejectWrites = true;
+        mSession.flush();
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(2, mScans.size());
+        assertEquals(2, mSession.getReceivedUnits(mCarrotId));
+
+        // Once the queue has room the units are written after all
+        mRejectWrites = false;
+        ShadowLooper.idleMainLooper(ReceiveSession.FLUSH_DELAY_MS);
+        assertEquals(1, mWriterQueue.size());
+        mWriterQueue.poll().run();
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(5 + 2, queryQuantity(mCarrotId));
+        assertEquals(2, mScans.size());
+    }
+
+    @Test
+    public void writeRefusedEveryTime_isReportedLost() {
+        mSession.start();
+        ShadowLooper.runUiThreadTasks();
+        mSession.scan("4001");
+        mSession.scan("4002");
+
+        mRejectWrites = true;
+        mSession.flush();
+        ShadowLooper.runUiThreadTasks();
+        for (int i = 1; i < ReceiveSession.MAX_FLUSH_ATTEMPTS; i++) {
+            ShadowLooper.idleMainLooper(ReceiveSession.FLUSH_DELAY_MS);
+        }
+        assertEquals("failed:2", mScans.get(2));
+        assertEquals(0, mSession.getReceivedUnits(mCarrotId));
+        assertEquals(0, mSession.getReceivedUnits(mLeekId));
+        assertTrue(mWriterQueue.isEmpty());
+
+        // Nothing is left to try again
+        mRejectWrites = false;
+        ShadowLooper.idleMainLooper(ReceiveSession.FLUSH_DELAY_MS);
+        assertTrue(mWriterQueue.isEmpty());
+        assertEquals(3, mScans.size());
+    }
+
+    @Test
+    public void skuUri_findsTheVeggie() {
+        Uri uri = VeggieEntry.CONTENT_SKU_URI.buildUpon().appendPath("4002").build();
+        assertEquals(VeggieEntry.CONTENT_ITEM_TYPE, mResolver.getType(uri));
+        Cursor cursor = mResolver.query(uri, new String[]{VeggieEntry._ID}, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(mLeekId, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void duplicateSku_isNotInserted() {
+        ContentValues values = veggieValues("Onion", "4001");
+        assertNull(mResolver.insert(VeggieEntry.CONTENT_URI, values));
+
+        // Any number of veggies may have no code
+        assertNotNull(mResolver.insert(VeggieEntry.CONTENT_URI, veggieValues("Onion", null)));
+        assertNotNull(mResolver.insert(VeggieEntry.CONTENT_URI, veggieValues("Beet", null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blankSku_isRejected() {
+        mResolver.insert(VeggieEntry.CONTENT_URI, veggieValues("Onion", " "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blankSkuLookup_isRejected() {
+        mResolver.query(VeggieEntry.CONTENT_SKU_URI.buildUpon().appendPath(" ").build(),
+                new String[]{VeggieEntry._ID}, null, null, null);
+    }
+
+    private void setSku(long veggieId, String sku) {
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_SKU, sku);
+        mResolver.update(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, veggieId), values,
+                null, null);
+    }
+
+    private long insertVeggie(String name, String sku) {
+        return ContentUris.parseId(TestVeggies.insert(mResolver, veggieValues(name, sku)));
+    }
+
+    private static ContentValues veggieValues(String name, String sku) {
+        ContentValues values = TestVeggies.values(name);
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 5);
+        if (sku != null) {
+            values.put(VeggieEntry.COLUMN_VEGGIE_SKU, sku);
+        }
+        return values;
+    }
+
+    private int queryQuantity(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, id),
+                new String[]{VeggieEntry.COLUMN_VEGGIE_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countReceiveMovements() {
+        Cursor cursor = mResolver.query(StockMovementEntry.CONTENT_URI, null,
+                StockMovementEntry.COLUMN_REASON + "=?",
+                new String[]{StockMovementEntry.REASON_RECEIVE}, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.inventory2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.TestVeggies;
+import com.example.android.inventory2.data.VeggieProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SaleBuffer}, run against the real {@link VeggieProvider} through
+ * Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SaleBufferTest {
+
+    private final Queue<Runnable> mWriterQueue = new ArrayDeque<>();
+
+    private ContentResolver mResolver;
+
+    private SaleBuffer mSaleBuffer;
+
+    private Uri mCarrotUri;
+
+    private long mCarrotId;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        VeggieRepository repository = new VeggieRepository(mResolver, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mWriterQueue.add(command);
+            }
+        });
+        mSaleBuffer = new SaleBuffer(RuntimeEnvironment.application, repository);
+
+        mCarrotUri = TestVeggies.insert(mResolver, "Carrot");
+        mCarrotId = ContentUris.parseId(mCarrotUri);
+    }
+
+    @Test
+    public void burstOfTaps_isWrittenAsOneSale() {
+        assertTrue(mSaleBuffer.sell(mCarrotId, 3));
+        assertTrue(mSaleBuffer.sell(mCarrotId, 3));
+        assertTrue(mSaleBuffer.sell(mCarrotId, 3));
+
+        // The quantity shown drops at once, and a fourth tap finds nothing left
+        assertEquals(0, mSaleBuffer.getQuantity(mCarrotId, 3));
+        assertFalse(mSaleBuffer.sell(mCarrotId, 3));
+
+        // Nothing is written until the flush delay has passed
+        assertTrue(mWriterQueue.isEmpty());
+        ShadowLooper.idleMainLooper(SaleBuffer.FLUSH_DELAY_MS);
+        assertEquals(1, mWriterQueue.size());
+
+        mWriterQueue.poll().run();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(0, queryQuantity());
+    }
+
+    @Test
+    public void flush_writesPendingSalesAtOnce() {
+        mSaleBuffer.sell(mCarrotId, 3);
+        mSaleBuffer.flush();
+        assertEquals(1, mWriterQueue.size());
+
+        mWriterQueue.poll().run();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(2, queryQuantity());
+
+        // Once the sale is written, the next snapshot is trusted again
+        mSaleBuffer.onSnapshot();
+        assertEquals(2, mSaleBuffer.getQuantity(mCarrotId, 2));
+    }
+
+    @Test
+    public void answerToFirstOfTwoSales_keepsTheSecondSubtracted() {
+        mSaleBuffer.sell(mCarrotId, 3);
+        mSaleBuffer.flush();
+        mSaleBuffer.sell(mCarrotId, 3);
+        mSaleBuffer.flush();
+        assertEquals(2, mWriterQueue.size());
+        assertEquals(1, mSaleBuffer.getQuantity(mCarrotId, 3));
+
+        // The provider has only seen the first sale, but the second is still on its way
+        mWriterQueue.poll().run();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(1, mSaleBuffer.getQuantity(mCarrotId, 3));
+
+        mWriterQueue.poll().run();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(1, mSaleBuffer.getQuantity(mCarrotId, 3));
+        assertEquals(1, queryQuantity());
+    }
+
+    private int queryQuantity() {
+        Cursor cursor = mResolver.query(mCarrotUri,
+                new String[]{VeggieEntry.COLUMN_VEGGIE_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
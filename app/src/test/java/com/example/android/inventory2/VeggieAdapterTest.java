@@ -0,0 +1,21 @@
+package com.example.android.inventory2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the allocation-free number formatting in {@link VeggieAdapter}.
+ */
+public class VeggieAdapterTest {
+
+    @Test
+    public void formatInt_matchesIntegerToString() {
+        int[] values = {0, 7, 10, 42, 999, 1000, -1, -250, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        char[] buffer = new char[11];
+        for (int value : values) {
+            int length = VeggieAdapter.formatInt(value, buffer);
+            assertEquals(Integer.toString(value), new String(buffer, 0, length));
+        }
+    }
+}
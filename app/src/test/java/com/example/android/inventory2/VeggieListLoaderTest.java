@@ -0,0 +1,214 @@
+package com.example.android.inventory2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Loader;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.TestVeggies;
+import com.example.android.inventory2.data.VeggieProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the way {@link VeggieListLoader} pages through the catalog and patches
+ * single row changes into the rows it loaded, run against the real {@link VeggieProvider}
+ * through Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieListLoaderTest {
+
+    private static final int PAGE_SIZE = 3;
+
+    private ContentResolver mResolver;
+
+    private VeggieListLoader mLoader;
+
+    /**
+     * The last list the loader delivered
+     */
+    private List<Veggie> mVeggies;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        if (mLoader != null) {
+            mLoader.reset();
+        }
+    }
+
+    @Test
+    public void deleteInFullPage_isFilledFromTheNextRows() {
+        long[] ids = insertVeggies(5);
+        startLoader();
+        assertIds(ids[0], ids[1], ids[2]);
+
+        delete(ids[1]);
+        assertIds(ids[0], ids[2], ids[3]);
+
+        // Deleting every row that follows leaves a short page, which is the end of the catalog
+        delete(ids[3]);
+        delete(ids[4]);
+        assertIds(ids[0], ids[2]);
+    }
+
+    @Test
+    public void insertAfterFullPage_waitsForTheRowsBeforeIt() {
+        long[] ids = insertVeggies(4);
+        startLoader();
+        long newId = insertVeggie("Veggie new");
+        assertIds(ids[0], ids[1], ids[2]);
+
+        // The room a delete makes goes to the row right after the page, not to the new one
+        delete(ids[0]);
+        assertIds(ids[1], ids[2], ids[3]);
+
+        delete(ids[1]);
+        assertIds(ids[2], ids[3], newId);
+    }
+
+    @Test
+    public void insertIntoShortPage_isAppended() {
+        long[] ids = insertVeggies(2);
+        startLoader();
+        assertIds(ids[0], ids[1]);
+
+        long newId = insertVeggie("Veggie new");
+        assertIds(ids[0], ids[1], newId);
+    }
+
+    @Test
+    public void nextPage_isAppended() {
+        long[] ids = insertVeggies(5);
+        startLoader();
+        List<Veggie> firstPage = mVeggies;
+
+        mLoader.loadNextPage();
+        runLoads();
+        assertEquals(2 * PAGE_SIZE, mLoader.getRowLimit());
+        assertIds(ids[0], ids[1], ids[2], ids[3], ids[4]);
+        // The rows already loaded are kept rather than read again
+        assertSame(firstPage.get(0), mVeggies.get(0));
+
+        // A short list is the end of the catalog, yet a new row still joins it
+        long newId = insertVeggie("Veggie new");
+        assertIds(ids[0], ids[1], ids[2], ids[3], ids[4], newId);
+    }
+
+    @Test
+    public void nextPage_followsTheSortOrder() {
+        long carrotId = insertVeggie("carrot");
+        long leekId = insertVeggie("Leek");
+        long beetId = insertVeggie("beet");
+        long onionId = insertVeggie("Onion");
+        long appleId = insertVeggie("Apple");
+        startLoader(VeggieContract.SORT_NAME);
+        assertIds(appleId, beetId, carrotId);
+
+        mLoader.loadNextPage();
+        runLoads();
+        assertIds(appleId, beetId, carrotId, leekId, onionId);
+    }
+
+    @Test
+    public void updateInPage_isPatched() {
+        long[] ids = insertVeggies(3);
+        startLoader();
+
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 42);
+        mResolver.update(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, ids[1]), values,
+                null, null);
+        runLoads();
+        assertIds(ids[0], ids[1], ids[2]);
+        assertEquals(42, mVeggies.get(1).quantity);
+    }
+
+    /**
+     * Start a loader over the first {@link #PAGE_SIZE} rows of the catalog in _ID order, as
+     * CatalogActivity builds it, and wait for its first list.
+     */
+    private void startLoader() {
+        startLoader(VeggieContract.SORT_ID);
+    }
+
+    /**
+     * Start a loader over the first {@link #PAGE_SIZE} rows of the catalog in the given
+     * {@link VeggieContract#PARAM_SORT} order and wait for its first list.
+     */
+    private void startLoader(String sort) {
+        Uri uri = VeggieEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_PROFILE, VeggieContract.PROFILE_LIST)
+                .appendQueryParameter(VeggieContract.PARAM_SORT, sort)
+                .appendQueryParameter(VeggieContract.PARAM_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+        mLoader = new VeggieListLoader(RuntimeEnvironment.application, uri);
+        mLoader.registerListener(0, new Loader.OnLoadCompleteListener<List<Veggie>>() {
+            @Override
+            public void onLoadComplete(Loader<List<Veggie>> loader, List<Veggie> data) {
+                mVeggies = data;
+            }
+        });
+        mLoader.startLoading();
+        runLoads();
+    }
+
+    /**
+     * Run the loads the loader started and deliver their results.
+     */
+    private static void runLoads() {
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    private void delete(long id) {
+        mResolver.delete(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, id), null, null);
+        runLoads();
+    }
+
+    private long[] insertVeggies(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = insertVeggie("Veggie " + i);
+        }
+        return ids;
+    }
+
+    private long insertVeggie(String name) {
+        long id = ContentUris.parseId(TestVeggies.insert(mResolver, name));
+        runLoads();
+        return id;
+    }
+
+    private void assertIds(long... expected) {
+        List<Long> ids = new ArrayList<>();
+        for (Veggie veggie : mVeggies) {
+            ids.add(veggie.id);
+        }
+        List<Long> expectedIds = new ArrayList<>();
+        for (long id : expected) {
+            expectedIds.add(id);
+        }
+        assertEquals(expectedIds, ids);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.android.inventory2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.TestVeggies;
+import com.example.android.inventory2.data.VeggieProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link VeggieRepository}, run against the real {@link VeggieProvider}
+ * through Robolectric. The writer is a queue the test drains by hand, so it can check what is
+ * still pending.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieRepositoryTest {
+
+    private final Queue<Runnable> mWriterQueue = new ArrayDeque<>();
+
+    private ContentResolver mResolver;
+
+    private VeggieRepository mRepository;
+
+    private Uri mCarrotUri;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mRepository = new VeggieRepository(mResolver, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mWriterQueue.add(command);
+            }
+        });
+
+        mCarrotUri = TestVeggies.insert(mResolver, "Carrot");
+    }
+
+    @Test
+    public void updatesToSameRow_coalesceIntoOneWrite() {
+        final List<Integer> results = new ArrayList<>();
+        VeggieRepository.Callback<Integer> callback = new VeggieRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                results.add(result);
+            }
+        };
+
+        ContentValues quantity = new ContentValues();
+        quantity.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 7);
+        mRepository.update(mCarrotUri, quantity, callback);
+        ContentValues name = new ContentValues();
+        name.put(VeggieEntry.COLUMN_VEGGIE_NAME, "Parsnip");
+        mRepository.update(mCarrotUri, name, callback);
+
+        assertEquals(1, mWriterQueue.size());
+        drainWriter();
+
+        // Both callers hear about the single update
+        assertEquals(2, results.size());
+        assertEquals(Integer.valueOf(1), results.get(0));
+        assertEquals(Integer.valueOf(1), results.get(1));
+
+        Cursor cursor = mResolver.query(mCarrotUri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Parsnip", cursor.getString(
+                    cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_NAME)));
+            assertEquals(7, cursor.getInt(cursor.getColumnIndex(VeggieEntry.COLUMN_VEGGIE_QUANTITY)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void updateAfterWriteStarted_isQueuedAgain() {
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 7);
+        mRepository.update(mCarrotUri, values, null);
+        drainWriter();
+
+        mRepository.update(mCarrotUri, values, null);
+        assertEquals(1, mWriterQueue.size());
+    }
+
+    @Test
+    public void writeInBetween_keepsTheOrder() {
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 5);
+        mRepository.update(mCarrotUri, values, null);
+        Bundle extras = new Bundle();
+        extras.putLong(VeggieEntry._ID, ContentUris.parseId(mCarrotUri));
+        extras.putInt(VeggieContract.EXTRA_UNITS, 1);
+        mRepository.call(VeggieContract.METHOD_SELL, extras, null);
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 10);
+        mRepository.update(mCarrotUri, values, null);
+
+        // The second update may not jump ahead of the sale
+        assertEquals(3, mWriterQueue.size());
+        drainWriter();
+        assertEquals(10, queryQuantity());
+
+        // The last update is now the end of the queue, so the next one folds into it
+        mRepository.update(mCarrotUri, values, null);
+        mRepository.call(VeggieContract.METHOD_SELL, extras, null);
+        mRepository.update(mCarrotUri, values, null);
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 20);
+        mRepository.update(mCarrotUri, values, null);
+        assertEquals(3, mWriterQueue.size());
+        drainWriter();
+        assertEquals(20, queryQuantity());
+    }
+
+    @Test
+    public void deleteAfterInsert_removesTheInsertedRow() {
+        mRepository.delete(VeggieEntry.CONTENT_URI, null);
+        mRepository.insert(VeggieEntry.CONTENT_URI, TestVeggies.values("Leek"), null);
+        mRepository.delete(VeggieEntry.CONTENT_URI, null);
+
+        assertEquals(3, mWriterQueue.size());
+        drainWriter();
+        Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rejectedWrite_reportsNull() {
+        final List<Uri> results = new ArrayList<>();
+        ContentValues invalid = new ContentValues();
+        invalid.put(VeggieEntry.COLUMN_VEGGIE_PRICE, 4);
+        mRepository.insert(VeggieEntry.CONTENT_URI, invalid, new VeggieRepository.Callback<Uri>() {
+            @Override
+            public void onResult(Uri result) {
+                results.add(result);
+            }
+        });
+        drainWriter();
+
+        assertEquals(1, results.size());
+        assertNull(results.get(0));
+    }
+
+    private int queryQuantity() {
+        Cursor cursor = mResolver.query(mCarrotUri,
+                new String[]{VeggieEntry.COLUMN_VEGGIE_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Run every queued write, then the callbacks they posted to the main thread.
+     */
+    private void drainWriter() {
+        Runnable write;
+        while ((write = mWriterQueue.poll()) != null) {
+            write.run();
+        }
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.inventory2.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records the latency of individual operations and reports percentiles and throughput.
+ */
+final class LatencyRecorder {
+
+    private final String mName;
+    private long[] mSamples;
+    private int mCount;
+    private long mStart;
+
+    LatencyRecorder(String name, int expectedSamples) {
+        mName = name;
+        mSamples = new long[Math.max(1, expectedSamples)];
+    }
+
+    /**
+     * Mark the start of one operation.
+     */
+    void start() {
+        mStart = System.nanoTime();
+    }
+
+    /**
+     * Mark the end of the operation started by the last {@link #start()}.
+     */
+    void stop() {
+        long elapsed = System.nanoTime() - mStart;
+        if (mCount == mSamples.length) {
+            mSamples = Arrays.copyOf(mSamples, mCount * 2);
+        }
+        mSamples[mCount++] = elapsed;
+    }
+
+    /**
+     * Return the given percentile of the recorded latencies, in nanoseconds.
+     */
+    long percentile(int percentile) {
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        int index = Math.min(mCount - 1, (int) ((long) mCount * percentile / 100));
+        return sorted[index];
+    }
+
+    /**
+     * Return the number of operations per second over all recorded samples.
+     */
+    double throughput() {
+        long total = 0;
+        for (int i = 0; i < mCount; i++) {
+            total += mSamples[i];
+        }
+        return total == 0 ? 0 : mCount * 1e9 / total;
+    }
+
+    /**
+     * Format one report line, for example
+     * "insert          rows=10000  n=1000  p50=85.1us  p99=240.3us  11482 ops/s".
+     */
+    String report(int tableRows) {
+        return String.format(Locale.US, "%-16s rows=%-7d n=%-6d p50=%8.1fus  p99=%8.1fus  %9.0f ops/s",
+                mName, tableRows, mCount, percentile(50) / 1000.0, percentile(99) / 1000.0,
+                throughput());
+    }
+}
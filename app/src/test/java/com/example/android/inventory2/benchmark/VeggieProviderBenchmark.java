@@ -0,0 +1,211 @@
+package com.example.android.inventory2.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.VeggieProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Microbenchmark of the {@link VeggieProvider} CRUD paths against a real SQLite engine, run on
+ * the JVM through Robolectric. Each test fills a fresh database to the given size, then times
+ * every operation and prints p50/p99 latency and throughput.
+ * <p>
+ * Excluded from the normal unit test run. Run it with
+ * ./gradlew :app:testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieProviderBenchmark {
+
+    /**
+     * Operations timed for each of the cheap paths
+     */
+    private static final int OPERATIONS = 1000;
+
+    /**
+     * Full-table queries timed; each one reads every row
+     */
+    private static final int FULL_QUERIES = 20;
+
+    /**
+     * Rows per bulkInsert call when filling the table
+     */
+    private static final int BULK_BATCH = 1000;
+
+    /**
+     * Operations run before timing starts, so class loading and statement caches are warm
+     */
+    private static final int WARMUP = 100;
+
+    private ContentResolver mResolver;
+
+    private final Random mRandom = new Random(42);
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void crud_1k() {
+        run(1000);
+    }
+
+    @Test
+    public void crud_10k() {
+        run(10000);
+    }
+
+    @Test
+    public void crud_100k() {
+        run(100000);
+    }
+
+    private void run(int tableRows) {
+        LatencyRecorder bulkInsert = new LatencyRecorder("bulkInsert/row", tableRows / BULK_BATCH);
+        for (int filled = 0; filled < tableRows; filled += BULK_BATCH) {
+            ContentValues[] batch = new ContentValues[Math.min(BULK_BATCH, tableRows - filled)];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = veggie(filled + i);
+            }
+            bulkInsert.start();
+            int inserted = mResolver.bulkInsert(VeggieEntry.CONTENT_URI, batch);
+            bulkInsert.stop();
+            assertEquals(batch.length, inserted);
+        }
+
+        LatencyRecorder insert = new LatencyRecorder("insert", OPERATIONS);
+        LatencyRecorder queryAll = new LatencyRecorder("query VEGGIES", FULL_QUERIES);
+        LatencyRecorder queryList = new LatencyRecorder("query VEGGIES list", FULL_QUERIES);
+        LatencyRecorder queryId = new LatencyRecorder("query VEGGIE_ID", OPERATIONS);
+        LatencyRecorder update = new LatencyRecorder("update", OPERATIONS);
+        LatencyRecorder updateSelection = new LatencyRecorder("update _id=?", OPERATIONS);
+        LatencyRecorder delete = new LatencyRecorder("delete", OPERATIONS);
+        LatencyRecorder deleteSelection = new LatencyRecorder("delete _id=?", OPERATIONS);
+
+        for (int i = 0; i < WARMUP; i++) {
+            queryId(randomId(tableRows));
+        }
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            ContentValues values = veggie(tableRows + i);
+            insert.start();
+            mResolver.insert(VeggieEntry.CONTENT_URI, values);
+            insert.stop();
+        }
+
+        for (int i = 0; i < FULL_QUERIES; i++) {
+            queryAll.start();
+            Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI, null, null, null, null);
+            // getCount fills the cursor window with every row
+            assertNotNull(cursor);
+            cursor.getCount();
+            cursor.close();
+            queryAll.stop();
+        }
+
+        // The catalog's list profile reads the veggies table alone, without the supplier join
+        Uri listUri = VeggieEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_PROFILE, VeggieContract.PROFILE_LIST)
+                .build();
+        for (int i = 0; i < FULL_QUERIES; i++) {
+            queryList.start();
+            Cursor cursor = mResolver.query(listUri, null, null, null, null);
+            assertNotNull(cursor);
+            cursor.getCount();
+            cursor.close();
+            queryList.stop();
+        }
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            long id = randomId(tableRows);
+            queryId.start();
+            queryId(id);
+            queryId.stop();
+        }
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, mRandom.nextInt(100));
+            Uri uri = ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, randomId(tableRows));
+            update.start();
+            mResolver.update(uri, values, null, null);
+            update.stop();
+        }
+
+        // The same quantity update through a selection takes the general ContentValues path
+        // instead of the pooled statement, which shows what the pool saves
+        for (int i = 0; i < OPERATIONS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, mRandom.nextInt(100));
+            String[] selectionArgs = {String.valueOf(randomId(tableRows))};
+            updateSelection.start();
+            mResolver.update(VeggieEntry.CONTENT_URI, values, VeggieEntry._ID + "=?", selectionArgs);
+            updateSelection.stop();
+        }
+
+        // Delete distinct rows, so every call removes one
+        for (int i = 0; i < OPERATIONS; i++) {
+            Uri uri = ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, tableRows + i + 1);
+            delete.start();
+            mResolver.delete(uri, null, null);
+            delete.stop();
+        }
+
+        // Likewise for deletes, on the first rows of the table
+        for (int i = 0; i < OPERATIONS; i++) {
+            String[] selectionArgs = {String.valueOf(i + 1)};
+            deleteSelection.start();
+            mResolver.delete(VeggieEntry.CONTENT_URI, VeggieEntry._ID + "=?", selectionArgs);
+            deleteSelection.stop();
+        }
+
+        System.out.println(bulkInsert.report(tableRows) + "  (per " + BULK_BATCH + " rows)");
+        System.out.println(insert.report(tableRows));
+        System.out.println(queryAll.report(tableRows));
+        System.out.println(queryList.report(tableRows));
+        System.out.println(queryId.report(tableRows));
+        System.out.println(update.report(tableRows));
+        System.out.println(updateSelection.report(tableRows));
+        System.out.println(delete.report(tableRows));
+        System.out.println(deleteSelection.report(tableRows));
+    }
+
+    private void queryId(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, id),
+                null, null, null, null);
+        assertNotNull(cursor);
+        cursor.moveToFirst();
+        cursor.close();
+    }
+
+    private long randomId(int tableRows) {
+        return 1 + mRandom.nextInt(tableRows);
+    }
+
+    private static ContentValues veggie(int index) {
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_NAME, "Veggie " + index);
+        values.put(VeggieEntry.COLUMN_VEGGIE_PRICE, index % 20);
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, index % 100);
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, "Supplier " + index % 50);
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE, "(800) 555-" + (1000 + index % 9000));
+        return values;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.android.inventory2.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CsvReader} and {@link CsvWriter}.
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void readRecord_splitsPlainFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("name,price\nCarrot,4\n"));
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("name", "price"), fields);
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("Carrot", "4"), fields);
+        assertFalse(reader.readRecord(fields));
+    }
+
+    @Test
+    public void readRecord_handlesQuotesLineBreaksAndCrLf() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(
+                "\"Farm, Co\",\"say \"\"hi\"\"\"\r\n\"two\nlines\",x\r\nlast,"));
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("Farm, Co", "say \"hi\""), fields);
+        assertEquals(2, reader.getLineNumber());
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("two\nlines", "x"), fields);
+        assertEquals(4, reader.getLineNumber());
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("last", ""), fields);
+        assertFalse(reader.readRecord(fields));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRecord_rejectsUnterminatedQuote() throws IOException {
+        new CsvReader(new StringReader("\"open")).readRecord(new ArrayList<String>());
+    }
+
+    @Test
+    public void writerOutput_readsBackUnchanged() throws IOException {
+        List<String> record = Arrays.asList("Leek", "a,b", "quote \" here", "line\r\nbreak", "");
+        StringWriter out = new StringWriter();
+        CsvWriter writer = new CsvWriter(out);
+        for (String field : record) {
+            writer.writeField(field);
+        }
+        writer.endRecord();
+        writer.flush();
+
+        CsvReader reader = new CsvReader(new StringReader(out.toString()));
+        List<String> fields = new ArrayList<>();
+        assertTrue(reader.readRecord(fields));
+        assertEquals(record, fields);
+        assertFalse(reader.readRecord(fields));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.inventory2.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link StatementPool}, run against an in-memory database through
+ * Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StatementPoolTest {
+
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM items WHERE value = ?";
+
+    private SQLiteDatabase mDatabase;
+
+    private StatementPool mPool;
+
+    @Before
+    public void setUp() {
+        mDatabase = SQLiteDatabase.create(null);
+        mDatabase.execSQL("CREATE TABLE items (value INTEGER)");
+        mDatabase.execSQL("INSERT INTO items VALUES (1)");
+        mPool = new StatementPool();
+    }
+
+    @After
+    public void tearDown() {
+        mPool.closeIdle();
+        mDatabase.close();
+    }
+
+    @Test
+    public void releasedStatement_isReusedWithoutBindings() {
+        SQLiteStatement statement = mPool.acquire(mDatabase, SQL_COUNT);
+        statement.bindLong(1, 1);
+        assertEquals(1, statement.simpleQueryForLong());
+        mPool.release(mDatabase, SQL_COUNT, statement);
+
+        SQLiteStatement again = mPool.acquire(mDatabase, SQL_COUNT);
+        assertSame(statement, again);
+        assertEquals(1, mPool.compileCount());
+        // The last argument was cleared, so NULL is bound and nothing matches
+        assertEquals(0, again.simpleQueryForLong());
+        mPool.release(mDatabase, SQL_COUNT, again);
+    }
+
+    @Test
+    public void concurrentCallers_getStatementsOfTheirOwn() {
+        SQLiteStatement first = mPool.acquire(mDatabase, SQL_COUNT);
+        SQLiteStatement second = mPool.acquire(mDatabase, SQL_COUNT);
+        assertNotSame(first, second);
+        assertEquals(2, mPool.compileCount());
+        mPool.release(mDatabase, SQL_COUNT, first);
+        mPool.release(mDatabase, SQL_COUNT, second);
+
+        // Both are kept, so two more callers compile nothing
+        mPool.acquire(mDatabase, SQL_COUNT);
+        mPool.acquire(mDatabase, SQL_COUNT);
+        assertEquals(2, mPool.compileCount());
+    }
+
+    @Test
+    public void newDatabase_dropsIdleStatements() {
+        SQLiteStatement statement = mPool.acquire(mDatabase, SQL_COUNT);
+        mPool.release(mDatabase, SQL_COUNT, statement);
+
+        SQLiteDatabase other = SQLiteDatabase.create(null);
+        try {
+            other.execSQL("CREATE TABLE items (value INTEGER)");
+            SQLiteStatement fresh = mPool.acquire(other, SQL_COUNT);
+            assertNotSame(statement, fresh);
+            mPool.release(other, SQL_COUNT, fresh);
+        } finally {
+            mPool.closeIdle();
+            other.close();
+        }
+    }
+}
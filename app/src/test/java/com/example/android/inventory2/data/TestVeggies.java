@@ -0,0 +1,62 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+/**
+ * Builds and inserts the veggies the local unit tests work with. Every column a test does not
+ * set itself gets the default below.
+ */
+public final class TestVeggies {
+
+    /**
+     * Default price, in cents
+     */
+    public static final long PRICE = 4;
+
+    /**
+     * Default quantity in stock
+     */
+    public static final int QUANTITY = 3;
+
+    /**
+     * Default supplier
+     */
+    public static final String SUPPLIER_NAME = "Whole Foods";
+    public static final String SUPPLIER_PHONE = "(800) 123-4567";
+
+    private TestVeggies() {
+    }
+
+    /**
+     * Return the values of a veggie with the given name and the default for every other
+     * column. The caller may change them before inserting.
+     */
+    public static ContentValues values(String name) {
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_NAME, name);
+        values.put(VeggieEntry.COLUMN_VEGGIE_PRICE, PRICE);
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, QUANTITY);
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, SUPPLIER_NAME);
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE, SUPPLIER_PHONE);
+        return values;
+    }
+
+    /**
+     * Insert a veggie with the given name and the default for every other column. Return the
+     * URI of the new row.
+     */
+    public static Uri insert(ContentResolver resolver, String name) {
+        return insert(resolver, values(name));
+    }
+
+    /**
+     * Insert a veggie with the given values. Return the URI of the new row.
+     */
+    public static Uri insert(ContentResolver resolver, ContentValues values) {
+        return resolver.insert(VeggieEntry.CONTENT_URI, values);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link VeggieCsv}, run against the real {@link VeggieProvider} through
+ * Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieCsvTest {
+
+    private static final String HEADER = "name,price,quantity,supplierName,supplierPhone\n";
+
+    private ContentResolver mResolver;
+
+    /**
+     * Every progress report, in order
+     */
+    private final List<Integer> mProgress = new ArrayList<>();
+
+    private final VeggieCsv.ProgressListener mListener = new VeggieCsv.ProgressListener() {
+        @Override
+        public void onProgress(int rows) {
+            mProgress.add(rows);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void importCsv_mapsColumnsByHeader() throws IOException {
+        // Columns in another order, an _id to ignore and a column nobody knows
+        String csv = "supplierPhone,_id,quantity,notes,name,supplierName,price\n"
+                + "(800) 123-4567,77,3,crunchy,\"Carrot, orange\",Whole Foods,250\n"
+                + "\n"
+                + "(800) 765-4321,78,0,,Leek,Farm Co,99\n";
+        assertEquals(2, importCsv(csv));
+        assertEquals(Arrays.asList(2), mProgress);
+
+        List<String> rows = queryRows();
+        assertEquals(Arrays.asList("Carrot, orange|250|3|Whole Foods|(800) 123-4567",
+                "Leek|99|0|Farm Co|(800) 765-4321"), rows);
+    }
+
+    @Test
+    public void importCsv_rejectsMissingColumn() throws IOException {
+        try {
+            importCsv("name,price,quantity,supplierName\nCarrot,4,3,Whole Foods\n");
+            fail("A file without supplierPhone was imported");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE));
+        }
+    }
+
+    @Test
+    public void importCsv_rejectsShortRecord() throws IOException {
+        try {
+            importCsv(HEADER + "Carrot,4,3,Whole Foods,(800) 123-4567\nLeek,2,5\n");
+            fail("A record with too few fields was imported");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Line 3"));
+        }
+    }
+
+    @Test
+    public void importCsv_commitsInBatches() throws IOException {
+        int rows = VeggieCsv.IMPORT_BATCH_SIZE + 1;
+        assertEquals(rows, importCsv(HEADER + validRows(rows)));
+
+        // One report per committed batch
+        assertEquals(Arrays.asList(VeggieCsv.IMPORT_BATCH_SIZE, rows), mProgress);
+        assertEquals(rows, queryRows().size());
+    }
+
+    @Test
+    public void importCsv_namesTheLinesOfARejectedBatch() throws IOException {
+        // The header is line 1, so the second batch starts on this line
+        int secondBatchLine = VeggieCsv.IMPORT_BATCH_SIZE + 2;
+        String csv = HEADER + validRows(VeggieCsv.IMPORT_BATCH_SIZE + 1)
+                + "Leek,-5,3,Whole Foods,(800) 123-4567\n";
+        try {
+            importCsv(csv);
+            fail("A negative price was imported");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(
+                    "lines " + secondBatchLine + "-" + (secondBatchLine + 1)));
+        }
+
+        // The batch before the bad row stays committed, the one holding it is rolled back
+        assertEquals(Arrays.asList(VeggieCsv.IMPORT_BATCH_SIZE), mProgress);
+        assertEquals(VeggieCsv.IMPORT_BATCH_SIZE, queryRows().size());
+    }
+
+    @Test
+    public void exportCsv_pagesThroughTheWholeTable() throws IOException {
+        int rows = VeggieCsv.EXPORT_PAGE_SIZE + 1;
+        importCsv(HEADER + validRows(rows));
+        mProgress.clear();
+
+        String csv = exportCsv();
+        String[] lines = csv.split("\r\n");
+        assertEquals(rows + 1, lines.length);
+        assertEquals("_id,name,price,quantity,supplierName,supplierPhone,sku", lines[0]);
+        // A veggie without a SKU leaves its field empty
+        assertTrue(lines[1], lines[1].endsWith(",Veggie 0,4,3,Whole Foods,(800) 123-4567,"));
+        assertTrue(lines[rows], lines[rows].contains(",Veggie " + (rows - 1) + ","));
+
+        // One report per page
+        assertEquals(Arrays.asList(VeggieCsv.EXPORT_PAGE_SIZE, rows), mProgress);
+    }
+
+    @Test
+    public void exportThenImport_copiesEveryRow() throws IOException {
+        importCsv("name,price,quantity,supplierName,supplierPhone,sku\n"
+                + "\"Carrot, \"\"baby\"\"\",250,3,Whole Foods,(800) 123-4567,4001\n"
+                + "\"Leek\nlong\",99,0,Farm Co,(800) 765-4321, \n"
+                + "Onion,100,5,Farm Co,(800) 765-4321,\n");
+        List<String> before = queryRows();
+        // Blank codes are no codes, so both veggies without one could be imported
+        assertEquals(Arrays.asList("4001", null, null), querySkus());
+
+        String csv = exportCsv();
+        mResolver.delete(VeggieEntry.CONTENT_URI, null, null);
+
+        // The rows come back with new IDs, but otherwise the same
+        assertEquals(3, importCsv(csv));
+        assertEquals(before, queryRows());
+        assertEquals(Arrays.asList("4001", null, null), querySkus());
+    }
+
+    private int importCsv(String csv) throws IOException {
+        return VeggieCsv.importCsv(mResolver,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), mListener);
+    }
+
+    private String exportCsv() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VeggieCsv.exportCsv(mResolver, out, mListener, null);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String validRows(int count) {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            rows.append("Veggie ").append(i).append(",4,3,Whole Foods,(800) 123-4567\n");
+        }
+        return rows.toString();
+    }
+
+    /**
+     * Return the SKU of every veggie in _ID order.
+     */
+    private List<String> querySkus() {
+        Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI,
+                new String[]{VeggieEntry.COLUMN_VEGGIE_SKU}, null, null, VeggieEntry._ID);
+        try {
+            List<String> skus = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                skus.add(cursor.getString(0));
+            }
+            return skus;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return every veggie in _ID order as "name|price|quantity|supplier|phone".
+     */
+    private List<String> queryRows() {
+        Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI, new String[]{
+                        VeggieEntry.COLUMN_VEGGIE_NAME, VeggieEntry.COLUMN_VEGGIE_PRICE,
+                        VeggieEntry.COLUMN_VEGGIE_QUANTITY, VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME,
+                        VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE},
+                null, null, VeggieEntry._ID);
+        try {
+            List<String> rows = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                rows.add(cursor.getString(0) + "|" + cursor.getLong(1) + "|" + cursor.getInt(2)
+                        + "|" + cursor.getString(3) + "|" + cursor.getString(4));
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieStatsEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the aggregate URIs of {@link VeggieProvider}, run through Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieProviderAggregateTest {
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        insertVeggie("Carrot", 400, 3);
+        insertVeggie("Leek", 250, 10);
+        insertVeggie("Onion", 99, 0);
+    }
+
+    @Test
+    public void stats_addsUpTheWholeTable() {
+        Cursor cursor = mResolver.query(VeggieStatsEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(400 * 3 + 250 * 10, getLong(cursor, VeggieStatsEntry.COLUMN_TOTAL_VALUE));
+            assertEquals(13, getLong(cursor, VeggieStatsEntry.COLUMN_TOTAL_QUANTITY));
+            assertEquals(3, getLong(cursor, VeggieStatsEntry.COLUMN_VEGGIE_COUNT));
+            // Below the default reorder level of 5
+            assertEquals(2, getLong(cursor, VeggieStatsEntry.COLUMN_LOW_STOCK_COUNT));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void stats_ofEmptyTable_areZero() {
+        mResolver.delete(VeggieEntry.CONTENT_URI, null, null);
+        Cursor cursor = mResolver.query(VeggieStatsEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(0, getLong(cursor, VeggieStatsEntry.COLUMN_TOTAL_VALUE));
+            assertEquals(0, getLong(cursor, VeggieStatsEntry.COLUMN_VEGGIE_COUNT));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void lowStock_listsRowsBelowThresholdLowestFirst() {
+        Uri uri = VeggieEntry.CONTENT_LOW_STOCK_URI.buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_THRESHOLD, "4")
+                .build();
+        Cursor cursor = mResolver.query(uri, new String[]{VeggieEntry.COLUMN_VEGGIE_NAME},
+                null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Onion", cursor.getString(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals("Carrot", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lowStock_rejectsInvalidThreshold() {
+        Uri uri = VeggieEntry.CONTENT_LOW_STOCK_URI.buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_THRESHOLD, "few")
+                .build();
+        mResolver.query(uri, null, null, null, null);
+    }
+
+    private void insertVeggie(String name, long price, int quantity) {
+        ContentValues values = TestVeggies.values(name);
+        values.put(VeggieEntry.COLUMN_VEGGIE_PRICE, price);
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, quantity);
+        TestVeggies.insert(mResolver, values);
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        return cursor.getLong(cursor.getColumnIndexOrThrow(column));
+    }
+}
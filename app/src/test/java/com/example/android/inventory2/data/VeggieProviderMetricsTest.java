@@ -0,0 +1,111 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link VeggieContract#METHOD_METRICS} counters of
+ * {@link VeggieProvider}, run through Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieProviderMetricsTest {
+
+    private ContentResolver mResolver;
+
+    private Uri mCarrotUri;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mCarrotUri = insertVeggie("Carrot");
+        insertVeggie("Leek");
+        insertVeggie("Onion");
+    }
+
+    @Test
+    public void calls_areCountedPerUriAndOperation() {
+        Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                // Read every row, as the catalog does
+            }
+        } finally {
+            cursor.close();
+        }
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 7);
+        mResolver.update(mCarrotUri, values, null, null);
+
+        Bundle metrics = getMetrics(new Bundle());
+        assertTrue(Arrays.asList(metrics.getStringArray(VeggieContract.EXTRA_OPERATIONS))
+                .containsAll(Arrays.asList("veggies insert", "veggies query", "veggies/# update")));
+
+        Bundle insert = metrics.getBundle("veggies insert");
+        assertEquals(3, insert.getLong(VeggieContract.EXTRA_CALLS));
+        assertEquals(3, insert.getLong(VeggieContract.EXTRA_ROWS));
+        assertEquals(3, sum(insert.getLongArray(VeggieContract.EXTRA_LATENCY_HISTOGRAM)));
+
+        // The three rows fit in one window
+        Bundle query = metrics.getBundle("veggies query");
+        assertEquals(1, query.getLong(VeggieContract.EXTRA_CALLS));
+        assertEquals(3, query.getLong(VeggieContract.EXTRA_ROWS));
+        assertEquals(1, query.getLong(VeggieContract.EXTRA_WINDOW_FILLS));
+
+        Bundle update = metrics.getBundle("veggies/# update");
+        assertEquals(1, update.getLong(VeggieContract.EXTRA_CALLS));
+        assertEquals(1, update.getLong(VeggieContract.EXTRA_ROWS));
+    }
+
+    @Test
+    public void slowThreshold_andReset() {
+        // With a threshold of 0 every call is slow
+        Bundle extras = new Bundle();
+        extras.putLong(VeggieContract.EXTRA_SLOW_THRESHOLD_MS, 0);
+        getMetrics(extras);
+        insertVeggie("Kale");
+
+        extras = new Bundle();
+        extras.putBoolean(VeggieContract.EXTRA_RESET, true);
+        Bundle metrics = getMetrics(extras);
+        assertEquals(0, metrics.getLong(VeggieContract.EXTRA_SLOW_THRESHOLD_MS));
+        assertEquals(1, metrics.getBundle("veggies insert").getLong(VeggieContract.EXTRA_SLOW_CALLS));
+
+        // The counters are gone, the threshold is kept
+        metrics = getMetrics(new Bundle());
+        assertEquals(0, metrics.getStringArray(VeggieContract.EXTRA_OPERATIONS).length);
+        assertEquals(0, metrics.getLong(VeggieContract.EXTRA_SLOW_THRESHOLD_MS));
+    }
+
+    private Bundle getMetrics(Bundle extras) {
+        return mResolver.call(VeggieEntry.CONTENT_URI, VeggieContract.METHOD_METRICS, null, extras);
+    }
+
+    private Uri insertVeggie(String name) {
+        return TestVeggies.insert(mResolver, name);
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
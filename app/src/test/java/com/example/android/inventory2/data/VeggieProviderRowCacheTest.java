@@ -0,0 +1,79 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the row cache behind the veggies/# URIs of {@link VeggieProvider}, run
+ * through Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieProviderRowCacheTest {
+
+    private ContentResolver mResolver;
+
+    private Uri mCarrotUri;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+
+        mCarrotUri = TestVeggies.insert(mResolver, "Carrot");
+    }
+
+    @Test
+    public void rowReadInRolledBackBatch_isNotServedLater() throws RemoteException {
+        // Cache the committed row first
+        assertEquals("Carrot", queryName());
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(mCarrotUri)
+                .withValue(VeggieEntry.COLUMN_VEGGIE_NAME, "Parsnip")
+                .build());
+        // Reads the uncommitted row
+        operations.add(ContentProviderOperation.newAssertQuery(mCarrotUri)
+                .withValue(VeggieEntry.COLUMN_VEGGIE_NAME, "Parsnip")
+                .build());
+        // Fails, so the whole batch is rolled back
+        operations.add(ContentProviderOperation.newAssertQuery(mCarrotUri)
+                .withValue(VeggieEntry.COLUMN_VEGGIE_NAME, "Leek")
+                .build());
+        try {
+            mResolver.applyBatch(VeggieContract.CONTENT_AUTHORITY, operations);
+            fail("A failed assertion was committed");
+        } catch (OperationApplicationException e) {
+            // Expected
+        }
+
+        assertEquals("Carrot", queryName());
+    }
+
+    private String queryName() {
+        Cursor cursor = mResolver.query(mCarrotUri,
+                new String[]{VeggieEntry.COLUMN_VEGGIE_NAME}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
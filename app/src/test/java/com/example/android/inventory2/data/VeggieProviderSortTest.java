@@ -0,0 +1,189 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link VeggieContract#PARAM_SORT} and
+ * {@link VeggieContract#PARAM_SUPPLIER_ID} query parameters of {@link VeggieProvider}, run
+ * through Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieProviderSortTest {
+
+    private ContentResolver mResolver;
+
+    private long mFarmCoId;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        insertVeggie("leek", 7, "Whole Foods");
+        insertVeggie("Onion", 2, "Farm Co");
+        insertVeggie("Carrot", 9, "Whole Foods");
+        insertVeggie("beet", 2, "Farm Co");
+
+        Cursor cursor = mResolver.query(VeggieEntry.CONTENT_URI,
+                new String[]{VeggieEntry.COLUMN_VEGGIE_SUPPLIER_ID},
+                VeggieEntry.COLUMN_VEGGIE_NAME + "=?", new String[]{"Onion"}, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            mFarmCoId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void sort_ordersTheCatalog() {
+        assertEquals(Arrays.asList("leek", "Onion", "Carrot", "beet"),
+                queryNames(sorted(VeggieContract.SORT_ID)));
+        // Names compare without case
+        assertEquals(Arrays.asList("beet", "Carrot", "leek", "Onion"),
+                queryNames(sorted(VeggieContract.SORT_NAME)));
+        // Equal quantities stay in _ID order
+        assertEquals(Arrays.asList("Onion", "beet", "leek", "Carrot"),
+                queryNames(sorted(VeggieContract.SORT_LOW_STOCK)));
+    }
+
+    @Test
+    public void supplierFilter_combinesWithSortAndLimit() {
+        Uri uri = sorted(VeggieContract.SORT_NAME).buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_SUPPLIER_ID, String.valueOf(mFarmCoId))
+                .build();
+        assertEquals(Arrays.asList("beet", "Onion"), queryNames(uri));
+
+        uri = uri.buildUpon().appendQueryParameter(VeggieContract.PARAM_LIMIT, "1").build();
+        assertEquals(Arrays.asList("beet"), queryNames(uri));
+    }
+
+    @Test
+    public void supplierFilter_appliesToSearch() {
+        Uri uri = VeggieEntry.CONTENT_SEARCH_URI.buildUpon()
+                .appendPath("c")
+                .appendQueryParameter(VeggieContract.PARAM_SORT, VeggieContract.SORT_NAME)
+                .appendQueryParameter(VeggieContract.PARAM_SUPPLIER_ID, String.valueOf(mFarmCoId))
+                .build();
+        // "c" also matches Carrot, which Whole Foods supplies
+        assertEquals(Arrays.asList("beet", "Onion"), queryNames(uri));
+    }
+
+    @Test
+    public void keysetPaging_followsEveryOrder() {
+        // Two rows per page, each read after the last row of the page before
+        assertEquals(queryNames(sorted(VeggieContract.SORT_ID)),
+                queryPages(sorted(VeggieContract.SORT_ID), null));
+        assertEquals(queryNames(sorted(VeggieContract.SORT_NAME)),
+                queryPages(sorted(VeggieContract.SORT_NAME), VeggieEntry.COLUMN_VEGGIE_NAME));
+        assertEquals(queryNames(sorted(VeggieContract.SORT_LOW_STOCK)),
+                queryPages(sorted(VeggieContract.SORT_LOW_STOCK),
+                        VeggieEntry.COLUMN_VEGGIE_QUANTITY));
+
+        // The key is what the caller saw, so a page still follows a row that has since gone
+        Uri uri = sorted(VeggieContract.SORT_NAME).buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_AFTER_ID, "999")
+                .appendQueryParameter(VeggieContract.PARAM_AFTER_KEY, "carrot")
+                .build();
+        assertEquals(Arrays.asList("leek", "Onion"), queryNames(uri));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keysetPagingWithoutKey_isRejected() {
+        queryNames(sorted(VeggieContract.SORT_NAME).buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_AFTER_ID, "1")
+                .build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSort_isRejected() {
+        queryNames(sorted("price; DROP TABLE veggies"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sortWithSortOrder_isRejected() {
+        mResolver.query(sorted(VeggieContract.SORT_NAME), null, null, null, VeggieEntry._ID);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSupplierId_isRejected() {
+        queryNames(VeggieEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_SUPPLIER_ID, "1 OR 1=1")
+                .build());
+    }
+
+    private static Uri sorted(String sort) {
+        return VeggieEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_SORT, sort)
+                .build();
+    }
+
+    private List<String> queryNames(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[]{VeggieEntry.COLUMN_VEGGIE_NAME},
+                null, null, null);
+        List<String> names = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+
+    /**
+     * Read the rows of the URI two at a time with keyset paging and return their names. The
+     * key column is null for _ID order, which needs no key.
+     */
+    private List<String> queryPages(Uri uri, String keyColumn) {
+        List<String> names = new ArrayList<>();
+        String[] projection = {VeggieEntry._ID, VeggieEntry.COLUMN_VEGGIE_NAME,
+                keyColumn == null ? VeggieEntry._ID : keyColumn};
+        Uri.Builder page = uri.buildUpon().appendQueryParameter(VeggieContract.PARAM_LIMIT, "2");
+        while (true) {
+            Cursor cursor = mResolver.query(page.build(), projection, null, null, null);
+            try {
+                if (cursor.getCount() == 0) {
+                    return names;
+                }
+                while (cursor.moveToNext()) {
+                    names.add(cursor.getString(1));
+                }
+                cursor.moveToLast();
+                page = uri.buildUpon()
+                        .appendQueryParameter(VeggieContract.PARAM_LIMIT, "2")
+                        .appendQueryParameter(VeggieContract.PARAM_AFTER_ID, cursor.getString(0));
+                if (keyColumn != null) {
+                    page.appendQueryParameter(VeggieContract.PARAM_AFTER_KEY, cursor.getString(2));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private void insertVeggie(String name, int quantity, String supplierName) {
+        ContentValues values = TestVeggies.values(name);
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, quantity);
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, supplierName);
+        TestVeggies.insert(mResolver, values);
+    }
+}
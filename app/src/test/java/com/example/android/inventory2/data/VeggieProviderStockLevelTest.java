@@ -0,0 +1,219 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+
+import com.example.android.inventory2.data.VeggieContract.LocationEntry;
+import com.example.android.inventory2.data.VeggieContract.StockLevelEntry;
+import com.example.android.inventory2.data.VeggieContract.StockMovementEntry;
+import com.example.android.inventory2.data.VeggieContract.StockSnapshotEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the stock levels per location behind {@link VeggieProvider}, run
+ * through Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieProviderStockLevelTest {
+
+    /**
+     * ID of the cooler, the second of the initial locations
+     */
+    private static final long COOLER_ID = 2;
+
+    private ContentResolver mResolver;
+
+    private long mCarrotId;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+
+        ContentValues values = TestVeggies.values("Carrot");
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 10);
+        mCarrotId = ContentUris.parseId(TestVeggies.insert(mResolver, values));
+    }
+
+    @Test
+    public void veggieStockLevels_listsEveryLocation() {
+        Uri uri = veggieStockLevelsUri();
+        assertEquals(StockLevelEntry.CONTENT_LIST_TYPE, mResolver.getType(uri));
+
+        // New stock is kept at the default location
+        long[] levels = queryLevels();
+        assertEquals(VeggieDbHelper.INITIAL_LOCATIONS.length, levels.length);
+        assertEquals(10, levels[0]);
+        for (int i = 1; i < levels.length; i++) {
+            assertEquals(0, levels[i]);
+        }
+    }
+
+    @Test
+    public void transfer_movesUnitsWithoutChangingTheTotal() {
+        assertTrue(transfer(LocationEntry.DEFAULT_LOCATION_ID, COOLER_ID, 7));
+        long[] levels = queryLevels();
+        assertEquals(3, levels[0]);
+        assertEquals(7, levels[1]);
+        assertEquals(10, queryQuantity());
+
+        // The cooler only holds 7, so nothing moves
+        assertFalse(transfer(COOLER_ID, LocationEntry.DEFAULT_LOCATION_ID, 8));
+        assertEquals(7, queryLevels()[1]);
+    }
+
+    @Test
+    public void sale_drainsTheDefaultLocationFirst() {
+        transfer(LocationEntry.DEFAULT_LOCATION_ID, COOLER_ID, 6);
+
+        Bundle extras = new Bundle();
+        extras.putLong(VeggieEntry._ID, mCarrotId);
+        extras.putInt(VeggieContract.EXTRA_UNITS, 5);
+        mResolver.call(VeggieEntry.CONTENT_URI, VeggieContract.METHOD_SELL, null, extras);
+
+        long[] levels = queryLevels();
+        assertEquals(0, levels[0]);
+        assertEquals(5, levels[1]);
+        assertEquals(sum(levels), queryQuantity());
+    }
+
+    @Test
+    public void quantityUpdate_keepsLevelsAddingUpToTheTotal() {
+        transfer(LocationEntry.DEFAULT_LOCATION_ID, COOLER_ID, 4);
+
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 25);
+        mResolver.update(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, mCarrotId), values,
+                null, null);
+        assertEquals(25, sum(queryLevels()));
+
+        values.put(VeggieEntry.COLUMN_VEGGIE_QUANTITY, 2);
+        mResolver.update(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, mCarrotId), values,
+                null, null);
+        long[] levels = queryLevels();
+        assertEquals(2, sum(levels));
+        assertEquals(0, levels[0]);
+    }
+
+    @Test
+    public void insertLocation_rejectsDuplicateNames() {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_NAME, "Van");
+        assertNotNull(mResolver.insert(LocationEntry.CONTENT_URI, values));
+        assertNull(mResolver.insert(LocationEntry.CONTENT_URI, values));
+        assertEquals(VeggieDbHelper.INITIAL_LOCATIONS.length + 1, queryLevels().length);
+    }
+
+    @Test
+    public void deleteVeggie_notifiesTheTablesItCascadesInto() {
+        final List<Uri> notified = new ArrayList<>();
+        Uri[] uris = {StockMovementEntry.CONTENT_URI, StockSnapshotEntry.CONTENT_URI,
+                StockLevelEntry.CONTENT_URI};
+        for (final Uri uri : uris) {
+            mResolver.registerContentObserver(uri, false, new ContentObserver(new Handler()) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    notified.add(uri);
+                }
+            });
+        }
+
+        mResolver.delete(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, mCarrotId), null, null);
+        ShadowLooper.runUiThreadTasks();
+        for (Uri uri : uris) {
+            assertTrue(uri.toString(), notified.contains(uri));
+        }
+
+        // The movements of the veggie went with it
+        Cursor cursor = mResolver.query(StockMovementEntry.CONTENT_URI, null,
+                StockMovementEntry.COLUMN_VEGGIE_ID + "=?",
+                new String[]{String.valueOf(mCarrotId)}, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transferToUnknownLocation_isRejected() {
+        transfer(LocationEntry.DEFAULT_LOCATION_ID, 99, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transferToSameLocation_isRejected() {
+        transfer(COOLER_ID, COOLER_ID, 1);
+    }
+
+    private boolean transfer(long fromLocationId, long toLocationId, int units) {
+        Bundle extras = new Bundle();
+        extras.putLong(VeggieEntry._ID, mCarrotId);
+        extras.putLong(VeggieContract.EXTRA_FROM_LOCATION_ID, fromLocationId);
+        extras.putLong(VeggieContract.EXTRA_TO_LOCATION_ID, toLocationId);
+        extras.putInt(VeggieContract.EXTRA_UNITS, units);
+        Bundle result = mResolver.call(VeggieEntry.CONTENT_URI, VeggieContract.METHOD_TRANSFER,
+                null, extras);
+        return result.getBoolean(VeggieContract.EXTRA_TRANSFERRED);
+    }
+
+    private Uri veggieStockLevelsUri() {
+        return ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, mCarrotId).buildUpon()
+                .appendPath(VeggieContract.PATH_STOCK_LEVELS)
+                .build();
+    }
+
+    /**
+     * Return the carrot's stock at every location, in location order.
+     */
+    private long[] queryLevels() {
+        Cursor cursor = mResolver.query(veggieStockLevelsUri(), null, null, null, null);
+        try {
+            long[] levels = new long[cursor.getCount()];
+            int column = cursor.getColumnIndexOrThrow(StockLevelEntry.COLUMN_QUANTITY);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                levels[i] = cursor.getLong(column);
+            }
+            return levels;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long queryQuantity() {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(VeggieEntry.CONTENT_URI, mCarrotId),
+                new String[]{VeggieEntry.COLUMN_VEGGIE_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long sum(long[] levels) {
+        long sum = 0;
+        for (long level : levels) {
+            sum += level;
+        }
+        return sum;
+    }
+}
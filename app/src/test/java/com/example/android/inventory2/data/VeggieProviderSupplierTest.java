@@ -0,0 +1,157 @@
+package com.example.android.inventory2.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.net.Uri;
+
+import com.example.android.inventory2.data.VeggieContract.SupplierEntry;
+import com.example.android.inventory2.data.VeggieContract.VeggieEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the suppliers table behind {@link VeggieProvider}, run through
+ * Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VeggieProviderSupplierTest {
+
+    private ContentResolver mResolver;
+
+    private Uri mCarrotUri;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(VeggieProvider.class).create(VeggieContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mCarrotUri = TestVeggies.insert(mResolver, "Carrot");
+        TestVeggies.insert(mResolver, "Leek");
+        insertVeggie("Onion", "Farm Co", "(800) 765-4321");
+    }
+
+    @Test
+    public void insert_sharesOneSupplierPerNameAndPhone() {
+        Cursor cursor = mResolver.query(SupplierEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+
+        // Inserting a supplier that exists returns the existing one
+        Uri first = insertSupplier(TestVeggies.SUPPLIER_NAME, TestVeggies.SUPPLIER_PHONE);
+        assertEquals(first, insertSupplier(TestVeggies.SUPPLIER_NAME, TestVeggies.SUPPLIER_PHONE));
+    }
+
+    @Test
+    public void supplierVeggies_listsOnlyThatSupplier() {
+        long supplierId = ContentUris.parseId(
+                insertSupplier(TestVeggies.SUPPLIER_NAME, TestVeggies.SUPPLIER_PHONE));
+        Uri uri = ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId).buildUpon()
+                .appendPath(VeggieContract.PATH_VEGGIES)
+                .build();
+        Cursor cursor = mResolver.query(uri, new String[]{VeggieEntry.COLUMN_VEGGIE_NAME},
+                null, null, VeggieEntry.COLUMN_VEGGIE_NAME);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Carrot", cursor.getString(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals("Leek", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void renamingSupplier_showsInEveryVeggie() {
+        // Read the row once so the rename also has to get past the row cache
+        assertEquals(TestVeggies.SUPPLIER_NAME, querySupplierName(mCarrotUri));
+
+        Uri supplierUri = insertSupplier(TestVeggies.SUPPLIER_NAME, TestVeggies.SUPPLIER_PHONE);
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Green Grocer");
+        assertEquals(1, mResolver.update(supplierUri, values, null, null));
+
+        assertEquals("Green Grocer", querySupplierName(mCarrotUri));
+    }
+
+    @Test
+    public void updatingFlatColumns_movesVeggieToOtherSupplier() {
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, "Farm Co");
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE, "(800) 765-4321");
+        assertEquals(1, mResolver.update(mCarrotUri, values, null, null));
+
+        assertEquals("Farm Co", querySupplierName(mCarrotUri));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void updatingSupplierNameAlone_isRejected() {
+        ContentValues values = new ContentValues();
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, "Farm Co");
+        mResolver.update(mCarrotUri, values, null, null);
+    }
+
+    @Test(expected = SQLException.class)
+    public void deletingSupplierInUse_isRefused() {
+        mResolver.delete(insertSupplier("Farm Co", "(800) 765-4321"), null, null);
+    }
+
+    @Test
+    public void listProfile_leavesOutSupplierColumns() {
+        Cursor cursor = mResolver.query(listUri(), null, null, null, null);
+        try {
+            assertArrayEquals(VeggieEntry.LIST_PROJECTION, cursor.getColumnNames());
+            assertEquals(3, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void listProfile_rejectsSupplierColumns() {
+        mResolver.query(listUri(), VeggieEntry.DETAIL_PROJECTION, null, null, null);
+    }
+
+    private static Uri listUri() {
+        return VeggieEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(VeggieContract.PARAM_PROFILE, VeggieContract.PROFILE_LIST)
+                .build();
+    }
+
+    private Uri insertVeggie(String name, String supplierName, String supplierPhone) {
+        ContentValues values = TestVeggies.values(name);
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME, supplierName);
+        values.put(VeggieEntry.COLUMN_VEGGIE_SUPPLIER_PHONE, supplierPhone);
+        return TestVeggies.insert(mResolver, values);
+    }
+
+    private Uri insertSupplier(String name, String phone) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE, phone);
+        return mResolver.insert(SupplierEntry.CONTENT_URI, values);
+    }
+
+    private String querySupplierName(Uri veggieUri) {
+        Cursor cursor = mResolver.query(veggieUri,
+                new String[]{VeggieEntry.COLUMN_VEGGIE_SUPPLIER_NAME}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}